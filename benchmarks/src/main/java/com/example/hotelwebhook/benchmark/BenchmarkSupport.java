@@ -0,0 +1,176 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.Executor;
+
+import com.example.hotelwebhook.cluster.InProcessClusterBus;
+import com.example.hotelwebhook.config.AppConfig;
+import com.example.hotelwebhook.metrics.PipelineMetrics;
+import com.example.hotelwebhook.service.ChatwootWebhookParser;
+import com.example.hotelwebhook.service.NotificationEnvelopeWriter;
+import com.example.hotelwebhook.service.NotificationReplayBuffer;
+import com.example.hotelwebhook.service.NotificationService;
+import com.example.hotelwebhook.service.WebSocketSessionManager;
+import com.example.hotelwebhook.websocket.OverflowPolicy;
+import com.example.hotelwebhook.websocket.SessionSendQueueFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 在不启动Spring容器的情况下组装被测组件
+ */
+public final class BenchmarkSupport {
+
+    // 同步执行：入队即在当前线程完成发送，便于测量单线程分配
+    public static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 创建发送队列工厂，写线程替换为给定执行器
+     */
+    public static SessionSendQueueFactory sendQueueFactory(Executor writerExecutor) {
+        SessionSendQueueFactory factory = new SessionSendQueueFactory();
+        inject(factory, "maxMessages", 1024);
+        inject(factory, "maxBytes", 64L * 1024 * 1024);
+        inject(factory, "overflowPolicy", OverflowPolicy.DROP_OLDEST);
+        inject(factory, "closeCode", 1013);
+        inject(factory, "writerThreads", 1);
+        inject(factory, "sendTimeoutMs", 10000L);
+        inject(factory, "metrics", pipelineMetrics());
+        factory.init();
+        inject(factory, "writerExecutor", writerExecutor);
+        return factory;
+    }
+
+    /**
+     * 创建会话管理器
+     */
+    public static WebSocketSessionManager sessionManager(Executor writerExecutor) {
+        return sessionManager(writerExecutor, replayBuffer());
+    }
+
+    /**
+     * 创建会话管理器，与通知服务共用补发缓冲区
+     */
+    public static WebSocketSessionManager sessionManager(Executor writerExecutor, NotificationReplayBuffer replayBuffer) {
+        WebSocketSessionManager manager = new WebSocketSessionManager();
+        inject(manager, "sendQueueFactory", sendQueueFactory(writerExecutor));
+        inject(manager, "replayBuffer", replayBuffer);
+        // 独立分组的单节点总线，不产生集群发布
+        inject(manager, "clusterBus", new InProcessClusterBus("bench", 1024));
+        inject(manager, "metrics", pipelineMetrics());
+        inject(manager, "resolvedConversationTtlSeconds", 300L);
+        inject(manager, "idleConversationTtlSeconds", 86400L);
+        inject(manager, "registryShards", 16);
+        inject(manager, "heartbeatTickMs", 1000L);
+        inject(manager, "heartbeatWheelSize", 512);
+        inject(manager, "guestHeartbeatTimeoutSeconds", 300L);
+        inject(manager, "agentHeartbeatTimeoutSeconds", 300L);
+        inject(manager, "pingIntervalSeconds", 30L);
+        inject(manager, "pingBatchIntervalMs", 1000L);
+        manager.init();
+        return manager;
+    }
+
+    /**
+     * 创建链路指标，注册到内存中的指标注册表
+     */
+    public static PipelineMetrics pipelineMetrics() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        inject(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+        return metrics;
+    }
+
+    /**
+     * 创建通知补发缓冲区（默认配置）
+     */
+    public static NotificationReplayBuffer replayBuffer() {
+        NotificationReplayBuffer buffer = new NotificationReplayBuffer();
+        inject(buffer, "maxMessages", 100);
+        inject(buffer, "maxBytes", 262144L);
+        inject(buffer, "maxAgeSeconds", 300L);
+        inject(buffer, "memoryBudgetBytes", 64L * 1024 * 1024);
+        return buffer;
+    }
+
+    /**
+     * 与应用一致的ObjectMapper
+     */
+    public static ObjectMapper objectMapper() {
+        return new AppConfig().objectMapper();
+    }
+
+    /**
+     * 创建webhook流式解析器
+     */
+    public static ChatwootWebhookParser webhookParser() {
+        ChatwootWebhookParser parser = new ChatwootWebhookParser();
+        inject(parser, "objectMapper", objectMapper());
+        parser.init();
+        return parser;
+    }
+
+    /**
+     * 创建通知信封写入器
+     */
+    public static NotificationEnvelopeWriter envelopeWriter() {
+        NotificationEnvelopeWriter writer = new NotificationEnvelopeWriter();
+        inject(writer, "objectMapper", objectMapper());
+        writer.init();
+        return writer;
+    }
+
+    /**
+     * 创建通知服务（默认raw编码）
+     */
+    public static NotificationService notificationService(WebSocketSessionManager sessionManager) {
+        NotificationService service = new NotificationService();
+        inject(service, "sessionManager", sessionManager);
+        inject(service, "objectMapper", objectMapper());
+        inject(service, "envelopeWriter", envelopeWriter());
+        inject(service, "metrics", pipelineMetrics());
+        inject(service, "dataEncoding", "raw");
+        return service;
+    }
+
+    /**
+     * 读取 fixtures 目录下的Chatwoot payload样例
+     */
+    public static byte[] fixture(String name) {
+        try (InputStream in = BenchmarkSupport.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("样例不存在: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 注入私有字段（对应Spring的@Autowired/@Value字段注入）
+     */
+    public static void inject(Object target, String fieldName, Object value) {
+        Class<?> type = target.getClass();
+        while (type != null) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("无法注入字段 " + fieldName, e);
+            }
+        }
+        throw new IllegalArgumentException("字段不存在: " + fieldName);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.hotelwebhook.service.WebSocketSessionManager;
+import com.example.hotelwebhook.websocket.NotificationFrame;
+
+/**
+ * 广播分配对比：逐个接收者构建帧 vs 编码一次共享帧
+ * 使用 -prof gc 查看 gc.alloc.rate.norm（每次扇出分配字节数）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastFrameBenchmark {
+
+    @Param({"1000", "10000"})
+    private int recipients;
+
+    private WebSocketSessionManager sessionManager;
+    private List<String> agentIds;
+    private String notificationJson;
+    private byte[] notificationBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessionManager = BenchmarkSupport.sessionManager(BenchmarkSupport.DIRECT_EXECUTOR);
+        agentIds = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            String agentId = "agent-" + i;
+            agentIds.add(agentId);
+            sessionManager.registerSession(agentId, "agent", new StubWebSocketSession("session-" + i));
+        }
+        notificationJson = "{\"type\":\"conversation_created\",\"conversationId\":\"12345\",\"messageId\":null,"
+                + "\"senderId\":null,\"content\":null,\"timestamp\":1760000000000,"
+                + "\"data\":\"{\\\"id\\\":12345,\\\"inbox_id\\\":3,\\\"status\\\":\\\"open\\\",\\\"content\\\":\\\"您好，请问今晚还有大床房吗？\\\"}\"}";
+        notificationBytes = notificationJson.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 原有路径：每个接收者各自构建 TextMessage
+     */
+    @Benchmark
+    public void perRecipientFrame() {
+        for (String agentId : agentIds) {
+            sessionManager.sendNotificationToAgent(agentId, notificationJson);
+        }
+    }
+
+    /**
+     * 新路径：编码一次，所有接收者共享同一帧
+     */
+    @Benchmark
+    public void sharedFrame() {
+        // 序号为0，不计入补发缓冲区，与原有路径保持可比
+        NotificationFrame frame = new NotificationFrame(0, notificationBytes);
+        sessionManager.sendNotificationToAllAgent(frame);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.hotelwebhook.websocket.NotificationFrame;
+import com.example.hotelwebhook.websocket.PayloadCompressor;
+
+/**
+ * 广播压缩对比：逐连接压缩（模拟permessage-deflate，每个连接独立的压缩上下文）vs 压缩一次共享结果
+ * 每次操作为一条通知扇出到全部接收者
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationCompressionBenchmark {
+
+    @Param({"message_created.json", "message_created_attachments.json"})
+    private String fixture;
+
+    @Param({"1", "100", "1000"})
+    private int recipients;
+
+    private byte[] payload;
+    private PayloadCompressor compressor;
+    private Deflater[] connectionDeflaters;
+    private byte[] outputBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payload = BenchmarkSupport.fixture(fixture);
+        compressor = new PayloadCompressor(0, Deflater.DEFAULT_COMPRESSION);
+        connectionDeflaters = new Deflater[recipients];
+        for (int i = 0; i < recipients; i++) {
+            connectionDeflaters[i] = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        outputBuffer = new byte[payload.length + 64];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Deflater deflater : connectionDeflaters) {
+            deflater.end();
+        }
+        compressor.close();
+    }
+
+    /**
+     * permessage-deflate：每个连接用自己的上下文各压缩一次
+     */
+    @Benchmark
+    public long perConnectionDeflate() {
+        long wireBytes = 0;
+        for (Deflater deflater : connectionDeflaters) {
+            deflater.setInput(payload);
+            int length;
+            do {
+                length = deflater.deflate(outputBuffer, 0, outputBuffer.length, Deflater.SYNC_FLUSH);
+                wireBytes += length;
+            } while (length == outputBuffer.length);
+        }
+        return wireBytes;
+    }
+
+    /**
+     * 应用层压缩：帧上缓存压缩结果，每个连接只包装一次
+     */
+    @Benchmark
+    public long sharedDeflate(Blackhole blackhole) {
+        NotificationFrame frame = new NotificationFrame(0, payload);
+        long wireBytes = 0;
+        for (int i = 0; i < recipients; i++) {
+            byte[] deflated = frame.getDeflated(compressor);
+            blackhole.consume(ByteBuffer.wrap(deflated));
+            wireBytes += deflated.length;
+        }
+        return wireBytes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.hotelwebhook.model.ChatwootEvent;
+import com.example.hotelwebhook.model.NotificationMessage;
+import com.example.hotelwebhook.service.NotificationEnvelopeWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 通知序列化对比：data为转义字符串（旧格式） vs 原始JSON拼接
+ * 同时对比客户端解码成本：旧格式需要两次JSON解析
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationEnvelopeBenchmark {
+
+    private ObjectMapper objectMapper;
+    private NotificationEnvelopeWriter envelopeWriter;
+    private NotificationMessage notification;
+    private byte[] messageJson;
+    private byte[] legacyEnvelope;
+    private byte[] rawEnvelope;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        objectMapper = BenchmarkSupport.objectMapper();
+        envelopeWriter = BenchmarkSupport.envelopeWriter();
+        ChatwootEvent event = BenchmarkSupport.webhookParser().parse(BenchmarkSupport.fixture("message_created.json"));
+        messageJson = event.getMetadata();
+        notification = NotificationMessage.builder()
+                .type(event.getEventType().getValue())
+                .conversationId(event.getConversationId())
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        legacyEnvelope = legacyStringData();
+        rawEnvelope = rawEnvelope();
+        System.out.printf("%n每条通知字节数: string=%d, raw=%d, 节省=%d%n",
+                legacyEnvelope.length, rawEnvelope.length, legacyEnvelope.length - rawEnvelope.length);
+    }
+
+    @Benchmark
+    public byte[] legacyStringData() throws IOException {
+        NotificationMessage copy = NotificationMessage.builder()
+                .type(notification.getType())
+                .conversationId(notification.getConversationId())
+                .timestamp(notification.getTimestamp())
+                .data(new String(messageJson, StandardCharsets.UTF_8))
+                .build();
+        return objectMapper.writeValueAsBytes(copy);
+    }
+
+    @Benchmark
+    public byte[] rawEnvelope() throws IOException {
+        return envelopeWriter.write(notification, messageJson);
+    }
+
+    @Benchmark
+    public JsonNode clientDecodeLegacy() throws IOException {
+        JsonNode envelope = objectMapper.readTree(legacyEnvelope);
+        return objectMapper.readTree(envelope.get("data").asText());
+    }
+
+    @Benchmark
+    public JsonNode clientDecodeRaw() throws IOException {
+        return objectMapper.readTree(rawEnvelope).get("data");
+    }
+}
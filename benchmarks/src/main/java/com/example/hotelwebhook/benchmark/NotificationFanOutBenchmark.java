@@ -0,0 +1,64 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.hotelwebhook.model.ChatwootEvent;
+import com.example.hotelwebhook.model.RecipientType;
+import com.example.hotelwebhook.service.NotificationReplayBuffer;
+import com.example.hotelwebhook.service.NotificationService;
+import com.example.hotelwebhook.service.WebSocketSessionManager;
+
+/**
+ * 通知链路：构建、编码通知并扇出到1/100/10k个内存连接
+ * 事件为未分配客服的客人消息，推送给全部在线客服；写线程为同步执行器，发送成本计入每次操作
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationFanOutBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int recipients;
+
+    @Param({"message_created.json", "message_created_attachments.json"})
+    private String fixture;
+
+    private NotificationService notificationService;
+    private ChatwootEvent event;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        NotificationReplayBuffer replayBuffer = BenchmarkSupport.replayBuffer();
+        WebSocketSessionManager sessionManager = BenchmarkSupport.sessionManager(BenchmarkSupport.DIRECT_EXECUTOR, replayBuffer);
+        for (int i = 0; i < recipients; i++) {
+            sessionManager.registerSession("agent-" + i, "agent", new StubWebSocketSession("session-" + i));
+        }
+        notificationService = BenchmarkSupport.notificationService(sessionManager);
+
+        event = BenchmarkSupport.webhookParser().parse(BenchmarkSupport.fixture(fixture));
+        event.setRecipientType(RecipientType.AGENT);
+        event.setRecipientId(null);
+    }
+
+    @Benchmark
+    public void processEvent() {
+        notificationService.processEvent(event);
+    }
+}
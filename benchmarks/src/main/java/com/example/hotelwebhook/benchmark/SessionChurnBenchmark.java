@@ -0,0 +1,72 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.hotelwebhook.service.WebSocketSessionManager;
+
+/**
+ * 连接建立、断开的完整成本：发送队列、心跳定时器、补发查询、注册表和统计
+ * 在已有 online 个在线连接的基础上，每次操作注册并移除一个连接
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionChurnBenchmark {
+
+    private static final int POOL = 1024;
+
+    @Param({"10000"})
+    private int online;
+
+    private WebSocketSessionManager sessionManager;
+    private StubWebSocketSession[] sessions;
+    private String[] userIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessionManager = BenchmarkSupport.sessionManager(BenchmarkSupport.DIRECT_EXECUTOR);
+        for (int i = 0; i < online; i++) {
+            String userType = i % 4 == 0 ? "agent" : "guest";
+            sessionManager.registerSession("user-" + i, userType, new StubWebSocketSession("online-" + i));
+        }
+        // 预先创建会话桩，测量中不计其分配
+        sessions = new StubWebSocketSession[POOL];
+        userIds = new String[POOL];
+        for (int i = 0; i < POOL; i++) {
+            sessions[i] = new StubWebSocketSession("churn-" + i);
+            userIds[i] = "churn-user-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionManager.destroy();
+    }
+
+    @Benchmark
+    public void registerAndRemove() {
+        int i = next;
+        next = (i + 1) & (POOL - 1);
+        StubWebSocketSession session = sessions[i];
+        sessionManager.registerSession(userIds[i], "guest", session);
+        sessionManager.removeSession(session.getId());
+    }
+}
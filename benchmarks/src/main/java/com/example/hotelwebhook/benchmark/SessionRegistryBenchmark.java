@@ -0,0 +1,185 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.hotelwebhook.model.UserSession;
+import com.example.hotelwebhook.service.SessionRegistry;
+
+/**
+ * 10万连接下的注册表操作：分片写时复制注册表 vs 原有三层 ConcurrentHashMap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionRegistryBenchmark {
+
+    private static final int USERS = 50_000;
+    private static final int DEVICES = 2;
+
+    private SessionRegistry registry;
+    private LegacyRegistry legacy;
+    private String[] userIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        registry = new SessionRegistry(16, 300_000, 86_400_000);
+        legacy = new LegacyRegistry();
+        userIds = new String[USERS];
+        for (int u = 0; u < USERS; u++) {
+            userIds[u] = "user-" + u;
+            for (int d = 0; d < DEVICES; d++) {
+                UserSession session = session(u, "session-" + u + "-" + d);
+                registry.add(session);
+                legacy.add(session);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        long churn;
+
+        int nextUser() {
+            next = (next + 7919) % USERS;
+            return next;
+        }
+    }
+
+    /**
+     * 定向推送：查找用户并遍历其设备
+     */
+    @Benchmark
+    public void lookupRegistry(Cursor cursor, Blackhole blackhole) {
+        int u = cursor.nextUser();
+        for (UserSession session : registry.getSessions(userType(u), userIds[u])) {
+            blackhole.consume(session);
+        }
+    }
+
+    @Benchmark
+    public void lookupLegacy(Cursor cursor, Blackhole blackhole) {
+        int u = cursor.nextUser();
+        legacy.getSessions(userType(u), userIds[u]).values().forEach(blackhole::consume);
+    }
+
+    /**
+     * 查找不在线的用户（原有实现每次分配一个空Map）
+     */
+    @Benchmark
+    public Object missRegistry(Cursor cursor) {
+        return registry.getSessions("guest", "offline-" + (cursor.nextUser() & 1023));
+    }
+
+    @Benchmark
+    public Object missLegacy(Cursor cursor) {
+        return legacy.getSessions("guest", "offline-" + (cursor.nextUser() & 1023));
+    }
+
+    /**
+     * 连接建立与断开（4线程并发）
+     */
+    @Benchmark
+    @Threads(4)
+    public void churnRegistry(Cursor cursor) {
+        int u = cursor.nextUser();
+        String sessionId = "churn-" + Thread.currentThread().threadId() + "-" + (cursor.churn++);
+        registry.add(session(u, sessionId));
+        registry.remove(sessionId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void churnLegacy(Cursor cursor) {
+        int u = cursor.nextUser();
+        String sessionId = "churn-" + Thread.currentThread().threadId() + "-" + (cursor.churn++);
+        legacy.add(session(u, sessionId));
+        legacy.remove(sessionId);
+    }
+
+    /**
+     * 向所有客服广播时的全量遍历
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void forEachAgentRegistry(Blackhole blackhole) {
+        registry.forEachUser("agent", (userId, sessions) -> {
+            for (UserSession session : sessions) {
+                blackhole.consume(session);
+            }
+        });
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void forEachAgentLegacy(Blackhole blackhole) {
+        legacy.agents.values().forEach(sessions -> sessions.values().forEach(blackhole::consume));
+    }
+
+    private static UserSession session(int user, String sessionId) {
+        return UserSession.builder()
+                .userId("user-" + user)
+                .userType(userType(user))
+                .sessionId(sessionId)
+                .build();
+    }
+
+    private static String userType(int user) {
+        return user % 4 == 0 ? "agent" : "guest";
+    }
+
+    /**
+     * 原有实现：用户ID -> (sessionId -> 连接)，外加 sessionId 索引
+     */
+    static final class LegacyRegistry {
+        final Map<String, Map<String, UserSession>> guests = new ConcurrentHashMap<>();
+        final Map<String, Map<String, UserSession>> agents = new ConcurrentHashMap<>();
+        final Map<String, UserSession> sessions = new ConcurrentHashMap<>();
+
+        void add(UserSession session) {
+            users(session.getUserType()).computeIfAbsent(session.getUserId(), k -> new ConcurrentHashMap<>())
+                    .put(session.getSessionId(), session);
+            sessions.put(session.getSessionId(), session);
+        }
+
+        void remove(String sessionId) {
+            UserSession session = sessions.remove(sessionId);
+            if (session != null) {
+                Map<String, UserSession> userSessions = users(session.getUserType()).get(session.getUserId());
+                if (userSessions != null) {
+                    userSessions.remove(sessionId);
+                    if (userSessions.isEmpty()) {
+                        users(session.getUserType()).remove(session.getUserId());
+                    }
+                }
+            }
+        }
+
+        Map<String, UserSession> getSessions(String userType, String userId) {
+            return users(userType).getOrDefault(userId, new ConcurrentHashMap<>());
+        }
+
+        private Map<String, Map<String, UserSession>> users(String userType) {
+            return "agent".equals(userType) ? agents : guests;
+        }
+    }
+}
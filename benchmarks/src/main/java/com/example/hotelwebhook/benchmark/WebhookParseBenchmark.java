@@ -0,0 +1,64 @@
+package com.example.hotelwebhook.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.hotelwebhook.model.ChatwootEvent;
+import com.example.hotelwebhook.service.ChatwootWebhookParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * webhook解析吞吐：流式解析器 vs 构建完整JSON树
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookParseBenchmark {
+
+    @Param({"message_created.json", "conversation_updated.json", "message_created_attachments.json"})
+    private String fixture;
+
+    private ChatwootWebhookParser parser;
+    private ObjectMapper objectMapper;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        parser = BenchmarkSupport.webhookParser();
+        objectMapper = BenchmarkSupport.objectMapper();
+        body = BenchmarkSupport.fixture(fixture);
+        if (parser.parse(body) == null) {
+            throw new IllegalStateException("样例无法解析为可路由事件: " + fixture);
+        }
+    }
+
+    @Benchmark
+    public ChatwootEvent streamingParse() throws IOException {
+        return parser.parse(body);
+    }
+
+    /**
+     * 对照：读取完整JSON树（原有解析方式的下限）
+     */
+    @Benchmark
+    public JsonNode treeParse() throws IOException {
+        return objectMapper.readTree(body);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.hotelwebhook.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * 推送延迟记录：事件序号对应的计划发送时间保存在环形数组中，客户端收到通知时计算延迟
+ */
+final class LatencyRecorder {
+
+    private static final int RING_SIZE = 1 << 20;
+
+    private final long[] sentAt = new long[RING_SIZE];
+    private final Histogram histogram = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final long firstId;
+
+    LatencyRecorder(long firstId) {
+        this.firstId = firstId;
+    }
+
+    /**
+     * 记录事件的计划发送时间（按计划时间计算可避免协调遗漏）
+     */
+    void eventSent(long id, long intendedNanos) {
+        sentAt[(int) ((id - firstId) & (RING_SIZE - 1))] = intendedNanos;
+    }
+
+    void frameReceived(long id, long receivedNanos) {
+        frames.increment();
+        if (id < firstId) {
+            return;
+        }
+        long sent = sentAt[(int) ((id - firstId) & (RING_SIZE - 1))];
+        if (sent != 0) {
+            histogram.recordValue(Math.min(Math.max(0, receivedNanos - sent), histogram.getHighestTrackableValue()));
+            matched.increment();
+        }
+    }
+
+    void clientError() {
+        clientErrors.increment();
+    }
+
+    long getFrames() {
+        return frames.sum();
+    }
+
+    long getMatched() {
+        return matched.sum();
+    }
+
+    long getClientErrors() {
+        return clientErrors.sum();
+    }
+
+    Histogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.hotelwebhook.loadtest;
+
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 单个WebSocket客户端：收到通知时按会话ID查找发送时间并记录推送延迟
+ * 合批连接收到的数组帧中每条通知分别记录
+ */
+final class LoadClient implements WebSocket.Listener {
+
+    private static final String CONVERSATION_ID = "\"conversationId\":\"";
+
+    private final LatencyRecorder recorder;
+    private StringBuilder partial;
+    private volatile WebSocket webSocket;
+
+    LoadClient(LatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        long receivedAt = System.nanoTime();
+        if (!last) {
+            if (partial == null) {
+                partial = new StringBuilder();
+            }
+            partial.append(data);
+        } else {
+            CharSequence frame = data;
+            if (partial != null) {
+                frame = partial.append(data);
+                partial = null;
+            }
+            String text = frame.toString();
+            int from = 0;
+            do {
+                from = recordNext(text, from, receivedAt);
+            } while (from > 0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        recorder.clientError();
+    }
+
+    void close() {
+        WebSocket ws = webSocket;
+        if (ws != null && !ws.isOutputClosed()) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+    }
+
+    /**
+     * 从指定位置起提取下一条通知的会话ID并记录，不是压测事件时按-1记录
+     *
+     * @return 继续查找的位置，没有更多通知时返回-1
+     */
+    private int recordNext(String text, int from, long receivedAt) {
+        int start = text.indexOf(CONVERSATION_ID, from);
+        if (start < 0) {
+            if (from == 0) {
+                recorder.frameReceived(-1, receivedAt);
+            }
+            return -1;
+        }
+        start += CONVERSATION_ID.length();
+        long id = 0;
+        int i = start;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            id = id * 10 + (c - '0');
+            i++;
+        }
+        recorder.frameReceived(i > start && i < text.length() && text.charAt(i) == '"' ? id : -1, receivedAt);
+        return i;
+    }
+}
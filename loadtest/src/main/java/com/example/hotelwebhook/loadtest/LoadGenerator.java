@@ -0,0 +1,296 @@
+package com.example.hotelwebhook.loadtest;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * hotel-webhook 端到端压测
+ * 1. 建立大量真实WebSocket连接（先调用连接信息接口获取签名标识），统计每秒连接数和服务端每连接堆内存
+ * 2. 按设定速率和事件比例向 /chatwoot-webhook/callback 发送合成事件
+ * 3. 客户端收到通知时记录从计划发送到收到的延迟，输出 p50 ~ p99.99
+ */
+public final class LoadGenerator {
+
+    private static final Pattern WS_TOKEN = Pattern.compile("\"wsToken\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"value\"\\s*:\\s*([0-9.Ee+-]+)");
+    // 会话ID起始值，与真实数据区分
+    private static final long FIRST_CONVERSATION_ID = 900_000_000L;
+    private static final long GUEST_ID_BASE = 1_000_000L;
+    private static final int MAX_CONNECT_ATTEMPTS = 5;
+    private static final String ISSUER_KEY_HEADER = "X-Issuer-Key";
+
+    private final LoadOptions options;
+    private final HttpClient httpClient;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LatencyRecorder recorder = new LatencyRecorder(FIRST_CONVERSATION_ID);
+    private final SyntheticEvents events;
+    private final List<LoadClient> clients = new ArrayList<>();
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder connectRetries = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder eventErrors = new LongAdder();
+
+    private LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.events = new SyntheticEvents(options.mix, options.payloadBytes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        int totalClients = options.guests + options.agents * options.agentDevices;
+        System.out.printf("目标: %s, 客人 %d, 客服 %d × %d台, 共 %d 个连接%n",
+                options.baseUrl, options.guests, options.agents, options.agentDevices, totalClients);
+
+        double heapBefore = sampleHeapBytes();
+        double connectSeconds = connectAll();
+        double heapAfter = sampleHeapBytes();
+
+        System.out.printf("连接完成: 成功 %d, 失败 %d, 503重试 %d, 耗时 %.1f 秒, %.0f 连接/秒%n",
+                connected.sum(), connectFailures.sum(), connectRetries.sum(), connectSeconds,
+                connected.sum() / connectSeconds);
+        if (!Double.isNaN(heapBefore) && !Double.isNaN(heapAfter) && connected.sum() > 0) {
+            System.out.printf("服务端堆内存: 连接前 %.1f MB, 连接后 %.1f MB, 每连接约 %.1f KB%n",
+                    heapBefore / 1048576, heapAfter / 1048576, (heapAfter - heapBefore) / connected.sum() / 1024);
+        } else {
+            System.out.println("服务端堆内存: 不可用（需开放 /actuator/metrics）");
+        }
+
+        long framesBefore = recorder.getFrames();
+        long driveStart = System.nanoTime();
+        driveEvents();
+        double sendSeconds = (System.nanoTime() - driveStart) / 1e9;
+        TimeUnit.SECONDS.sleep(options.drainSeconds);
+        double receiveSeconds = (System.nanoTime() - driveStart) / 1e9;
+        long frames = recorder.getFrames() - framesBefore;
+
+        System.out.printf("事件发送: %d 个, 失败 %d, %.0f 事件/秒%n",
+                eventsSent.sum(), eventErrors.sum(), eventsSent.sum() / sendSeconds);
+        System.out.printf("推送接收: %d 条, %.0f 条/秒, 可计算延迟 %d 条, 客户端错误 %d%n",
+                frames, frames / receiveSeconds, recorder.getMatched(), recorder.getClientErrors());
+        printLatency(recorder.getHistogram());
+
+        clients.forEach(LoadClient::close);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 按设定速率建立所有连接，返回耗时（秒）
+     */
+    private double connectAll() throws InterruptedException {
+        Semaphore pending = new Semaphore(options.maxPendingConnects);
+        long intervalNanos = (long) (1e9 / options.connectRate);
+        long start = System.nanoTime();
+        int index = 0;
+        for (int i = 0; i < options.agents; i++) {
+            for (int d = 0; d < options.agentDevices; d++) {
+                submitConnect(pending, start + intervalNanos * index++, "agent", String.valueOf(i + 1));
+            }
+        }
+        for (int i = 0; i < options.guests; i++) {
+            submitConnect(pending, start + intervalNanos * index++, "guest", String.valueOf(GUEST_ID_BASE + i));
+        }
+        pending.acquire(options.maxPendingConnects);
+        pending.release(options.maxPendingConnects);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private void submitConnect(Semaphore pending, long startAt, String userType, String userId) throws InterruptedException {
+        parkUntil(startAt);
+        pending.acquire();
+        executor.execute(() -> {
+            try {
+                connect(userType, userId);
+                connected.increment();
+            } catch (Exception e) {
+                connectFailures.increment();
+                if (connectFailures.sum() <= 5) {
+                    System.err.printf("连接失败 %s %s: %s%n", userType, userId, e);
+                }
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * 获取签名标识并建立WebSocket连接，服务端准入控制返回503时按Retry-After重试
+     */
+    private void connect(String userType, String userId) throws Exception {
+        boolean agent = "agent".equals(userType);
+        String param = agent ? "userId" : "contactId";
+        HttpRequest tokenRequest = HttpRequest.newBuilder(
+                        URI.create(options.baseUrl + "/api/websocket/connect/" + userType + "?" + param + "=" + userId))
+                .header(ISSUER_KEY_HEADER, options.issuerKey)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        for (int attempt = 1; ; attempt++) {
+            HttpResponse<String> response = httpClient.send(tokenRequest, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 503 && attempt < MAX_CONNECT_ATTEMPTS) {
+                connectRetries.increment();
+                long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                TimeUnit.SECONDS.sleep(retryAfter);
+                continue;
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("获取连接标识失败: HTTP " + response.statusCode());
+            }
+            Matcher matcher = WS_TOKEN.matcher(response.body());
+            if (!matcher.find()) {
+                throw new IOException("响应中没有wsToken");
+            }
+            URI wsUri = URI.create(options.baseUrl.replaceFirst("^http", "ws")
+                    + "/ws/notify?" + param + "=" + userId + "&connectionId=" + matcher.group(1)
+                    + (agent && options.agentBatch ? "&batch=1" : ""));
+            LoadClient client = new LoadClient(recorder);
+            try {
+                httpClient.newWebSocketBuilder()
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .buildAsync(wsUri, client)
+                        .join();
+            } catch (RuntimeException e) {
+                // 握手也可能被准入控制拒绝
+                if (attempt < MAX_CONNECT_ATTEMPTS) {
+                    connectRetries.increment();
+                    TimeUnit.SECONDS.sleep(ThreadLocalRandom.current().nextInt(1, 4));
+                    continue;
+                }
+                throw e;
+            }
+            synchronized (clients) {
+                clients.add(client);
+            }
+            return;
+        }
+    }
+
+    /**
+     * 按计划时间匀速发送事件
+     */
+    private void driveEvents() {
+        URI callback = URI.create(options.baseUrl + "/chatwoot-webhook/callback");
+        long intervalNanos = (long) (1e9 / options.eventRate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        AtomicLong nextId = new AtomicLong(FIRST_CONVERSATION_ID);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            parkUntil(intended);
+
+            long id = nextId.getAndIncrement();
+            String type = events.pickType(random.nextDouble());
+            String guestId = String.valueOf(GUEST_ID_BASE + random.nextInt(options.guests));
+            String agentId = String.valueOf(1 + random.nextInt(options.agents));
+            byte[] body = events.build(type, id, guestId, agentId, random.nextBoolean());
+
+            recorder.eventSent(id, intended);
+            HttpRequest request = HttpRequest.newBuilder(callback)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error != null || response.statusCode() >= 300) {
+                    eventErrors.increment();
+                }
+            });
+            eventsSent.increment();
+        }
+    }
+
+    private void printLatency(Histogram histogram) throws IOException {
+        if (histogram.getTotalCount() == 0) {
+            System.out.println("推送延迟: 无数据");
+            return;
+        }
+        System.out.println("推送延迟（webhook计划发送 → 客户端收到，毫秒）:");
+        for (double percentile : new double[] {50, 90, 99, 99.9, 99.99}) {
+            System.out.printf(Locale.ROOT, "  p%-6s %10.3f%n", trim(percentile), histogram.getValueAtPercentile(percentile) / 1e6);
+        }
+        System.out.printf(Locale.ROOT, "  max     %10.3f%n", histogram.getMaxValue() / 1e6);
+        if (options.histogramOut != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(options.histogramOut))) {
+                histogram.outputPercentileDistribution(out, 1e6);
+            }
+            System.out.println("延迟分布已写入 " + options.histogramOut);
+        }
+    }
+
+    /**
+     * 读取服务端堆内存使用量，多次采样取最小值以减少未回收垃圾的影响；不可用时返回NaN
+     */
+    private double sampleHeapBytes() throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create(options.baseUrl + "/actuator/metrics/jvm.memory.used?tag=area:heap")).GET().build();
+        double min = Double.NaN;
+        for (int i = 0; i < 5; i++) {
+            try {
+                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                Matcher matcher = METRIC_VALUE.matcher(response.body());
+                if (response.statusCode() == 200 && matcher.find()) {
+                    double value = Double.parseDouble(matcher.group(1));
+                    min = Double.isNaN(min) ? value : Math.min(min, value);
+                }
+            } catch (IOException e) {
+                return Double.NaN;
+            }
+            TimeUnit.SECONDS.sleep(1);
+        }
+        return min;
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static String trim(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
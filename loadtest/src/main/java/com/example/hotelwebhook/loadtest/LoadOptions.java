@@ -0,0 +1,92 @@
+package com.example.hotelwebhook.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测参数，命令行格式为 --name=value
+ */
+final class LoadOptions {
+
+    static final String USAGE = """
+            用法: java -jar target/loadtest.jar [--name=value ...]
+              --base-url=http://localhost:7766   被测服务地址
+              --issuer-key=                      签发方密钥（X-Issuer-Key），默认取环境变量WEBSOCKET_TOKEN_ISSUER_KEY
+              --guests=2000                      客人连接数
+              --agents=200                       客服人数
+              --agent-devices=1                  每个客服的连接数
+              --agent-batch=false                客服连接是否申请合批（batch=1）
+              --connect-rate=500                 每秒发起的连接数
+              --max-pending-connects=200         同时进行中的连接数上限
+              --event-rate=200                   每秒发送的webhook事件数
+              --duration=30                      发送事件的时长（秒）
+              --drain=3                          停止发送后等待推送到达的时长（秒）
+              --mix=message_created=80,conversation_updated=20
+                                                 事件类型权重，可选 message_created、conversation_updated、conversation_created
+              --payload-bytes=256                消息内容长度（字节，近似）
+              --histogram-out=                   延迟分布输出文件（HdrHistogram百分位格式），为空时不输出
+            """;
+
+    String baseUrl = "http://localhost:7766";
+    String issuerKey = System.getenv("WEBSOCKET_TOKEN_ISSUER_KEY");
+    int guests = 2000;
+    int agents = 200;
+    int agentDevices = 1;
+    boolean agentBatch;
+    double connectRate = 500;
+    int maxPendingConnects = 200;
+    double eventRate = 200;
+    int durationSeconds = 30;
+    int drainSeconds = 3;
+    Map<String, Integer> mix = parseMix("message_created=80,conversation_updated=20");
+    int payloadBytes = 256;
+    String histogramOut;
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("无法识别的参数: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "base-url" -> options.baseUrl = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                case "issuer-key" -> options.issuerKey = value;
+                case "guests" -> options.guests = Integer.parseInt(value);
+                case "agents" -> options.agents = Integer.parseInt(value);
+                case "agent-devices" -> options.agentDevices = Integer.parseInt(value);
+                case "agent-batch" -> options.agentBatch = Boolean.parseBoolean(value);
+                case "connect-rate" -> options.connectRate = Double.parseDouble(value);
+                case "max-pending-connects" -> options.maxPendingConnects = Integer.parseInt(value);
+                case "event-rate" -> options.eventRate = Double.parseDouble(value);
+                case "duration" -> options.durationSeconds = Integer.parseInt(value);
+                case "drain" -> options.drainSeconds = Integer.parseInt(value);
+                case "mix" -> options.mix = parseMix(value);
+                case "payload-bytes" -> options.payloadBytes = Integer.parseInt(value);
+                case "histogram-out" -> options.histogramOut = value.isEmpty() ? null : value;
+                default -> throw new IllegalArgumentException("未知参数: --" + name);
+            }
+        }
+        if (options.agents < 1 || options.guests < 1) {
+            throw new IllegalArgumentException("客人和客服数至少为1");
+        }
+        if (options.issuerKey == null || options.issuerKey.isEmpty()) {
+            throw new IllegalArgumentException("缺少签发方密钥：--issuer-key 或环境变量WEBSOCKET_TOKEN_ISSUER_KEY");
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] kv = part.split("=");
+            if (kv.length != 2 || !SyntheticEvents.TYPES.contains(kv[0].trim())) {
+                throw new IllegalArgumentException("事件权重格式错误: " + part);
+            }
+            mix.put(kv[0].trim(), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.hotelwebhook.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合成的Chatwoot webhook事件
+ * 会话ID即事件序号，客户端收到通知后据此找到发送时间
+ */
+final class SyntheticEvents {
+
+    static final String MESSAGE_CREATED = "message_created";
+    static final String CONVERSATION_UPDATED = "conversation_updated";
+    static final String CONVERSATION_CREATED = "conversation_created";
+    static final List<String> TYPES = List.of(MESSAGE_CREATED, CONVERSATION_UPDATED, CONVERSATION_CREATED);
+
+    private final String[] weightedTypes;
+    private final String content;
+
+    SyntheticEvents(Map<String, Integer> mix, int payloadBytes) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (total <= 0) {
+            throw new IllegalArgumentException("事件权重之和必须大于0");
+        }
+        weightedTypes = new String[total];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            for (int n = 0; n < entry.getValue(); n++) {
+                weightedTypes[i++] = entry.getKey();
+            }
+        }
+        // 中文每字3字节
+        content = "您好，请问今晚的大床房还有空房吗？需要安排接机服务。".repeat(Math.max(1, payloadBytes / 78));
+    }
+
+    /**
+     * 按权重选择事件类型
+     *
+     * @param random [0, 1) 之间的随机数
+     */
+    String pickType(double random) {
+        return weightedTypes[(int) (random * weightedTypes.length)];
+    }
+
+    /**
+     * 构建事件请求体
+     *
+     * @param incoming message_created时：true为客人发给客服，false为客服发给客人
+     */
+    byte[] build(String type, long conversationId, String guestId, String agentId, boolean incoming) {
+        String meta = "{\"sender\":{\"id\":" + guestId + ",\"type\":\"contact\"},\"assignee\":{\"id\":" + agentId + "}}";
+        String json = switch (type) {
+            case MESSAGE_CREATED -> "{\"event\":\"message_created\",\"message_type\":\"" + (incoming ? "incoming" : "outgoing")
+                    + "\",\"id\":" + conversationId + ",\"content\":\"" + content + "\",\"content_type\":\"text\""
+                    + ",\"conversation\":{\"id\":" + conversationId + ",\"inbox_id\":3,\"status\":\"open\",\"meta\":" + meta
+                    + ",\"messages\":[{\"id\":" + conversationId + ",\"content\":\"" + content + "\",\"message_type\":"
+                    + (incoming ? 0 : 1) + ",\"conversation_id\":" + conversationId + ",\"private\":false,\"status\":\"sent\""
+                    + ",\"sender_type\":\"" + (incoming ? "Contact" : "User") + "\",\"sender_id\":" + (incoming ? guestId : agentId)
+                    + "}]}}";
+            case CONVERSATION_UPDATED -> "{\"event\":\"conversation_updated\",\"id\":" + conversationId
+                    + ",\"inbox_id\":3,\"status\":\"pending\",\"meta\":" + meta
+                    + ",\"changed_attributes\":[{\"status\":{\"previous_value\":\"open\",\"current_value\":\"pending\"}}]}";
+            case CONVERSATION_CREATED -> "{\"event\":\"conversation_created\",\"id\":" + conversationId
+                    + ",\"inbox_id\":3,\"status\":\"open\",\"meta\":" + meta + "}";
+            default -> throw new IllegalArgumentException(type);
+        };
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.hotelwebhook.cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 集群总线公共部分：本节点在线摘要维护和统计
+ */
+@Slf4j
+public abstract class AbstractClusterBus implements ClusterBus {
+
+    protected final String nodeId;
+    protected final int presenceBits;
+
+    protected volatile ClusterListener listener;
+    private volatile PresenceSummary localPresence;
+    // 重建期间新上线的接收者同时写入新旧摘要，避免重建过程中丢失
+    private volatile PresenceSummary rebuildingPresence;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+
+    protected AbstractClusterBus(String nodeId, int presenceBits) {
+        this.nodeId = nodeId;
+        this.presenceBits = presenceBits;
+        this.localPresence = new PresenceSummary(presenceBits);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(ClusterListener listener) {
+        this.listener = listener;
+        rebuildPresence();
+        doStart();
+        log.info("集群总线启动: {}, 节点: {}", getClass().getSimpleName(), nodeId);
+    }
+
+    protected abstract void doStart();
+
+    @Override
+    public void recipientOnline(String recipientKey, boolean agent) {
+        localPresence.add(recipientKey, agent);
+        PresenceSummary rebuilding = rebuildingPresence;
+        if (rebuilding != null) {
+            rebuilding.add(recipientKey, agent);
+        }
+        presenceChanged();
+    }
+
+    /**
+     * 本节点在线摘要有变化，子类可据此尽快通知其他节点
+     */
+    protected void presenceChanged() {
+    }
+
+    @Override
+    public synchronized void rebuildPresence() {
+        ClusterListener current = listener;
+        if (current == null) {
+            return;
+        }
+        PresenceSummary rebuilt = new PresenceSummary(presenceBits);
+        rebuildingPresence = rebuilt;
+        current.forEachLocalRecipient(rebuilt::add);
+        localPresence = rebuilt;
+        rebuildingPresence = null;
+        presenceChanged();
+    }
+
+    protected PresenceSummary getLocalPresence() {
+        return localPresence;
+    }
+
+    @Override
+    public boolean publish(ClusterDelivery delivery) {
+        int peers = sendToPeers(delivery);
+        if (peers > 0) {
+            publishedCount.incrementAndGet();
+            return true;
+        }
+        skippedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 发往在线摘要中可能持有接收者的节点
+     *
+     * @return 发往的节点数
+     */
+    protected abstract int sendToPeers(ClusterDelivery delivery);
+
+    /**
+     * 判断节点的在线摘要是否可能持有接收者
+     */
+    protected static boolean mayHold(PresenceSummary presence, ClusterDelivery delivery) {
+        if (presence == null) {
+            return false;
+        }
+        return switch (delivery.target()) {
+            // 订阅只在持有方节点上维护，有客服在线的节点都可能持有订阅者
+            case ALL_AGENTS, SUBSCRIBERS -> presence.hasAgents();
+            case USER -> presence.mightContain(delivery.recipientKey());
+        };
+    }
+
+    /**
+     * 投递其他节点发来的通知
+     */
+    protected void receive(ClusterDelivery delivery) {
+        receivedCount.incrementAndGet();
+        ClusterListener current = listener;
+        if (current != null) {
+            current.onDelivery(delivery);
+        }
+    }
+
+    protected abstract int getPeerCount();
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("peers", getPeerCount());
+        stats.put("published", publishedCount.get());
+        stats.put("skipped", skippedCount.get());
+        stats.put("received", receivedCount.get());
+        return stats;
+    }
+}
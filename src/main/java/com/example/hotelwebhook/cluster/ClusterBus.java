@@ -0,0 +1,38 @@
+package com.example.hotelwebhook.cluster;
+
+import java.util.Map;
+
+/**
+ * 集群总线
+ * 节点把路由后的通知发布给可能持有接收者连接的其他节点，各节点只向本地连接推送
+ */
+public interface ClusterBus {
+
+    String getNodeId();
+
+    /**
+     * 启动总线，收到的通知交给监听器投递到本地连接
+     */
+    void start(ClusterListener listener);
+
+    void stop();
+
+    /**
+     * 本节点新增在线接收者，更新在线摘要
+     */
+    void recipientOnline(String recipientKey, boolean agent);
+
+    /**
+     * 按本节点当前连接重建在线摘要（清除已下线的接收者）
+     */
+    void rebuildPresence();
+
+    /**
+     * 发布通知，只发往在线摘要中可能持有接收者的节点
+     *
+     * @return 是否发往了至少一个节点
+     */
+    boolean publish(ClusterDelivery delivery);
+
+    Map<String, Object> getStats();
+}
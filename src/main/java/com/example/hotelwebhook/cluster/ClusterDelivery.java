@@ -0,0 +1,39 @@
+package com.example.hotelwebhook.cluster;
+
+/**
+ * 节点间传递的通知
+ *
+ * @param target   投递目标
+ * @param userType 接收者类型（guest/agent），广播时为agent
+ * @param userId   接收者ID，广播和按订阅投递时为空串
+ * @param inboxId  按订阅投递时的收件箱ID，其他目标为null
+ * @param teamId   按订阅投递时的团队ID，其他目标为null
+ * @param seq      通知序号
+ * @param payload  已编码的通知JSON
+ */
+public record ClusterDelivery(Target target, String userType, String userId, String inboxId, String teamId,
+        long seq, byte[] payload) {
+
+    public enum Target {
+        USER,
+        ALL_AGENTS,
+        // 订阅了收件箱或团队的客服
+        SUBSCRIBERS
+    }
+
+    public static ClusterDelivery toUser(String userType, String userId, long seq, byte[] payload) {
+        return new ClusterDelivery(Target.USER, userType, userId, null, null, seq, payload);
+    }
+
+    public static ClusterDelivery toAllAgents(long seq, byte[] payload) {
+        return new ClusterDelivery(Target.ALL_AGENTS, "agent", "", null, null, seq, payload);
+    }
+
+    public static ClusterDelivery toSubscribers(String inboxId, String teamId, long seq, byte[] payload) {
+        return new ClusterDelivery(Target.SUBSCRIBERS, "agent", "", inboxId, teamId, seq, payload);
+    }
+
+    public String recipientKey() {
+        return userType + ":" + userId;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.hotelwebhook.cluster;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 集群总线回调，由会话管理器实现
+ */
+public interface ClusterListener {
+
+    /**
+     * 投递其他节点发布的通知到本地连接（不再转发）
+     */
+    void onDelivery(ClusterDelivery delivery);
+
+    /**
+     * 遍历本节点的在线接收者
+     *
+     * @param action 参数为接收者键和是否为客服
+     */
+    void forEachLocalRecipient(BiConsumer<String, Boolean> action);
+}
@@ -0,0 +1,60 @@
+package com.example.hotelwebhook.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内集群总线
+ * 共用同一个 {@link Group} 的节点互为对端，用于单机部署和多节点测试；只有一个节点时不会发布任何通知。
+ * 分组由创建方显式传入，同一JVM中的多个Spring上下文各自持有自己的分组，不会互相转发
+ */
+public class InProcessClusterBus extends AbstractClusterBus {
+
+    private final Group group;
+
+    /**
+     * 单节点，使用独立的分组
+     */
+    public InProcessClusterBus(String nodeId, int presenceBits) {
+        this(nodeId, new Group(), presenceBits);
+    }
+
+    public InProcessClusterBus(String nodeId, Group group, int presenceBits) {
+        super(nodeId, presenceBits);
+        this.group = group;
+    }
+
+    @Override
+    protected void doStart() {
+        group.members.add(this);
+    }
+
+    @Override
+    public void stop() {
+        group.members.remove(this);
+    }
+
+    @Override
+    protected int sendToPeers(ClusterDelivery delivery) {
+        int sent = 0;
+        for (InProcessClusterBus member : group.members) {
+            if (member != this && mayHold(member.getLocalPresence(), delivery)) {
+                member.receive(delivery);
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    @Override
+    protected int getPeerCount() {
+        return Math.max(0, group.members.size() - 1);
+    }
+
+    /**
+     * 进程内节点分组
+     */
+    public static final class Group {
+        private final List<InProcessClusterBus> members = new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,566 @@
+package com.example.hotelwebhook.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UDP组播 + TCP 集群总线
+ * 节点通过组播定期广播自身地址和在线摘要，互相发现；通知经TCP长连接只发往可能持有接收者的节点。
+ * 同一台机器上可启动多个JVM测试（tcp端口设为0自动分配）。
+ * 组播报文和TCP帧都带有以共享密钥计算的HMAC：TCP连接建立时由接收方下发随机挑战，
+ * 之后每帧的MAC覆盖挑战、帧计数和帧内容，未持有密钥的一方无法伪造或重放通知；帧长度超过上限时断开连接
+ */
+@Slf4j
+public class MulticastClusterBus extends AbstractClusterBus {
+
+    private static final int MAGIC = 0x48574342;
+    private static final int MAX_DATAGRAM = 65507;
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final long MIN_ANNOUNCE_GAP_MS = 100;
+    private static final long MAX_ANNOUNCE_SKEW_MS = 60_000;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 16;
+    private static final int CHALLENGE_LENGTH = 16;
+
+    private final String group;
+    private final InetAddress multicastAddress;
+    private final int multicastPort;
+    private final String interfaceName;
+    private final String advertiseHost;
+    private final String bindAddress;
+    private final int tcpPort;
+    private final int maxFrameBytes;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final long announceIntervalMs;
+    private final int peerQueueCapacity;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final Object announceSignal = new Object();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean presenceDirty;
+    private MulticastSocket multicastSocket;
+    private InetSocketAddress multicastGroup;
+    private ServerSocket serverSocket;
+    private int boundTcpPort;
+
+    /**
+     * @param bindAddress   TCP监听地址，为空时使用对外地址
+     * @param secret        集群共享密钥，用于组播报文和TCP帧的HMAC
+     * @param maxFrameBytes 单个TCP帧的最大字节数，超出时断开连接
+     */
+    public MulticastClusterBus(String nodeId, String group, int presenceBits, InetAddress multicastAddress,
+                               int multicastPort, String interfaceName, String advertiseHost, String bindAddress,
+                               int tcpPort, long announceIntervalMs, int peerQueueCapacity,
+                               byte[] secret, int maxFrameBytes) {
+        super(nodeId, presenceBits);
+        if (presenceBits / 8 > MAX_DATAGRAM - 1024) {
+            throw new IllegalArgumentException("在线摘要位数过大，无法放入单个组播报文: " + presenceBits);
+        }
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException("组播集群必须配置共享密钥");
+        }
+        this.group = group;
+        this.multicastAddress = multicastAddress;
+        this.multicastPort = multicastPort;
+        this.interfaceName = interfaceName;
+        this.advertiseHost = advertiseHost;
+        this.bindAddress = bindAddress != null && !bindAddress.isEmpty() ? bindAddress : advertiseHost;
+        this.tcpPort = tcpPort;
+        this.maxFrameBytes = maxFrameBytes;
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.announceIntervalMs = announceIntervalMs;
+        this.peerQueueCapacity = peerQueueCapacity;
+    }
+
+    @Override
+    protected void doStart() {
+        try {
+            serverSocket = new ServerSocket(tcpPort, 50, InetAddress.getByName(bindAddress));
+            boundTcpPort = serverSocket.getLocalPort();
+
+            NetworkInterface networkInterface = interfaceName != null && !interfaceName.isEmpty()
+                    ? NetworkInterface.getByName(interfaceName) : null;
+            multicastSocket = new MulticastSocket(null);
+            multicastSocket.setReuseAddress(true);
+            multicastSocket.bind(new InetSocketAddress(multicastPort));
+            multicastSocket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            if (networkInterface != null) {
+                multicastSocket.setNetworkInterface(networkInterface);
+            }
+            multicastGroup = new InetSocketAddress(multicastAddress, multicastPort);
+            multicastSocket.joinGroup(multicastGroup, networkInterface);
+        } catch (IOException e) {
+            throw new IllegalStateException("集群总线启动失败: " + e.getMessage(), e);
+        }
+
+        running = true;
+        Thread.ofPlatform().name("cluster-acceptor").daemon().start(this::runAcceptor);
+        Thread.ofPlatform().name("cluster-discovery").daemon().start(this::runDiscovery);
+        Thread.ofPlatform().name("cluster-announcer").daemon().start(this::runAnnouncer);
+        log.info("集群组播 {}:{}，TCP监听 {}:{}", multicastAddress.getHostAddress(), multicastPort, bindAddress, boundTcpPort);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        if (multicastSocket != null) {
+            multicastSocket.close();
+        }
+        peers.values().forEach(Peer::close);
+        peers.clear();
+    }
+
+    @Override
+    protected void presenceChanged() {
+        presenceDirty = true;
+        synchronized (announceSignal) {
+            announceSignal.notifyAll();
+        }
+    }
+
+    @Override
+    protected int sendToPeers(ClusterDelivery delivery) {
+        int sent = 0;
+        for (Peer peer : peers.values()) {
+            if (mayHold(peer.presence, delivery)) {
+                if (!peer.outbox.offer(delivery)) {
+                    droppedCount.incrementAndGet();
+                    log.warn("节点 {} 发送队列已满，丢弃通知", peer.nodeId);
+                    continue;
+                }
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    @Override
+    protected int getPeerCount() {
+        return peers.size();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("dropped", droppedCount.get());
+        stats.put("tcpPort", boundTcpPort);
+        return stats;
+    }
+
+    /**
+     * 定期广播本节点地址和在线摘要，摘要变化时尽快广播；同时淘汰长时间未广播的节点
+     */
+    private void runAnnouncer() {
+        long lastAnnounce = 0;
+        while (running) {
+            try {
+                synchronized (announceSignal) {
+                    long wait = lastAnnounce + announceIntervalMs - System.currentTimeMillis();
+                    if (!presenceDirty && wait > 0) {
+                        announceSignal.wait(wait);
+                    }
+                }
+                long gap = System.currentTimeMillis() - lastAnnounce;
+                if (gap < MIN_ANNOUNCE_GAP_MS) {
+                    TimeUnit.MILLISECONDS.sleep(MIN_ANNOUNCE_GAP_MS - gap);
+                }
+                presenceDirty = false;
+                byte[] announcement = encodeAnnouncement();
+                multicastSocket.send(new DatagramPacket(announcement, announcement.length, multicastGroup));
+                lastAnnounce = System.currentTimeMillis();
+                expirePeers(lastAnnounce);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("广播在线摘要失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void runDiscovery() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        Mac mac = newMac();
+        while (running) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                multicastSocket.receive(packet);
+                int length = packet.getLength() - MAC_LENGTH;
+                if (length <= 0 || !verify(mac, null, 0, buffer, packet.getOffset(), length,
+                        buffer, packet.getOffset() + length)) {
+                    log.debug("丢弃未通过校验的集群广播: {}", packet.getSocketAddress());
+                    continue;
+                }
+                handleAnnouncement(new DataInputStream(new ByteArrayInputStream(buffer, packet.getOffset(), length)));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("接收集群广播失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // 只在广播线程中使用
+    private Mac announceMac;
+
+    private byte[] encodeAnnouncement() throws IOException {
+        if (announceMac == null) {
+            announceMac = newMac();
+        }
+        PresenceSummary presence = getLocalPresence();
+        long[] bits = presence.toLongArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + bits.length * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeUTF(group);
+        out.writeUTF(nodeId);
+        out.writeUTF(advertiseHost);
+        out.writeInt(boundTcpPort);
+        out.writeLong(System.currentTimeMillis());
+        out.writeBoolean(presence.hasAgents());
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+        out.write(sign(announceMac, null, 0, bytes.toByteArray(), 0, bytes.size()));
+        return bytes.toByteArray();
+    }
+
+    private void handleAnnouncement(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || !group.equals(in.readUTF())) {
+            return;
+        }
+        String peerId = in.readUTF();
+        if (nodeId.equals(peerId)) {
+            return;
+        }
+        String host = in.readUTF();
+        int port = in.readInt();
+        long announcedAt = in.readLong();
+        long now = System.currentTimeMillis();
+        if (Math.abs(now - announcedAt) > Math.max(MAX_ANNOUNCE_SKEW_MS, announceIntervalMs * 3)) {
+            log.debug("丢弃过期的集群广播: {}", peerId);
+            return;
+        }
+        boolean hasAgents = in.readBoolean();
+        int words = in.readInt();
+        if (words < 0 || words > MAX_DATAGRAM / 8) {
+            return;
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        Peer known = peers.get(peerId);
+        if (known != null && announcedAt <= known.lastAnnouncedAt) {
+            // 早于已接受广播的报文视为重放
+            return;
+        }
+
+        Peer peer = peers.compute(peerId, (id, existing) -> {
+            if (existing != null && existing.host.equals(host) && existing.port == port) {
+                return existing;
+            }
+            if (existing != null) {
+                existing.close();
+            }
+            log.info("发现集群节点: {} ({}:{})", id, host, port);
+            return new Peer(id, host, port);
+        });
+        peer.lastAnnouncedAt = announcedAt;
+        peer.presence = new PresenceSummary(bits, hasAgents);
+        peer.lastSeen = now;
+    }
+
+    private void expirePeers(long now) {
+        peers.values().removeIf(peer -> {
+            if (now - peer.lastSeen > announceIntervalMs * 3) {
+                log.info("集群节点超时下线: {}", peer.nodeId);
+                peer.close();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void runAcceptor() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofPlatform().name("cluster-reader-" + socket.getPort()).daemon().start(() -> readDeliveries(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("接受集群连接失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取对端发来的帧：先下发随机挑战，首帧为对端节点ID，之后每帧一条通知
+     */
+    private void readDeliveries(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            byte[] challenge = new byte[CHALLENGE_LENGTH];
+            random.nextBytes(challenge);
+            socket.getOutputStream().write(challenge);
+            socket.getOutputStream().flush();
+
+            Mac mac = newMac();
+            long counter = 0;
+            String peerId = null;
+            while (running) {
+                byte[] body = readFrame(in, mac, challenge, counter++);
+                DataInputStream frame = new DataInputStream(new ByteArrayInputStream(body));
+                if (peerId == null) {
+                    peerId = frame.readUTF();
+                    log.info("集群节点 {} 已连接", peerId);
+                    continue;
+                }
+                receive(decodeDelivery(frame, body.length));
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("集群连接关闭: {}", e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取集群通知失败: {}", e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * 读取一帧并校验长度与MAC，校验失败时抛出异常断开连接
+     */
+    private byte[] readFrame(DataInputStream in, Mac mac, byte[] challenge, long counter) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxFrameBytes) {
+            throw new IOException("集群帧长度超出上限: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        byte[] signature = new byte[MAC_LENGTH];
+        in.readFully(signature);
+        if (!verify(mac, challenge, counter, body, 0, length, signature, 0)) {
+            throw new IOException("集群帧校验失败");
+        }
+        return body;
+    }
+
+    private static ClusterDelivery decodeDelivery(DataInputStream in, int frameLength) throws IOException {
+        ClusterDelivery.Target target = ClusterDelivery.Target.values()[in.readByte()];
+        String userType = in.readUTF();
+        String userId = in.readUTF();
+        String inboxId = readNullableUTF(in);
+        String teamId = readNullableUTF(in);
+        long seq = in.readLong();
+        int payloadLength = in.readInt();
+        if (payloadLength < 0 || payloadLength > frameLength) {
+            throw new IOException("通知长度无效: " + payloadLength);
+        }
+        byte[] payload = new byte[payloadLength];
+        in.readFully(payload);
+        return new ClusterDelivery(target, userType, userId, inboxId, teamId, seq, payload);
+    }
+
+    private static void encodeDelivery(DataOutputStream out, ClusterDelivery delivery) throws IOException {
+        out.writeByte(delivery.target().ordinal());
+        out.writeUTF(delivery.userType());
+        out.writeUTF(delivery.userId());
+        writeNullableUTF(out, delivery.inboxId());
+        writeNullableUTF(out, delivery.teamId());
+        out.writeLong(delivery.seq());
+        out.writeInt(delivery.payload().length);
+        out.write(delivery.payload());
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化" + MAC_ALGORITHM + "失败", e);
+        }
+    }
+
+    /**
+     * 计算帧MAC，组播报文没有挑战（challenge为null）
+     */
+    private static byte[] sign(Mac mac, byte[] challenge, long counter, byte[] body, int offset, int length) {
+        if (challenge != null) {
+            mac.update(challenge);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mac.update((byte) (counter >>> shift));
+            }
+        }
+        mac.update(body, offset, length);
+        return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+    }
+
+    private static boolean verify(Mac mac, byte[] challenge, long counter, byte[] body, int offset, int length,
+                                  byte[] signature, int signatureOffset) {
+        byte[] expected = sign(mac, challenge, counter, body, offset, length);
+        return MessageDigest.isEqual(expected,
+                Arrays.copyOfRange(signature, signatureOffset, signatureOffset + MAC_LENGTH));
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("关闭失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 对端节点：有界发送队列 + 串行写TCP的发送线程，慢节点不阻塞webhook处理
+     */
+    private final class Peer {
+        final String nodeId;
+        final String host;
+        final int port;
+        final BlockingQueue<ClusterDelivery> outbox = new ArrayBlockingQueue<>(peerQueueCapacity);
+        final Thread sender;
+        volatile PresenceSummary presence;
+        volatile long lastSeen = System.currentTimeMillis();
+        // 只在接收广播的线程中读写
+        long lastAnnouncedAt;
+        volatile boolean closed;
+        private Socket socket;
+        private DataOutputStream out;
+        // 以下字段只在发送线程中使用
+        private final Mac mac = newMac();
+        private final ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream(1024);
+        private final DataOutputStream frameOut = new DataOutputStream(frameBuffer);
+        private byte[] challenge;
+        private long counter;
+
+        Peer(String nodeId, String host, int port) {
+            this.nodeId = nodeId;
+            this.host = host;
+            this.port = port;
+            this.sender = Thread.ofPlatform().name("cluster-sender-" + nodeId).daemon().start(this::runSender);
+        }
+
+        private void runSender() {
+            while (!closed) {
+                ClusterDelivery delivery;
+                try {
+                    delivery = outbox.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    write(delivery);
+                } catch (IOException e) {
+                    droppedCount.incrementAndGet();
+                    log.warn("向集群节点 {} 发送通知失败: {}", nodeId, e.getMessage());
+                    disconnect();
+                }
+            }
+            disconnect();
+        }
+
+        private void write(ClusterDelivery delivery) throws IOException {
+            if (out == null) {
+                socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+                challenge = new DataInputStream(socket.getInputStream()).readNBytes(CHALLENGE_LENGTH);
+                if (challenge.length != CHALLENGE_LENGTH) {
+                    throw new EOFException("未收到集群连接挑战");
+                }
+                counter = 0;
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                frameOut.writeUTF(MulticastClusterBus.this.nodeId);
+                writeFrame();
+            }
+            encodeDelivery(frameOut, delivery);
+            if (frameBuffer.size() > maxFrameBytes) {
+                frameBuffer.reset();
+                droppedCount.incrementAndGet();
+                log.warn("通知超出集群帧长度上限，未发往节点 {}", nodeId);
+            } else {
+                writeFrame();
+            }
+            // 队列中还有待发通知时合并写出
+            if (outbox.isEmpty()) {
+                out.flush();
+            }
+        }
+
+        /**
+         * 写出 frameBuffer 中的一帧：长度、内容、MAC
+         */
+        private void writeFrame() throws IOException {
+            byte[] body = frameBuffer.toByteArray();
+            frameBuffer.reset();
+            out.writeInt(body.length);
+            out.write(body);
+            out.write(sign(mac, challenge, counter++, body, 0, body.length));
+        }
+
+        private void disconnect() {
+            frameBuffer.reset();
+            closeQuietly(socket);
+            socket = null;
+            out = null;
+        }
+
+        void close() {
+            closed = true;
+            sender.interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.hotelwebhook.cluster;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 节点在线摘要
+ * 在线接收者键的布隆过滤器，可能误判为在线（多发一次），不会漏判
+ */
+public class PresenceSummary {
+
+    private static final int HASHES = 3;
+
+    private final AtomicLongArray words;
+    private final int bitCount;
+    private volatile boolean hasAgents;
+
+    public PresenceSummary(int bitCount) {
+        this.words = new AtomicLongArray((bitCount + 63) / 64);
+        this.bitCount = words.length() * 64;
+    }
+
+    /**
+     * 由其他节点发来的位图构建
+     */
+    public PresenceSummary(long[] bits, boolean hasAgents) {
+        this.words = new AtomicLongArray(bits);
+        this.bitCount = bits.length * 64;
+        this.hasAgents = hasAgents;
+    }
+
+    public void add(String recipientKey, boolean agent) {
+        int h1 = mix(recipientKey.hashCode());
+        int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+            int index = bit >>> 6;
+            if ((words.get(index) & mask) == 0) {
+                words.getAndAccumulate(index, mask, (a, b) -> a | b);
+            }
+        }
+        if (agent) {
+            hasAgents = true;
+        }
+    }
+
+    public boolean mightContain(String recipientKey) {
+        int h1 = mix(recipientKey.hashCode());
+        int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean hasAgents() {
+        return hasAgents;
+    }
+
+    public long[] toLongArray() {
+        long[] bits = new long[words.length()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = words.get(i);
+        }
+        return bits;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.hotelwebhook.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.hotelwebhook.cluster.ClusterBus;
+import com.example.hotelwebhook.cluster.InProcessClusterBus;
+import com.example.hotelwebhook.cluster.MulticastClusterBus;
+
+@Configuration
+public class ClusterConfig {
+    
+    @Value("${cluster.mode:local}")
+    private String mode;
+    
+    @Value("${cluster.node-id:}")
+    private String nodeId;
+    
+    @Value("${cluster.group:hotel-webhook}")
+    private String group;
+    
+    @Value("${cluster.presence.bits:65536}")
+    private int presenceBits;
+    
+    @Value("${cluster.multicast.address:239.255.27.1}")
+    private String multicastAddress;
+    
+    @Value("${cluster.multicast.port:45566}")
+    private int multicastPort;
+    
+    @Value("${cluster.multicast.interface:}")
+    private String multicastInterface;
+    
+    @Value("${cluster.advertise-host:127.0.0.1}")
+    private String advertiseHost;
+    
+    // TCP监听地址，为空时与对外地址相同
+    @Value("${cluster.tcp.bind-address:}")
+    private String bindAddress;
+    
+    @Value("${cluster.tcp.port:0}")
+    private int tcpPort;
+    
+    @Value("${cluster.tcp.max-frame-bytes:4194304}")
+    private int maxFrameBytes;
+    
+    // 节点间通信的共享密钥，未配置时使用连接标识密钥
+    @Value("${cluster.secret:${websocket.token.secret:}}")
+    private String secret;
+    
+    @Value("${cluster.announce-interval-ms:1000}")
+    private long announceIntervalMs;
+    
+    @Value("${cluster.peer-queue-capacity:10000}")
+    private int peerQueueCapacity;
+    
+    /**
+     * 集群总线：local 进程内（单节点时不发布）；multicast UDP组播发现 + TCP投递
+     */
+    @Bean(destroyMethod = "stop")
+    public ClusterBus clusterBus() throws UnknownHostException {
+        String id = nodeId.isEmpty() ? UUID.randomUUID().toString().substring(0, 8) : nodeId;
+        return switch (mode) {
+            case "local" -> new InProcessClusterBus(id, presenceBits);
+            case "multicast" -> {
+                if (secret.isBlank()) {
+                    throw new IllegalStateException("multicast模式必须配置cluster.secret或websocket.token.secret");
+                }
+                yield new MulticastClusterBus(id, group, presenceBits,
+                        InetAddress.getByName(multicastAddress), multicastPort, multicastInterface,
+                        advertiseHost, bindAddress, tcpPort, announceIntervalMs, peerQueueCapacity,
+                        secret.getBytes(StandardCharsets.UTF_8), maxFrameBytes);
+            }
+            default -> throw new IllegalArgumentException("未知的集群模式: " + mode);
+        };
+    }
+}
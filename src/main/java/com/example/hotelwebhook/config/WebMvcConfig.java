@@ -0,0 +1,20 @@
+package com.example.hotelwebhook.config;
+
+import com.example.hotelwebhook.websocket.AdmissionControl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+    
+    @Autowired
+    private AdmissionControl admissionControl;
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionControl)
+                .addPathPatterns("/api/websocket/connect/**");
+    }
+}
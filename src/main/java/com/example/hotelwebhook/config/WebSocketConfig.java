@@ -1,6 +1,10 @@
 package com.example.hotelwebhook.config;
 
+import com.example.hotelwebhook.websocket.AdmissionControl;
+import com.example.hotelwebhook.websocket.ConnectionHandshakeInterceptor;
+import com.example.hotelwebhook.websocket.NotifyHandshakeHandler;
 import com.example.hotelwebhook.websocket.NotifyWebSocketHandler;
+import com.example.hotelwebhook.websocket.SessionSendQueueFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -14,9 +18,27 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Autowired
     private NotifyWebSocketHandler notifyWebSocketHandler;
     
+    @Autowired
+    private AdmissionControl admissionControl;
+    
+    @Autowired
+    private ConnectionHandshakeInterceptor connectionHandshakeInterceptor;
+    
+    @Autowired
+    private NotifyHandshakeHandler notifyHandshakeHandler;
+    
+    @Autowired
+    private SessionSendQueueFactory sendQueueFactory;
+    
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // 通知编码通过Sec-WebSocket-Protocol子协议选择，未声明时为JSON
+        notifyHandshakeHandler.setSupportedProtocols(sendQueueFactory.getSupportedSubprotocols());
         registry.addHandler(notifyWebSocketHandler, "/ws/notify")
+                // permessage-deflate协商与应用层压缩二选一
+                .setHandshakeHandler(notifyHandshakeHandler)
+                // 准入控制在前，被限流的握手不做标识验证
+                .addInterceptors(admissionControl, connectionHandshakeInterceptor)
                 .setAllowedOrigins("*");
     }
-} 
\ No newline at end of file
+}
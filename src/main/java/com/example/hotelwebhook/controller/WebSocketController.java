@@ -5,18 +5,24 @@ import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.hotelwebhook.cluster.ClusterBus;
+import com.example.hotelwebhook.metrics.VirtualThreadPinningMonitor;
 import com.example.hotelwebhook.model.response.WebSocketConnectionResponse;
 import com.example.hotelwebhook.service.WebSocketSessionManager;
 import com.example.hotelwebhook.utils.ConnectionUtil;
+import com.example.hotelwebhook.websocket.AdmissionControl;
+import com.example.hotelwebhook.websocket.SessionSendQueueFactory;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,6 +38,20 @@ public class WebSocketController {
     @Autowired
     private ConnectionUtil connectionUtil;
     
+    @Autowired
+    private ClusterBus clusterBus;
+    
+    @Autowired
+    private AdmissionControl admissionControl;
+    
+    @Autowired
+    private SessionSendQueueFactory sendQueueFactory;
+    
+    @Autowired
+    private VirtualThreadPinningMonitor pinningMonitor;
+    
+    public static final String ISSUER_KEY_HEADER = "X-Issuer-Key";
+    
     @Value("${websocket.server.url}")
     private String websocketServerUrl;
     
@@ -40,7 +60,14 @@ public class WebSocketController {
      */
     @PostMapping("/connect/agent")
     public ResponseEntity<WebSocketConnectionResponse> getAgentWebSocketConnection(
-            @RequestParam String userId) {
+            @RequestParam String userId,
+            @RequestHeader(value = ISSUER_KEY_HEADER, required = false) String issuerKey) {
+        
+        // 客服标识可订阅全部会话，只签发给持有签发方密钥的后端
+        ResponseEntity<WebSocketConnectionResponse> rejected = checkIssuer(issuerKey, "agent", userId);
+        if (rejected != null) {
+            return rejected;
+        }
         
         try {
             // 生成连接标识
@@ -77,7 +104,14 @@ public class WebSocketController {
      */
     @PostMapping("/connect/guest")
     public ResponseEntity<WebSocketConnectionResponse> getGuestWebSocketConnection(
-            @RequestParam String contactId) {
+            @RequestParam String contactId,
+            @RequestHeader(value = ISSUER_KEY_HEADER, required = false) String issuerKey) {
+        
+        // 客人标识可接收该联系人的全部消息，同样只签发给持有签发方密钥的后端
+        ResponseEntity<WebSocketConnectionResponse> rejected = checkIssuer(issuerKey, "guest", contactId);
+        if (rejected != null) {
+            return rejected;
+        }
         
         try {
             // 生成连接标识
@@ -147,6 +181,13 @@ public class WebSocketController {
             response.put("onlineGuestCount", sessionManager.getOnlineGuestCount());
             response.put("onlineAgentCount", sessionManager.getOnlineAgentCount());
             response.put("totalConnectionCount", sessionManager.getTotalConnectionCount());
+            response.putAll(sessionManager.getConnectionStats());
+            response.put("heartbeat", sessionManager.getHeartbeatStats());
+            response.put("subscriptions", sessionManager.getSubscriptionStats());
+            response.put("admission", admissionControl.getStats());
+            Map<String, Object> execution = new HashMap<>(pinningMonitor.getStats());
+            execution.put("writers", sendQueueFactory.getWriterStats());
+            response.put("execution", execution);
             
             return ResponseEntity.ok(response);
             
@@ -159,9 +200,69 @@ public class WebSocketController {
         }
     }
     
+    /**
+     * 获取用户各连接的发送队列深度
+     */
+    @GetMapping("/queues/{userId}")
+    public ResponseEntity<Map<String, Object>> getSendQueueStats(@PathVariable String userId) {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("userId", userId);
+            response.put("sessions", sessionManager.getSendQueueStats(userId));
+            response.put("subscriptions", sessionManager.getSubscriptions(userId));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("获取发送队列统计失败: {}", e.getMessage(), e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "获取发送队列统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+    
+    /**
+     * 获取集群总线统计
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> getClusterStats() {
+        Map<String, Object> response = new HashMap<>(clusterBus.getStats());
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 构建WebSocket连接URL
      */
+    /**
+     * 校验签发方密钥：未配置密钥时拒绝签发（403，与准入控制的503区分），密钥缺失或错误时返回401
+     *
+     * @return 通过时返回null
+     */
+    private ResponseEntity<WebSocketConnectionResponse> checkIssuer(String issuerKey, String userType, String userId) {
+        if (!connectionUtil.isIssuerConfigured()) {
+            log.warn("拒绝签发{}连接标识: 未配置签发方密钥, userId={}", userType, userId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(
+                    WebSocketConnectionResponse.builder()
+                            .success(false)
+                            .message("未配置签发方密钥")
+                            .build()
+            );
+        }
+        if (!connectionUtil.isTrustedIssuer(issuerKey)) {
+            log.warn("拒绝签发{}连接标识: 签发方密钥无效, userId={}", userType, userId);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    WebSocketConnectionResponse.builder()
+                            .success(false)
+                            .message("签发方密钥无效")
+                            .build()
+            );
+        }
+        return null;
+    }
+    
     private String buildWebSocketUrl(String paramName, String paramValue, String connectionId) {
         return String.format("%s/ws/notify?%s=%s&connectionId=%s", 
                 websocketServerUrl, paramName, paramValue, connectionId);
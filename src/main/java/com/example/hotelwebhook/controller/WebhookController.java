@@ -1,12 +1,15 @@
 package com.example.hotelwebhook.controller;
 
 import com.example.hotelwebhook.service.ChatwootWebhookProcessor;
-import com.example.hotelwebhook.utils.JsonUtil;
+import com.example.hotelwebhook.service.WebhookDedupCache;
+import com.example.hotelwebhook.service.WebhookIngestQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 @Slf4j
@@ -14,24 +17,59 @@ import java.util.Map;
 @CrossOrigin
 @RequestMapping("/chatwoot-webhook")
 public class WebhookController {
-    
+
     @Autowired
     private ChatwootWebhookProcessor webhookProcessor;
-    
+
+    @Autowired
+    private WebhookIngestQueue ingestQueue;
+
+    @Autowired
+    private WebhookDedupCache dedupCache;
+
     @PostMapping("/callback")
-    public ResponseEntity<String> handleChatwootWebhook(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<String> handleChatwootWebhook(@RequestBody byte[] body) {
+        long receivedAtNanos = System.nanoTime();
         try {
-            log.info("收到Chatwoot webhook回调: {}", JsonUtil.toJson(payload));
-            webhookProcessor.processWebhookEvent(payload);
+            log.info("收到Chatwoot webhook回调: {} 字节", body.length);
+            if (log.isDebugEnabled()) {
+                log.debug("Chatwoot webhook回调内容: {}", new String(body, StandardCharsets.UTF_8));
+            }
+            if (ingestQueue.isEnabled()) {
+                if (!ingestQueue.submit(body)) {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("busy");
+                }
+                return ResponseEntity.accepted().body("accepted");
+            }
+            if (!webhookProcessor.processWebhookEvent(body, receivedAtNanos)) {
+                // 返回非2xx，Chatwoot稍后重试
+                return ResponseEntity.internalServerError().body("error");
+            }
             return ResponseEntity.ok("success");
         } catch (Exception e) {
             log.error("处理webhook回调失败: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().body("error");
         }
     }
-    
+
+    /**
+     * 获取异步接收队列统计
+     */
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<Map<String, Object>> ingestStats() {
+        return ResponseEntity.ok(ingestQueue.getStats());
+    }
+
+    /**
+     * 获取去重缓存统计
+     */
+    @GetMapping("/dedup/stats")
+    public ResponseEntity<Map<String, Object>> dedupStats() {
+        return ResponseEntity.ok(dedupCache.getStats());
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("ok");
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+package com.example.hotelwebhook.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.hotelwebhook.model.ChatwootEventType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * webhook到WebSocket推送链路的指标
+ * 所有计时器、计数器在启动时按 阶段×事件类型、结果×接收者类型 预先注册，
+ * 热路径上按枚举下标取用，不分配标签、不拼接字符串
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String STAGE_TIMER = "hotel.webhook.stage";
+    public static final String SEND_COUNTER = "hotel.websocket.send.failures";
+    public static final String BYTES_COUNTER = "hotel.websocket.outbound.bytes";
+
+    /**
+     * 链路阶段
+     */
+    public enum Stage {
+        /** 接收到开始处理（异步模式下为排队时间） */
+        RECEIVE,
+        /** 请求体解析 */
+        PARSE,
+        /** 更新参与者索引、构建并编码通知 */
+        ROUTE,
+        /** 入队到所有接收者连接并发布到集群 */
+        ENQUEUE,
+        /** 通知帧编码完成到写入连接（含发送队列等待），每个连接记录一次 */
+        WRITE
+    }
+
+    /**
+     * 推送未成功的原因
+     */
+    public enum Outcome {
+        /** 发送队列溢出被丢弃 */
+        DROPPED,
+        /** 本节点和集群中都没有接收者的在线连接 */
+        UNDELIVERABLE,
+        /** 写入连接失败 */
+        FAILED
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer[][] stageTimers;
+    private SendMeters guestMeters;
+    private SendMeters agentMeters;
+
+    @PostConstruct
+    public void init() {
+        ChatwootEventType[] eventTypes = ChatwootEventType.values();
+        stageTimers = new Timer[Stage.values().length][eventTypes.length];
+        for (Stage stage : Stage.values()) {
+            for (ChatwootEventType eventType : eventTypes) {
+                stageTimers[stage.ordinal()][eventType.ordinal()] = Timer.builder(STAGE_TIMER)
+                        .description("webhook推送链路各阶段耗时")
+                        .tag("stage", stage.name().toLowerCase())
+                        .tag("event", eventType.getValue())
+                        .register(meterRegistry);
+            }
+        }
+        guestMeters = new SendMeters("guest");
+        agentMeters = new SendMeters("agent");
+    }
+
+    /**
+     * 记录阶段耗时
+     *
+     * @param eventType 事件类型，null按unknown记录
+     */
+    public void recordStage(Stage stage, ChatwootEventType eventType, long nanos) {
+        int event = (eventType != null ? eventType : ChatwootEventType.UNKNOWN).ordinal();
+        stageTimers[stage.ordinal()][event].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 接收者类型对应的发送指标
+     */
+    public SendMeters sendMeters(String userType) {
+        return "agent".equals(userType) ? agentMeters : guestMeters;
+    }
+
+    public void increment(Outcome outcome, String userType) {
+        sendMeters(userType).increment(outcome);
+    }
+
+    /**
+     * 某一接收者类型的发送计数器，由该类型的所有发送队列共享
+     */
+    public final class SendMeters {
+        private final Counter[] counters = new Counter[Outcome.values().length];
+        private final Counter originalBytes;
+        private final Counter wireBytes;
+
+        private SendMeters(String recipient) {
+            for (Outcome outcome : Outcome.values()) {
+                counters[outcome.ordinal()] = Counter.builder(SEND_COUNTER)
+                        .description("未成功推送的通知数")
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .tag("recipient", recipient)
+                        .register(meterRegistry);
+            }
+            originalBytes = Counter.builder(BYTES_COUNTER)
+                    .description("写入连接的通知字节数，original为编码前的JSON长度，wire为实际写入长度")
+                    .baseUnit("bytes")
+                    .tag("form", "original")
+                    .tag("recipient", recipient)
+                    .register(meterRegistry);
+            wireBytes = Counter.builder(BYTES_COUNTER)
+                    .description("写入连接的通知字节数，original为编码前的JSON长度，wire为实际写入长度")
+                    .baseUnit("bytes")
+                    .tag("form", "wire")
+                    .tag("recipient", recipient)
+                    .register(meterRegistry);
+        }
+
+        public void increment(Outcome outcome) {
+            counters[outcome.ordinal()].increment();
+        }
+
+        public void increment(Outcome outcome, long amount) {
+            counters[outcome.ordinal()].increment(amount);
+        }
+
+        /**
+         * 记录通知帧写入连接的耗时
+         */
+        public void recordWrite(ChatwootEventType eventType, long nanos) {
+            recordStage(Stage.WRITE, eventType, nanos);
+        }
+
+        /**
+         * 记录一次通知写入的字节数（不含permessage-deflate的效果）
+         *
+         * @param original JSON长度
+         * @param wire     实际写入的载荷长度
+         */
+        public void recordBytes(int original, int wire) {
+            originalBytes.increment(original);
+            wireBytes.increment(wire);
+        }
+    }
+}
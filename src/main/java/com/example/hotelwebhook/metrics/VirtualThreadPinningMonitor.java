@@ -0,0 +1,116 @@
+package com.example.hotelwebhook.metrics;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 虚拟线程固定（pinning）监控
+ * 通过JFR事件流订阅 jdk.VirtualThreadPinned：虚拟线程在synchronized或本地方法中阻塞时无法让出载体线程。
+ * 每次事件计入指标，每个不同的调用位置只打印一次调用栈
+ */
+@Slf4j
+@Component
+public class VirtualThreadPinningMonitor {
+
+    public static final String PINNED_TIMER = "hotel.virtual.pinned";
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_SITES = 256;
+    private static final int LOGGED_FRAMES = 12;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${virtual-threads.pinning.enabled:true}")
+    private boolean enabled;
+
+    // 固定时长超过阈值才记录事件
+    @Value("${virtual-threads.pinning.threshold-ms:20}")
+    private long thresholdMs;
+
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+    private Timer pinnedTimer;
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        if (!virtualThreads || !enabled) {
+            return;
+        }
+        pinnedTimer = Timer.builder(PINNED_TIMER)
+                .description("虚拟线程被固定在载体线程上的时长")
+                .register(meterRegistry);
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+            log.info("虚拟线程固定监控已启动，阈值 {} 毫秒", thresholdMs);
+        } catch (RuntimeException e) {
+            stream = null;
+            log.warn("无法启动JFR事件流，虚拟线程固定监控不可用: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("virtualThreads", virtualThreads);
+        stats.put("pinningMonitor", stream != null);
+        stats.put("pinnedEvents", pinnedCount.get());
+        stats.put("pinnedSites", loggedSites.size());
+        return stats;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.incrementAndGet();
+        pinnedTimer.record(event.getDuration().toNanos(), TimeUnit.NANOSECONDS);
+
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || loggedSites.size() >= MAX_LOGGED_SITES) {
+            return;
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        StringBuilder stack = new StringBuilder();
+        for (int i = 0; i < Math.min(frames.size(), LOGGED_FRAMES); i++) {
+            RecordedFrame frame = frames.get(i);
+            stack.append("\n    at ").append(frame.getMethod().getType().getName())
+                    .append('.').append(frame.getMethod().getName())
+                    .append(':').append(frame.getLineNumber());
+        }
+        if (loggedSites.add(stack.toString())) {
+            log.warn("虚拟线程被固定 {} 毫秒，线程 {}:{}", event.getDuration().toMillis(),
+                    event.getThread() != null ? event.getThread().getJavaName() : "-", stack);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.hotelwebhook.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.hotelwebhook.service.NotificationReplayBuffer;
+import com.example.hotelwebhook.service.NotificationService;
+import com.example.hotelwebhook.service.WebSocketSessionManager;
+import com.example.hotelwebhook.service.WebhookDedupCache;
+import com.example.hotelwebhook.service.WebhookIngestQueue;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 连接数、队列深度等状态类指标，只在采集时读取
+ */
+@Component
+public class WebSocketMeterBinder implements MeterBinder {
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private WebhookIngestQueue ingestQueue;
+
+    @Autowired
+    private NotificationReplayBuffer replayBuffer;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private WebhookDedupCache dedupCache;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hotel.websocket.sessions", sessionManager, WebSocketSessionManager::getOnlineGuestCount)
+                .description("在线连接数")
+                .tag("recipient", "guest")
+                .register(registry);
+        Gauge.builder("hotel.websocket.sessions", sessionManager, WebSocketSessionManager::getOnlineAgentCount)
+                .description("在线连接数")
+                .tag("recipient", "agent")
+                .register(registry);
+        Gauge.builder("hotel.websocket.outbound.queued", sessionManager, WebSocketSessionManager::getQueuedMessageTotal)
+                .description("所有连接发送队列中待发送的消息数")
+                .register(registry);
+        Gauge.builder("hotel.webhook.ingest.queued", ingestQueue, WebhookIngestQueue::getQueueDepth)
+                .description("webhook接收队列内存中的积压事件数")
+                .register(registry);
+        Gauge.builder("hotel.webhook.ingest.spilled", ingestQueue, WebhookIngestQueue::getSpilledPending)
+                .description("webhook接收队列磁盘中的积压事件数")
+                .register(registry);
+        Gauge.builder("hotel.websocket.replay.bytes", replayBuffer, NotificationReplayBuffer::getTotalBytes)
+                .description("补发缓冲区占用字节数")
+                .register(registry);
+        FunctionCounter.builder("hotel.notification.coalesce.received", notificationService,
+                        NotificationService::getCoalesceReceivedCount)
+                .description("进入合并窗口的conversation_updated数")
+                .register(registry);
+        FunctionCounter.builder("hotel.notification.coalesce.emitted", notificationService,
+                        NotificationService::getCoalesceEmittedCount)
+                .description("合并后实际发出的conversation_updated通知数")
+                .register(registry);
+        Gauge.builder("hotel.notification.coalesce.ratio", notificationService, NotificationService::getCoalesceRatio)
+                .description("被合并掉的conversation_updated占比")
+                .register(registry);
+        FunctionCounter.builder("hotel.webhook.dedup.lookups", dedupCache, WebhookDedupCache::getLookupCount)
+                .description("经过去重检查的webhook事件数")
+                .register(registry);
+        FunctionCounter.builder("hotel.webhook.dedup.hits", dedupCache, WebhookDedupCache::getHitCount)
+                .description("被判定为重复而丢弃的webhook事件数")
+                .register(registry);
+        Gauge.builder("hotel.webhook.dedup.hit.ratio", dedupCache, WebhookDedupCache::getHitRate)
+                .description("webhook去重命中率")
+                .register(registry);
+    }
+}
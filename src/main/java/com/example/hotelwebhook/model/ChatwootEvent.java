@@ -4,22 +4,34 @@ import lombok.Data;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
-
-import java.time.LocalDateTime;
-import java.util.Map;
+import lombok.ToString;
 
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatwootEvent {
-    private String eventType; // "message_created", "conversation_created", "conversation_updated", etc.
+    private ChatwootEventType eventType;
     private String conversationId;
-    private String metadata;
+    @ToString.Exclude
+    private byte[] metadata; // conversation.messages[0] 的原始JSON字节
     private Long timestamp;
 
     // 新增字段用于消息定向推送
     private String messageType; // "incoming" 或 "outgoing"
     private String recipientId; // 接收者ID (contactId 或 userId)
-    private String recipientType; // "guest" 或 "agent"
+    private RecipientType recipientType; // 接收者类型
+
+    // 会话参与者，用于会话状态通知定向推送
+    private String contactId; // meta.sender.id
+    private String assigneeId; // meta.assignee.id
+    private boolean metaPresent; // 是否携带 meta 对象，携带时 assigneeId 为null表示已取消分配
+    private boolean resolved; // 会话是否已解决
+
+    // 会话所属收件箱与团队，用于按订阅推送
+    private String inboxId; // conversation.inbox_id
+    private String teamId; // meta.team.id
+
+    // 去重键：消息事件为消息ID，会话事件为会话ID+updated_at；为null时不去重
+    private String dedupKey;
 }
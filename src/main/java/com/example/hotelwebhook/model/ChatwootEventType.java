@@ -0,0 +1,47 @@
+package com.example.hotelwebhook.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chatwoot webhook事件类型
+ */
+public enum ChatwootEventType {
+    MESSAGE_CREATED("message_created"),
+    MESSAGE_UPDATED("message_updated"),
+    CONVERSATION_CREATED("conversation_created"),
+    CONVERSATION_UPDATED("conversation_updated"),
+    CONVERSATION_RESOLVED("conversation_resolved"),
+    UNKNOWN("unknown");
+
+    private static final Map<String, ChatwootEventType> BY_VALUE = new HashMap<>();
+
+    static {
+        for (ChatwootEventType type : values()) {
+            BY_VALUE.put(type.value, type);
+        }
+    }
+
+    private final String value;
+
+    ChatwootEventType(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Chatwoot中的事件名，同时作为通知类型下发给客户端
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * 按事件名解析，未知事件返回UNKNOWN
+     */
+    public static ChatwootEventType fromValue(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        return BY_VALUE.getOrDefault(value, UNKNOWN);
+    }
+}
@@ -13,6 +13,7 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class NotificationMessage {
     private String type; // "new_message", "conversation_created", "conversation_updated", "typing", etc.
+    private Long seq; // 通知序号，客户端重连时作为lastSeq传回以补发断线期间的通知
     private String conversationId;
     private String messageId;
     private String senderId;
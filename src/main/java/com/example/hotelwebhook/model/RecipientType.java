@@ -0,0 +1,22 @@
+package com.example.hotelwebhook.model;
+
+/**
+ * 通知接收者类型
+ */
+public enum RecipientType {
+    GUEST("guest"),
+    AGENT("agent");
+
+    private final String value;
+
+    RecipientType(String value) {
+        this.value = value;
+    }
+
+    /**
+     * 与连接参数中的userType一致
+     */
+    public String getValue() {
+        return value;
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
+import com.example.hotelwebhook.service.HeartbeatWheel;
+import com.example.hotelwebhook.websocket.SessionSendQueue;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.time.LocalDateTime;
@@ -18,7 +21,11 @@ public class UserSession {
     private String sessionId;
     private WebSocketSession webSocketSession;
     private LocalDateTime connectedAt;
-    private LocalDateTime lastHeartbeat;
+    private long connectedAtMillis; // 建立时间（毫秒），用于连接时长统计
     private String userAgent;
     private String ipAddress;
+    @ToString.Exclude
+    private SessionSendQueue sendQueue; // 出站发送队列
+    @ToString.Exclude
+    private HeartbeatWheel.Timer heartbeatTimer; // 心跳超时定时器
 }
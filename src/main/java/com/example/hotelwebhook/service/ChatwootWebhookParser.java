@@ -0,0 +1,280 @@
+package com.example.hotelwebhook.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.hotelwebhook.model.ChatwootEvent;
+import com.example.hotelwebhook.model.ChatwootEventType;
+import com.example.hotelwebhook.model.RecipientType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chatwoot webhook流式解析器
+ * 单次扫描请求体，只提取路由需要的字段，其余内容直接跳过，不构建树
+ */
+@Slf4j
+@Component
+public class ChatwootWebhookParser {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private JsonFactory jsonFactory;
+
+    @PostConstruct
+    public void init() {
+        jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * 解析webhook请求体
+     *
+     * @return 可路由的事件；未知事件或缺少必要字段时返回null
+     */
+    public ChatwootEvent parse(byte[] body) throws IOException {
+        Fields fields = new Fields();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (name) {
+                    case "event" -> fields.event = scalar(parser);
+                    case "message_type" -> fields.messageType = scalar(parser);
+                    case "conversation" -> {
+                        if (token == JsonToken.START_OBJECT) {
+                            fields.hasConversation = true;
+                            parseConversation(parser, body, fields);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    // 会话类事件直接以会话对象作为payload
+                    case "id" -> fields.topLevelId = scalar(parser);
+                    case "status" -> fields.topLevelStatus = scalar(parser);
+                    case "updated_at" -> fields.topLevelUpdatedAt = scalar(parser);
+                    case "inbox_id" -> fields.topLevelInboxId = scalar(parser);
+                    case "meta" -> parseMeta(parser, fields.topLevelMeta);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return toEvent(fields);
+    }
+
+    /**
+     * 解析 conversation 对象
+     */
+    private void parseConversation(JsonParser parser, byte[] body, Fields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "id" -> fields.conversationId = scalar(parser);
+                case "status" -> fields.conversationStatus = scalar(parser);
+                case "updated_at" -> fields.conversationUpdatedAt = scalar(parser);
+                case "inbox_id" -> fields.conversationInboxId = scalar(parser);
+                case "meta" -> parseMeta(parser, fields.conversationMeta);
+                case "messages" -> {
+                    if (token == JsonToken.START_ARRAY) {
+                        fields.firstMessage = captureFirstElement(parser, body);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 解析 meta 对象中的 sender.id / assignee.id / team.id
+     */
+    private void parseMeta(JsonParser parser, Meta meta) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        meta.present = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "sender" -> meta.senderId = idOf(parser);
+                case "assignee" -> meta.assigneeId = idOf(parser);
+                case "team" -> meta.teamId = idOf(parser);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 读取 {id: ...} 对象中的id，标量值直接返回
+     */
+    private String idOf(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return scalar(parser);
+        }
+        String id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if ("id".equals(name)) {
+                id = scalar(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * 截取数组第一个对象的原始字节，跳过其余元素
+     */
+    private byte[] captureFirstElement(JsonParser parser, byte[] body) throws IOException {
+        byte[] first = null;
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+            int start = (int) parser.currentTokenLocation().getByteOffset();
+            parser.skipChildren();
+            int end = (int) parser.currentLocation().getByteOffset();
+            first = Arrays.copyOfRange(body, start, end);
+            token = parser.nextToken();
+        }
+        while (token != null && token != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+            token = parser.nextToken();
+        }
+        return first;
+    }
+
+    /**
+     * 读取标量值，对象和数组跳过并返回null
+     */
+    private String scalar(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * 根据提取的字段构建路由事件
+     */
+    private ChatwootEvent toEvent(Fields fields) {
+        ChatwootEventType eventType = ChatwootEventType.fromValue(fields.event);
+
+        // 会话类事件没有 conversation 字段时使用顶层字段
+        boolean topLevelConversation = !fields.hasConversation && eventType != ChatwootEventType.MESSAGE_CREATED;
+        String conversationId = topLevelConversation ? fields.topLevelId : fields.conversationId;
+        String status = topLevelConversation ? fields.topLevelStatus : fields.conversationStatus;
+        Meta meta = topLevelConversation ? fields.topLevelMeta : fields.conversationMeta;
+        String updatedAt = topLevelConversation ? fields.topLevelUpdatedAt : fields.conversationUpdatedAt;
+        String inboxId = topLevelConversation ? fields.topLevelInboxId : fields.conversationInboxId;
+
+        ChatwootEvent.ChatwootEventBuilder builder = ChatwootEvent.builder()
+                .eventType(eventType)
+                .timestamp(System.currentTimeMillis())
+                .conversationId(conversationId)
+                .contactId(meta.senderId)
+                .assigneeId(meta.assigneeId)
+                .metaPresent(meta.present)
+                .inboxId(inboxId)
+                .teamId(meta.teamId);
+
+        return switch (eventType) {
+            case MESSAGE_CREATED -> {
+                RecipientType recipientType;
+                String recipientId;
+                if ("incoming".equals(fields.messageType)) {
+                    // 客人向客服发送消息，接收者是客服
+                    recipientType = RecipientType.AGENT;
+                    recipientId = meta.assigneeId;
+                } else if ("outgoing".equals(fields.messageType)) {
+                    // 客服向客人发送消息，接收者是客人
+                    recipientType = RecipientType.GUEST;
+                    recipientId = meta.senderId;
+                } else {
+                    yield null;
+                }
+                yield builder
+                        .dedupKey(dedupKey(eventType, fields.topLevelId))
+                        .messageType(fields.messageType)
+                        .recipientId(recipientId)
+                        .recipientType(recipientType)
+                        .metadata(fields.firstMessage)
+                        .build();
+            }
+            case CONVERSATION_CREATED, CONVERSATION_UPDATED -> conversationId == null ? null : builder
+                    .dedupKey(dedupKey(eventType, conversationId, updatedAt))
+                    .resolved("resolved".equals(status))
+                    .build();
+            case CONVERSATION_RESOLVED -> conversationId == null ? null : builder
+                    .dedupKey(dedupKey(eventType, conversationId, updatedAt))
+                    .resolved(true)
+                    .build();
+            default -> {
+                log.warn("未知的事件类型: {}", fields.event);
+                yield null;
+            }
+        };
+    }
+
+    /**
+     * 消息事件按消息ID去重
+     */
+    private static String dedupKey(ChatwootEventType eventType, String messageId) {
+        return messageId == null ? null : eventType.getValue() + ':' + messageId;
+    }
+
+    /**
+     * 会话事件按会话ID和更新时间去重，同一会话的不同变更更新时间不同
+     */
+    private static String dedupKey(ChatwootEventType eventType, String conversationId, String updatedAt) {
+        return updatedAt == null ? null : eventType.getValue() + ':' + conversationId + ':' + updatedAt;
+    }
+
+    /**
+     * 扫描过程中收集的字段
+     */
+    private static final class Fields {
+        String event;
+        String messageType;
+        boolean hasConversation;
+        String conversationId;
+        String conversationStatus;
+        String conversationUpdatedAt;
+        String conversationInboxId;
+        final Meta conversationMeta = new Meta();
+        byte[] firstMessage;
+        String topLevelId;
+        String topLevelStatus;
+        String topLevelUpdatedAt;
+        String topLevelInboxId;
+        final Meta topLevelMeta = new Meta();
+    }
+
+    private static final class Meta {
+        // 是否出现了 meta 对象，出现时缺少 assignee 表示会话未分配
+        boolean present;
+        String senderId;
+        String assigneeId;
+        String teamId;
+    }
+}
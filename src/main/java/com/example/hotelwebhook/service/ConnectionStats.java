@@ -0,0 +1,222 @@
+package com.example.hotelwebhook.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 连接统计：在注册、移除时增量更新，查询与连接数无关
+ */
+public class ConnectionStats {
+
+    // 每用户设备数分布：1、2、3、4、5台及以上
+    private static final int MAX_DEVICE_BUCKET = 5;
+    private static final int RATE_WINDOW_SECONDS = 60;
+    // 连接时长直方图：10秒一格，覆盖24小时，更早的连接合并计数
+    private static final long AGE_SLOT_MILLIS = 10_000;
+    private static final int AGE_SLOTS = 8640;
+
+    private final AtomicLong guestSessions = new AtomicLong();
+    private final AtomicLong agentSessions = new AtomicLong();
+    private final AtomicLong guestUsers = new AtomicLong();
+    private final AtomicLong agentUsers = new AtomicLong();
+    private final AtomicLongArray devicesPerUser = new AtomicLongArray(MAX_DEVICE_BUCKET + 1);
+    private final RateWindow connects = new RateWindow(RATE_WINDOW_SECONDS);
+    private final RateWindow disconnects = new RateWindow(RATE_WINDOW_SECONDS);
+    private final AgeHistogram ages = new AgeHistogram();
+
+    /**
+     * 连接注册后调用
+     *
+     * @param devices 该用户注册后的连接数
+     */
+    public void sessionAdded(String userType, int devices, long connectedAtMillis) {
+        boolean agent = "agent".equals(userType);
+        (agent ? agentSessions : guestSessions).incrementAndGet();
+        if (devices == 1) {
+            (agent ? agentUsers : guestUsers).incrementAndGet();
+        }
+        moveDeviceBucket(devices - 1, devices);
+        connects.record(System.currentTimeMillis());
+        ages.add(connectedAtMillis);
+    }
+
+    /**
+     * 连接移除后调用
+     *
+     * @param devices 该用户移除后剩余的连接数
+     */
+    public void sessionRemoved(String userType, int devices, long connectedAtMillis) {
+        boolean agent = "agent".equals(userType);
+        (agent ? agentSessions : guestSessions).decrementAndGet();
+        if (devices == 0) {
+            (agent ? agentUsers : guestUsers).decrementAndGet();
+        }
+        moveDeviceBucket(devices + 1, devices);
+        disconnects.record(System.currentTimeMillis());
+        ages.remove(connectedAtMillis);
+    }
+
+    private void moveDeviceBucket(int from, int to) {
+        if (from > 0) {
+            devicesPerUser.decrementAndGet(Math.min(from, MAX_DEVICE_BUCKET));
+        }
+        if (to > 0) {
+            devicesPerUser.incrementAndGet(Math.min(to, MAX_DEVICE_BUCKET));
+        }
+    }
+
+    public long getGuestSessions() {
+        return guestSessions.get();
+    }
+
+    public long getAgentSessions() {
+        return agentSessions.get();
+    }
+
+    public long getGuestUsers() {
+        return guestUsers.get();
+    }
+
+    public long getAgentUsers() {
+        return agentUsers.get();
+    }
+
+    /**
+     * 统计快照
+     */
+    public Map<String, Object> snapshot() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("onlineGuestUsers", guestUsers.get());
+        stats.put("onlineAgentUsers", agentUsers.get());
+        stats.put("distinctUsers", guestUsers.get() + agentUsers.get());
+
+        Map<String, Long> devices = new LinkedHashMap<>();
+        for (int i = 1; i <= MAX_DEVICE_BUCKET; i++) {
+            devices.put(i < MAX_DEVICE_BUCKET ? String.valueOf(i) : MAX_DEVICE_BUCKET + "+", devicesPerUser.get(i));
+        }
+        stats.put("devicesPerUser", devices);
+
+        stats.put("connectsPerSecond", connects.perSecond(now));
+        stats.put("disconnectsPerSecond", disconnects.perSecond(now));
+        stats.put("connectionAgeSeconds", ages.percentiles(now, 0.5, 0.9, 0.99));
+        return stats;
+    }
+
+    /**
+     * 最近N秒的每秒事件数
+     */
+    private static final class RateWindow {
+        private final long[] counts;
+        private final long[] seconds;
+
+        RateWindow(int windowSeconds) {
+            counts = new long[windowSeconds];
+            seconds = new long[windowSeconds];
+        }
+
+        synchronized void record(long nowMillis) {
+            long second = nowMillis / 1000;
+            int index = (int) (second % counts.length);
+            if (seconds[index] != second) {
+                seconds[index] = second;
+                counts[index] = 0;
+            }
+            counts[index]++;
+        }
+
+        /**
+         * 不含当前未结束的一秒
+         */
+        synchronized double perSecond(long nowMillis) {
+            long current = nowMillis / 1000;
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (seconds[i] < current && seconds[i] >= current - counts.length) {
+                    total += counts[i];
+                }
+            }
+            return (double) total / counts.length;
+        }
+    }
+
+    /**
+     * 按建立时间分格的连接计数，百分位只遍历固定数量的格子
+     */
+    private static final class AgeHistogram {
+        private final long[] counts = new long[AGE_SLOTS];
+        private final long[] slots = new long[AGE_SLOTS];
+        // 已移出窗口的连接
+        private long older;
+        private long total;
+
+        synchronized void add(long connectedAtMillis) {
+            long slot = connectedAtMillis / AGE_SLOT_MILLIS;
+            int index = Math.floorMod(slot, AGE_SLOTS);
+            if (slots[index] != slot) {
+                // 格子被复用，原有连接已超出窗口
+                older += counts[index];
+                counts[index] = 0;
+                slots[index] = slot;
+            }
+            counts[index]++;
+            total++;
+        }
+
+        synchronized void remove(long connectedAtMillis) {
+            long slot = connectedAtMillis / AGE_SLOT_MILLIS;
+            int index = Math.floorMod(slot, AGE_SLOTS);
+            if (slots[index] == slot && counts[index] > 0) {
+                counts[index]--;
+            } else if (older > 0) {
+                older--;
+            }
+            total--;
+        }
+
+        /**
+         * 从最新的格子向前累计，计算各百分位的连接时长（秒）
+         */
+        synchronized Map<String, Long> percentiles(long nowMillis, double... quantiles) {
+            Map<String, Long> result = new LinkedHashMap<>();
+            if (total <= 0) {
+                for (double q : quantiles) {
+                    result.put(label(q), 0L);
+                }
+                result.put("max", 0L);
+                return result;
+            }
+            long windowSeconds = AGE_SLOTS * AGE_SLOT_MILLIS / 1000;
+            long currentSlot = nowMillis / AGE_SLOT_MILLIS;
+            long cumulative = 0;
+            long maxAge = 0;
+            int next = 0;
+            for (int i = 0; i < AGE_SLOTS; i++) {
+                long slot = currentSlot - i;
+                int index = Math.floorMod(slot, AGE_SLOTS);
+                if (slots[index] != slot || counts[index] == 0) {
+                    continue;
+                }
+                long ageSeconds = Math.max(0, (nowMillis - slot * AGE_SLOT_MILLIS) / 1000);
+                cumulative += counts[index];
+                maxAge = ageSeconds;
+                while (next < quantiles.length && cumulative >= Math.ceil(quantiles[next] * total)) {
+                    result.put(label(quantiles[next++]), ageSeconds);
+                }
+            }
+            // 剩余的都是超出窗口的连接
+            while (next < quantiles.length) {
+                result.put(label(quantiles[next++]), windowSeconds);
+            }
+            result.put("max", cumulative < total ? windowSeconds : maxAge);
+            return result;
+        }
+
+        private static String label(double quantile) {
+            return "p" + Math.round(quantile * 100);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.hotelwebhook.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话参与者索引：conversationId -> {contactId, assigneeId}
+ * 由webhook中的 meta.sender / meta.assignee 填充，已解决的会话在TTL到期后淘汰
+ */
+public class ConversationParticipantIndex {
+
+    private final Map<String, Participants> index = new ConcurrentHashMap<>();
+
+    private final long resolvedTtlMillis;
+    private final long idleTtlMillis;
+
+    public ConversationParticipantIndex(long resolvedTtlMillis, long idleTtlMillis) {
+        this.resolvedTtlMillis = resolvedTtlMillis;
+        this.idleTtlMillis = idleTtlMillis;
+    }
+
+    /**
+     * 更新会话参与者
+     * 客人ID为null时保留原值；负责客服在事件携带 meta 时整体覆盖（meta.assignee 缺失或为null表示已取消分配），
+     * 只有缺少 meta 对象时才保留原值
+     *
+     * @param metaPresent 事件是否携带 meta 对象
+     */
+    public void update(String conversationId, String contactId, String assigneeId, boolean metaPresent, boolean resolved) {
+        if (conversationId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        index.compute(conversationId, (id, existing) -> {
+            String contact = contactId != null ? contactId : existing != null ? existing.contactId() : null;
+            String assignee = metaPresent || existing == null ? assigneeId : existing.assigneeId();
+            return new Participants(contact, assignee, now, resolved ? now : 0);
+        });
+    }
+
+    /**
+     * 获取会话参与者
+     */
+    public Participants get(String conversationId) {
+        return conversationId != null ? index.get(conversationId) : null;
+    }
+
+    /**
+     * 淘汰已解决超过TTL或长时间无更新的会话
+     *
+     * @return 淘汰数量
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = index.size();
+        index.values().removeIf(p -> (p.resolvedAt() > 0 && now - p.resolvedAt() > resolvedTtlMillis)
+                || now - p.updatedAt() > idleTtlMillis);
+        return before - index.size();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 会话参与者
+     *
+     * @param contactId  客人ID
+     * @param assigneeId 负责客服ID
+     * @param updatedAt  最近更新时间
+     * @param resolvedAt 解决时间，未解决为0
+     */
+    public record Participants(String contactId, String assigneeId, long updatedAt, long resolvedAt) {
+    }
+}
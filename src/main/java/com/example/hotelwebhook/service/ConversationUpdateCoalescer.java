@@ -0,0 +1,134 @@
+package com.example.hotelwebhook.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.example.hotelwebhook.model.ChatwootEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 会话更新合并
+ * 客服的一次操作（分配、标签、状态、优先级）会触发多个 conversation_updated，
+ * 同一会话在窗口内的更新只保留最后一个，窗口结束时发出一条携带最新状态的通知。
+ * 窗口从第一条更新开始计时，合并不会使通知延迟超过一个窗口；停止时立即发出所有待发送的更新
+ */
+@Slf4j
+public class ConversationUpdateCoalescer {
+
+    private final long windowMillis;
+    private final Consumer<ChatwootEvent> flushHandler;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong emittedCount = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * @param windowMillis 合并窗口
+     * @param flushHandler 窗口结束时处理合并后的事件，在合并线程中执行
+     */
+    public ConversationUpdateCoalescer(long windowMillis, Consumer<ChatwootEvent> flushHandler) {
+        this.windowMillis = windowMillis;
+        this.flushHandler = flushHandler;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("conversation-coalescer").daemon().factory());
+    }
+
+    /**
+     * 停止合并线程，并在调用线程中发出尚未到期的更新；之后提交的更新不再合并，直接发出
+     */
+    public void stop() {
+        stopped = true;
+        scheduler.shutdownNow();
+        for (String conversationId : pending.keySet()) {
+            flush(conversationId);
+        }
+    }
+
+    /**
+     * 提交会话更新，同一会话已有待发送的更新时替换为最新的
+     */
+    public void submit(ChatwootEvent event) {
+        receivedCount.incrementAndGet();
+        String conversationId = event.getConversationId();
+        pending.compute(conversationId, (id, existing) -> {
+            if (existing != null) {
+                existing.latest = event;
+                return existing;
+            }
+            Pending created = new Pending(event);
+            if (!stopped) {
+                try {
+                    scheduler.schedule(() -> {
+                        // 只发出本窗口的条目，期间被提前发出后新建的条目等待自己的窗口
+                        if (pending.remove(id, created)) {
+                            emit(id, created);
+                        }
+                    }, windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 与stop并发，由下面的flush发出
+                }
+            }
+            return created;
+        });
+        if (stopped) {
+            flush(conversationId);
+        }
+    }
+
+    /**
+     * 立即发出会话待发送的更新，用于在同一会话的其他状态通知之前保持顺序
+     */
+    public void flush(String conversationId) {
+        Pending entry = pending.remove(conversationId);
+        if (entry != null) {
+            emit(conversationId, entry);
+        }
+    }
+
+    private void emit(String conversationId, Pending entry) {
+        emittedCount.incrementAndGet();
+        try {
+            flushHandler.accept(entry.latest);
+        } catch (RuntimeException e) {
+            log.error("发送合并后的会话更新失败: conversationId={}, {}", conversationId, e.getMessage(), e);
+        }
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    public long getEmittedCount() {
+        return emittedCount.get();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 被合并掉的更新占比
+     */
+    public double getCollapseRatio() {
+        long received = receivedCount.get();
+        return received == 0 ? 0 : 1 - (double) (emittedCount.get() + pending.size()) / received;
+    }
+
+    private static final class Pending {
+        // 只在 ConcurrentHashMap.compute 内修改，remove 之后读取
+        ChatwootEvent latest;
+
+        Pending(ChatwootEvent latest) {
+            this.latest = latest;
+        }
+    }
+}
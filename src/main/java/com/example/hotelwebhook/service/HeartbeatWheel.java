@@ -0,0 +1,197 @@
+package com.example.hotelwebhook.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 心跳超时时间轮
+ * 每个连接注册一个定时器；心跳只更新定时器的截止时间（无分配、无锁），
+ * 时间轮线程在到达定时器所在格子时再检查：已超时则过期，否则按新的截止时间重新挂入
+ */
+@Slf4j
+public class HeartbeatWheel {
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timer[] slots;
+    private final Consumer<String> expiryHandler;
+    private final Queue<Timer> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong scheduledCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread worker;
+    private long currentTick;
+
+    /**
+     * @param tickMillis    每格时长，也是过期检测的精度
+     * @param wheelSize     格子数，向上取整为2的幂
+     * @param expiryHandler 过期回调，参数为sessionId，在时间轮线程中执行
+     */
+    public HeartbeatWheel(long tickMillis, int wheelSize, Consumer<String> expiryHandler) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.slots = new Timer[size];
+        this.expiryHandler = expiryHandler;
+    }
+
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("heartbeat-wheel").daemon().start(this::run);
+    }
+
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * 为连接创建定时器，截止时间从现在开始计算
+     */
+    public Timer schedule(String sessionId, long timeoutNanos) {
+        Timer timer = new Timer(sessionId, timeoutNanos);
+        timer.touch(System.nanoTime());
+        pending.add(timer);
+        scheduledCount.incrementAndGet();
+        return timer;
+    }
+
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    private void run() {
+        long startNanos = System.nanoTime();
+        while (running) {
+            long deadline = startNanos + (currentTick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+                if (!running) {
+                    return;
+                }
+            }
+            try {
+                long now = System.nanoTime();
+                Timer timer;
+                while ((timer = pending.poll()) != null) {
+                    if (timer.cancelled) {
+                        scheduledCount.decrementAndGet();
+                    } else {
+                        link(timer, now);
+                    }
+                }
+                expireSlot(now);
+            } catch (RuntimeException e) {
+                log.error("心跳时间轮处理失败: {}", e.getMessage(), e);
+            }
+            currentTick++;
+        }
+    }
+
+    private void expireSlot(long now) {
+        int index = (int) (currentTick & mask);
+        Timer timer = slots[index];
+        while (timer != null) {
+            Timer next = timer.next;
+            if (timer.cancelled) {
+                unlink(timer);
+                scheduledCount.decrementAndGet();
+            } else if (timer.expireTick <= currentTick) {
+                unlink(timer);
+                if (timer.deadlineNanos - now <= 0) {
+                    scheduledCount.decrementAndGet();
+                    expiredCount.incrementAndGet();
+                    try {
+                        expiryHandler.accept(timer.sessionId);
+                    } catch (RuntimeException e) {
+                        log.error("心跳过期处理失败: {}", e.getMessage(), e);
+                    }
+                } else {
+                    // 期间有心跳，按新的截止时间重新挂入
+                    link(timer, now);
+                }
+            }
+            timer = next;
+        }
+    }
+
+    private void link(Timer timer, long now) {
+        long remaining = timer.deadlineNanos - now;
+        long ticks = Math.max(1, (remaining + tickNanos - 1) / tickNanos);
+        timer.expireTick = currentTick + ticks;
+        int index = (int) (timer.expireTick & mask);
+        timer.slot = index;
+        timer.prev = null;
+        timer.next = slots[index];
+        if (slots[index] != null) {
+            slots[index].prev = timer;
+        }
+        slots[index] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slots[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * 连接的心跳定时器
+     * touch/cancel 可在任意线程调用，链表字段只由时间轮线程访问
+     */
+    public static final class Timer {
+        private final String sessionId;
+        private final long timeoutNanos;
+        private volatile long deadlineNanos;
+        private volatile long lastTouchNanos;
+        private volatile boolean cancelled;
+
+        private Timer prev;
+        private Timer next;
+        private int slot;
+        private long expireTick;
+
+        private Timer(String sessionId, long timeoutNanos) {
+            this.sessionId = sessionId;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        /**
+         * 记录心跳，截止时间顺延一个超时周期
+         */
+        public void touch(long nowNanos) {
+            lastTouchNanos = nowNanos;
+            deadlineNanos = nowNanos + timeoutNanos;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public long getLastTouchNanos() {
+            return lastTouchNanos;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.hotelwebhook.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.hotelwebhook.model.NotificationMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 通知信封字节写入器
+ * 将已序列化的消息JSON作为原始值直接拼接到通知的data字段，不再转义成字符串
+ */
+@Component
+public class NotificationEnvelopeWriter {
+
+    private static final byte[] DATA_FIELD = ",\"data\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_VALUE = "null".getBytes(StandardCharsets.UTF_8);
+    private static final int ENVELOPE_OVERHEAD = 192;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private JsonFactory jsonFactory;
+
+    @PostConstruct
+    public void init() {
+        jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * 写出通知信封，字段顺序与 NotificationMessage 的默认序列化一致
+     *
+     * @param notification 通知（忽略其data字段）
+     * @param rawData      已序列化的JSON，原样作为data的值；为null时写出null
+     */
+    public byte[] write(NotificationMessage notification, byte[] rawData) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ENVELOPE_OVERHEAD + (rawData != null ? rawData.length : 0));
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            // data 由本方法手工写出，关闭生成器时不自动补全对象结尾
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartObject();
+            generator.writeStringField("type", notification.getType());
+            if (notification.getSeq() != null) {
+                generator.writeNumberField("seq", notification.getSeq());
+            } else {
+                generator.writeNullField("seq");
+            }
+            generator.writeStringField("conversationId", notification.getConversationId());
+            generator.writeStringField("messageId", notification.getMessageId());
+            generator.writeStringField("senderId", notification.getSenderId());
+            generator.writeStringField("content", notification.getContent());
+            if (notification.getTimestamp() != null) {
+                generator.writeNumberField("timestamp", notification.getTimestamp());
+            } else {
+                generator.writeNullField("timestamp");
+            }
+            generator.flush();
+
+            out.write(DATA_FIELD);
+            out.write(rawData != null ? rawData : NULL_VALUE);
+            out.write('}');
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.hotelwebhook.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.hotelwebhook.websocket.NotificationFrame;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 通知重放缓冲区
+ * 按接收者保存最近的通知，客户端重连时携带lastSeq补发断线期间的通知。
+ * 序号按接收者分配：在接收者锁内递增并写入帧，同一接收者的缓冲区和发送队列都按序号顺序收到通知。
+ * 单个接收者按条数、字节数、时长限制；全局按内存预算淘汰最久未活动的接收者（后台线程执行，不阻塞推送）
+ */
+@Slf4j
+@Component
+public class NotificationReplayBuffer {
+
+    // 保留淘汰记录的接收者数上限，超出时丢弃最早的记录（之后重连按有缺口处理）
+    private static final int MAX_EVICTED_RECIPIENTS = 65536;
+
+    @Value("${websocket.replay.max-messages:100}")
+    private int maxMessages;
+
+    @Value("${websocket.replay.max-bytes:262144}")
+    private long maxBytes;
+
+    @Value("${websocket.replay.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    @Value("${websocket.replay.memory-budget-bytes:67108864}")
+    private long memoryBudgetBytes;
+
+    /**
+     * 信封中的占位序号，表示通知参与补发；投递时替换为接收者的序号
+     */
+    public static final long PENDING_SEQ = 1;
+
+    // 已整体淘汰的接收者 → 淘汰时已丢弃的最大序号，接收者再次有通知或重连时恢复到新建的缓冲区（访问需持有其锁）
+    private final LinkedHashMap<String, Long> evictedSeqs = new LinkedHashMap<>();
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    private final ExecutorService evictor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("replay-evictor").daemon().factory());
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong evictedRecipients = new AtomicLong();
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+    /**
+     * 为接收者分配序号并记录通知，在接收者锁内把带序号的帧交给 deliver 入队
+     * 与 {@link #resume} 在同一把锁上排序：注册前的连接收到实时推送，注册后的连接从补发中收到，不重不漏
+     *
+     * @param frame   共享帧，序号为0时不参与补发，原样交给 deliver
+     * @param deliver 入队到接收者当前的连接，不可阻塞
+     */
+    public void append(String recipientKey, NotificationFrame frame, Consumer<NotificationFrame> deliver) {
+        if (frame.getSeq() <= 0) {
+            deliver.accept(frame);
+            return;
+        }
+        while (true) {
+            Ring ring = rings.computeIfAbsent(recipientKey, this::newRing);
+            synchronized (ring) {
+                if (ring.evicted) {
+                    continue;
+                }
+                NotificationFrame stamped = frame.withSeq(++ring.lastSeq);
+                ring.add(stamped.retained());
+                ring.trim(System.currentTimeMillis());
+                deliver.accept(stamped);
+                break;
+            }
+        }
+        if (totalBytes.get() > memoryBudgetBytes && evicting.compareAndSet(false, true)) {
+            evictor.execute(() -> {
+                try {
+                    evictIdleRecipients();
+                } finally {
+                    evicting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 在接收者锁内收集需要补发的通知并注册连接，保证补发先于之后的实时通知
+     *
+     * @param lastSeq  客户端已收到的最大序号，为null时不补发
+     * @param register 入队补发通知并注册连接的动作
+     */
+    public void resume(String recipientKey, Long lastSeq, Consumer<Replay> register) {
+        if (lastSeq == null) {
+            register.accept(Replay.EMPTY);
+            return;
+        }
+        while (true) {
+            Ring ring = rings.computeIfAbsent(recipientKey, this::newRing);
+            synchronized (ring) {
+                if (ring.evicted) {
+                    continue;
+                }
+                ring.touch();
+                ring.trim(System.currentTimeMillis());
+
+                List<NotificationFrame> frames = new ArrayList<>();
+                boolean known = lastSeq == ring.droppedUpTo;
+                for (NotificationFrame frame : ring.frames) {
+                    if (frame.getSeq() > lastSeq) {
+                        frames.add(frame);
+                    } else if (frame.getSeq() == lastSeq) {
+                        known = true;
+                    }
+                }
+                // 客户端的lastSeq早于已淘汰的通知，或不是本节点发给该接收者的序号（来自其他节点、重启前），
+                // 说明有缺口，需要客户端全量刷新
+                boolean gap = ring.droppedUpTo > lastSeq || !known;
+                register.accept(new Replay(frames, gap));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 淘汰过期通知和空缓冲区
+     *
+     * @return 移除的接收者数量
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Map.Entry<String, Ring> entry : rings.entrySet()) {
+            Ring ring = entry.getValue();
+            synchronized (ring) {
+                ring.trim(now);
+                if (ring.frames.isEmpty() && now - ring.lastAccess > maxAgeSeconds * 1000) {
+                    ring.evicted = true;
+                    rings.remove(entry.getKey(), ring);
+                    recordEvicted(entry.getKey(), ring.droppedUpTo);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public int getRecipientCount() {
+        return rings.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getEvictedRecipients() {
+        return evictedRecipients.get();
+    }
+
+    /**
+     * 超出全局内存预算时，按最近活动时间淘汰接收者，直到降到预算的90%（淘汰线程中执行）
+     */
+    private void evictIdleRecipients() {
+        long target = memoryBudgetBytes * 9 / 10;
+        if (totalBytes.get() <= target) {
+            return;
+        }
+        // 先取活动时间快照再排序，排序期间活动时间仍会变化
+        List<Candidate> candidates = new ArrayList<>(rings.size());
+        rings.forEach((key, ring) -> candidates.add(new Candidate(key, ring, ring.lastAccess)));
+        candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+        for (Candidate candidate : candidates) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+            Ring ring = candidate.ring();
+            synchronized (ring) {
+                if (ring.evicted) {
+                    continue;
+                }
+                ring.evicted = true;
+                ring.clear();
+                rings.remove(candidate.key(), ring);
+                recordEvicted(candidate.key(), ring.droppedUpTo);
+            }
+            evictedRecipients.incrementAndGet();
+        }
+        log.info("重放缓冲区超出内存预算，淘汰后占用: {} 字节，接收者: {}", totalBytes.get(), rings.size());
+    }
+
+    /**
+     * 新建接收者的缓冲区，此前被淘汰过时沿用淘汰时的位置
+     */
+    private Ring newRing(String recipientKey) {
+        Long evicted;
+        synchronized (evictedSeqs) {
+            evicted = evictedSeqs.remove(recipientKey);
+        }
+        // 没有记录时序号以当前时间为基准，大于重启或淘汰前发出的序号，此前的通知无法确认是否已送达
+        return new Ring(evicted != null ? evicted : System.currentTimeMillis() * 1000);
+    }
+
+    private void recordEvicted(String recipientKey, long droppedUpTo) {
+        synchronized (evictedSeqs) {
+            evictedSeqs.put(recipientKey, droppedUpTo);
+            if (evictedSeqs.size() > MAX_EVICTED_RECIPIENTS) {
+                Iterator<String> eldest = evictedSeqs.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private record Candidate(String key, Ring ring, long lastAccess) {
+    }
+
+    /**
+     * 补发结果
+     *
+     * @param frames 需要补发的通知（按序号升序）
+     * @param gap    是否有已淘汰的通知无法补发
+     */
+    public record Replay(List<NotificationFrame> frames, boolean gap) {
+        static final Replay EMPTY = new Replay(List.of(), false);
+    }
+
+    /**
+     * 单个接收者的环形缓冲（需持有对象锁访问）
+     */
+    private final class Ring {
+        final ArrayDeque<NotificationFrame> frames = new ArrayDeque<>();
+        long bytes;
+        // 已丢弃的最大序号，不大于它的通知无法补发
+        long droppedUpTo;
+        // 最近分配给该接收者的序号
+        long lastSeq;
+        volatile long lastAccess = System.currentTimeMillis();
+        boolean evicted;
+
+        Ring(long droppedUpTo) {
+            this.droppedUpTo = droppedUpTo;
+            this.lastSeq = droppedUpTo;
+        }
+
+        void add(NotificationFrame frame) {
+            frames.addLast(frame);
+            bytes += frame.getLength();
+            totalBytes.addAndGet(frame.getLength());
+            touch();
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        void trim(long now) {
+            long oldest = now - maxAgeSeconds * 1000;
+            while (!frames.isEmpty() && (frames.size() > maxMessages || bytes > maxBytes
+                    || frames.peekFirst().getCreatedAt() < oldest)) {
+                removeFirst();
+            }
+        }
+
+        void clear() {
+            while (!frames.isEmpty()) {
+                removeFirst();
+            }
+        }
+
+        private void removeFirst() {
+            NotificationFrame frame = frames.pollFirst();
+            bytes -= frame.getLength();
+            totalBytes.addAndGet(-frame.getLength());
+            droppedUpTo = frame.getSeq();
+        }
+    }
+}
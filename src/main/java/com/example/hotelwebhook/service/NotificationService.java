@@ -1,16 +1,22 @@
 package com.example.hotelwebhook.service;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import com.example.hotelwebhook.utils.JsonUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.example.hotelwebhook.metrics.PipelineMetrics;
 import com.example.hotelwebhook.model.ChatwootEvent;
 import com.example.hotelwebhook.model.NotificationMessage;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.example.hotelwebhook.model.RecipientType;
+import com.example.hotelwebhook.websocket.NotificationFrame;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -23,18 +29,99 @@ public class NotificationService {
     @Autowired
     private ObjectMapper objectMapper;
     
+    @Autowired
+    private NotificationEnvelopeWriter envelopeWriter;
+    
+    @Autowired
+    private PipelineMetrics metrics;
+    
+    // 通知data字段编码: string 兼容现有客户端的JSON字符串（默认）; raw 原始JSON值，客户端均已支持后开启
+    @Value("${notification.data-encoding:string}")
+    private String dataEncoding;
+    
+    // conversation_updated 合并窗口，0表示不合并
+    @Value("${notification.coalesce.window-ms:100}")
+    private long coalesceWindowMs;
+    
+    private ConversationUpdateCoalescer coalescer;
+    
+    @PostConstruct
+    public void init() {
+        if (coalesceWindowMs > 0) {
+            coalescer = new ConversationUpdateCoalescer(coalesceWindowMs, this::route);
+            log.info("会话更新合并窗口: {} 毫秒", coalesceWindowMs);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (coalescer != null) {
+            coalescer.stop();
+        }
+    }
+    
     /**
      * 处理Chatwoot事件
+     *
+     * @return 是否处理成功；进入合并窗口的更新视为成功
+     */
+    public boolean processEvent(ChatwootEvent event) {
+        try {
+            // 记录会话参与者，供会话状态通知定向推送
+            sessionManager.updateConversationParticipants(event.getConversationId(),
+                    event.getContactId(), event.getAssigneeId(), event.isMetaPresent(), event.isResolved());
+            
+            if (coalescer != null && event.getConversationId() != null) {
+                switch (event.getEventType()) {
+                    case CONVERSATION_UPDATED -> {
+                        // 同一会话窗口内的多次更新合并为一条，message_created 等不经过合并
+                        coalescer.submit(event);
+                        return true;
+                    }
+                    // 先发出待合并的更新，保持同一会话状态通知的先后顺序
+                    case CONVERSATION_RESOLVED -> coalescer.flush(event.getConversationId());
+                    default -> {
+                    }
+                }
+            }
+            return route(event);
+        } catch (Exception e) {
+            log.error("处理事件失败: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 被合并的 conversation_updated 数、实际发出数与合并比例
+     */
+    public long getCoalesceReceivedCount() {
+        return coalescer != null ? coalescer.getReceivedCount() : 0;
+    }
+    
+    public long getCoalesceEmittedCount() {
+        return coalescer != null ? coalescer.getEmittedCount() : 0;
+    }
+    
+    public double getCoalesceRatio() {
+        return coalescer != null ? coalescer.getCollapseRatio() : 0;
+    }
+    
+    /**
+     * 构建通知并推送给接收者
+     *
+     * @return 是否处理成功
      */
-    public void processEvent(ChatwootEvent event) {
+    private boolean route(ChatwootEvent event) {
+        long routeStart = System.nanoTime();
         try {
             NotificationMessage notification = createNotificationMessage(event);
-            log.info("执行到 processEvent event: {}", JsonUtil.toJson(notification));
-            if (notification != null) {
-                sendNotification(event, notification);
+            if (log.isDebugEnabled()) {
+                log.debug("执行到 processEvent event: {}", JsonUtil.toJson(notification));
             }
+            return notification == null || sendNotification(event, notification, routeStart);
         } catch (Exception e) {
             log.error("处理事件失败: {}", e.getMessage(), e);
+            return false;
         }
     }
     
@@ -44,27 +131,24 @@ public class NotificationService {
     private NotificationMessage createNotificationMessage(ChatwootEvent event) {
         NotificationMessage.NotificationMessageBuilder builder = NotificationMessage.builder()
                 .timestamp(System.currentTimeMillis())
+                .seq(NotificationReplayBuffer.PENDING_SEQ)
                 .conversationId(event.getConversationId());
 
         return switch (event.getEventType()) {
-            case "message_created" -> builder
-                    .type("message_created")
-                    .data(event.getMetadata())
+            case MESSAGE_CREATED -> builder
+                    .type(event.getEventType().getValue())
                     .build();
-            case "message_updated" -> builder
-                    .type("message_updated")
-                    .data(event.getMetadata())
+            case MESSAGE_UPDATED -> builder
+                    .type(event.getEventType().getValue())
                     .build();
-            case "conversation_created" -> builder
-                    .type("conversation_created")
-                    .data(event.getMetadata())
+            case CONVERSATION_CREATED -> builder
+                    .type(event.getEventType().getValue())
                     .build();
-            case "conversation_updated" -> builder
-                    .type("conversation_updated")
-                    .data(event.getMetadata())
+            case CONVERSATION_UPDATED -> builder
+                    .type(event.getEventType().getValue())
                     .build();
-            case "conversation_resolved" -> builder
-                    .type("conversation_resolved")
+            case CONVERSATION_RESOLVED -> builder
+                    .type(event.getEventType().getValue())
                     .build();
             default -> {
                 log.warn("未知的事件类型: {}", event.getEventType());
@@ -73,45 +157,71 @@ public class NotificationService {
         };
     }
     
+    /**
+     * 序列化通知
+     * raw: 消息JSON原样拼接为data的值; string: 兼容旧客户端，data为转义后的JSON字符串
+     */
+    private byte[] encodeNotification(ChatwootEvent event, NotificationMessage notification) throws IOException {
+        byte[] metadata = event.getMetadata();
+        if ("string".equals(dataEncoding)) {
+            notification.setData(metadata != null ? new String(metadata, StandardCharsets.UTF_8) : null);
+            return objectMapper.writeValueAsBytes(notification);
+        }
+        return envelopeWriter.write(notification, metadata);
+    }
+    
     /**
      * 发送通知
+     *
+     * @return 是否成功编码并投递
      */
-    private void sendNotification(ChatwootEvent event, NotificationMessage notification) {
+    private boolean sendNotification(ChatwootEvent event, NotificationMessage notification, long routeStart) {
         try {
-            String notificationJson = objectMapper.writeValueAsString(notification);
-            log.info("执行到 sendNotification notification: {}", notificationJson);
+            // 只序列化、编码一次，所有接收者共享同一帧
+            NotificationFrame notificationFrame = new NotificationFrame(notification.getSeq(),
+                    encodeNotification(event, notification), event.getEventType());
+            if (log.isDebugEnabled()) {
+                // 直接解码字节，不在共享帧上提前生成文本消息
+                log.debug("执行到 sendNotification notification: {}",
+                        new String(notificationFrame.getJson(), StandardCharsets.UTF_8));
+            }
+            long enqueueStart = System.nanoTime();
+            metrics.recordStage(PipelineMetrics.Stage.ROUTE, event.getEventType(), enqueueStart - routeStart);
             // 根据事件类型决定通知策略
             switch (event.getEventType()) {
-                case "message_created":
-                    sendMessageNotification(event, notificationJson);
+                case MESSAGE_CREATED:
+                    sendMessageNotification(event, notificationFrame);
                     break;
                     
-                case "conversation_created":
-                    // 向相关客服发送新会话通知（这里仍保留原有策略）
-                    sendConversationNotification(event, notificationJson);
+                case CONVERSATION_CREATED:
+                    // 向订阅了会话所属收件箱、团队的客服发送新会话通知
+                    sendConversationNotification(event, notificationFrame);
                     break;
                     
-                case "conversation_updated":
-                case "conversation_resolved":
+                case CONVERSATION_UPDATED:
+                case CONVERSATION_RESOLVED:
                     // 向会话参与者发送会话状态更新通知
-                    sendConversationStatusNotification(event, notificationJson);
+                    sendConversationStatusNotification(event, notificationFrame);
                     break;
             }
-        } catch (JsonProcessingException e) {
+            metrics.recordStage(PipelineMetrics.Stage.ENQUEUE, event.getEventType(), System.nanoTime() - enqueueStart);
+            return true;
+        } catch (IOException e) {
             log.error("序列化通知消息失败: {}", e.getMessage(), e);
+            return false;
         }
     }
     
     /**
      * 发送消息通知（定向推送）
      */
-    private void sendMessageNotification(ChatwootEvent event, String notificationJson) {
+    private void sendMessageNotification(ChatwootEvent event, NotificationFrame notificationFrame) {
         // 检查是否有接收者信息
         if (event.getRecipientId() == null || event.getRecipientType() == null) {
-            if ("agent".equals(event.getRecipientType())) {
-                log.info("客人会话未绑定具体客服，向所有客服发送消息: conversationId={}, messageType={}",
-                        event.getConversationId(), event.getMessageType());
-                sessionManager.sendNotificationToAllAgent(notificationJson);
+            if (event.getRecipientType() == RecipientType.AGENT) {
+                log.info("客人会话未绑定具体客服，向订阅了收件箱 {} / 团队 {} 的客服发送消息: conversationId={}, messageType={}",
+                        event.getInboxId(), event.getTeamId(), event.getConversationId(), event.getMessageType());
+                sessionManager.sendNotificationToSubscribers(event.getInboxId(), event.getTeamId(), notificationFrame);
             } else {
                 log.warn("消息事件缺少接收者信息，无法发送定向通知: conversationId={}, messageType={}",
                     event.getConversationId(), event.getMessageType());
@@ -120,12 +230,12 @@ public class NotificationService {
         }
         
         // 根据接收者类型发送通知
-        if ("guest".equals(event.getRecipientType())) {
+        if (event.getRecipientType() == RecipientType.GUEST) {
             // 向客人发送通知
-            sessionManager.sendNotificationToGuest(event.getRecipientId(), notificationJson);
-        } else if ("agent".equals(event.getRecipientType())) {
+            sessionManager.sendNotificationToGuest(event.getRecipientId(), notificationFrame);
+        } else if (event.getRecipientType() == RecipientType.AGENT) {
             // 向客服发送通知
-            sessionManager.sendNotificationToAgent(event.getRecipientId(), notificationJson);
+            sessionManager.sendNotificationToAgent(event.getRecipientId(), notificationFrame);
         } else {
             log.warn("未知的接收者类型: {}, 无法发送通知", event.getRecipientType());
         }
@@ -134,22 +244,20 @@ public class NotificationService {
     /**
      * 发送会话通知
      */
-    private void sendConversationNotification(ChatwootEvent event, String notificationJson) {
-        // 向所有在线客服发送新会话通知
-        // 这里可以根据inboxId或其他条件筛选客服
-        sessionManager.sendNotificationToUser("all_agents", notificationJson);
+    private void sendConversationNotification(ChatwootEvent event, NotificationFrame notificationFrame) {
+        sessionManager.sendNotificationToSubscribers(event.getInboxId(), event.getTeamId(), notificationFrame);
     }
     
     /**
      * 发送会话状态通知
      */
-    private void sendConversationStatusNotification(ChatwootEvent event, String notificationJson) {
+    private void sendConversationStatusNotification(ChatwootEvent event, NotificationFrame notificationFrame) {
         // 向会话参与者发送状态更新通知
         if (event.getConversationId() != null) {
             sessionManager.sendNotificationToConversation(
                 event.getConversationId(), 
                 null, 
-                notificationJson
+                notificationFrame
             );
         }
     }
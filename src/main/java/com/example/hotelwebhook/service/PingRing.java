@@ -0,0 +1,48 @@
+package com.example.hotelwebhook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.example.hotelwebhook.model.UserSession;
+
+/**
+ * 按sessionId散列把连接分到若干批次，每次只处理一批，使ping在整个周期内均匀发出
+ */
+public class PingRing {
+
+    private final List<Set<UserSession>> batches;
+    private int cursor;
+
+    public PingRing(int batchCount) {
+        int size = Math.max(1, batchCount);
+        batches = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batches.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public void add(UserSession session) {
+        batch(session).add(session);
+    }
+
+    public void remove(UserSession session) {
+        batch(session).remove(session);
+    }
+
+    /**
+     * 处理下一批连接
+     * 虚拟线程调度器下定时任务可能重叠执行，游标的读取和推进需要互斥
+     */
+    public synchronized void nextBatch(Consumer<UserSession> action) {
+        Set<UserSession> batch = batches.get(cursor);
+        cursor = (cursor + 1) % batches.size();
+        batch.forEach(action);
+    }
+
+    private Set<UserSession> batch(UserSession session) {
+        return batches.get(Math.floorMod(session.getSessionId().hashCode(), batches.size()));
+    }
+}
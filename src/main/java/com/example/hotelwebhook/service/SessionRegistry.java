@@ -0,0 +1,219 @@
+package com.example.hotelwebhook.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.example.hotelwebhook.model.UserSession;
+
+/**
+ * 会话注册表：sessionId、(用户类型, 用户ID)、会话参与者三种索引
+ * 用户按ID分片，写操作只锁所在分片；每个用户的多端连接保存为写时复制数组，推送时无锁、无分配地遍历。
+ * 推送中发现的失效连接先登记，遍历结束后再统一移除
+ */
+public class SessionRegistry {
+
+    private static final UserSession[] EMPTY = new UserSession[0];
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final Map<String, UserSession> bySessionId = new ConcurrentHashMap<>();
+    private final ConversationParticipantIndex conversations;
+    private final Queue<String> pendingRemovals = new ConcurrentLinkedQueue<>();
+    private final ConnectionStats stats = new ConnectionStats();
+
+    /**
+     * @param shardCount 分片数，向上取整为2的幂
+     */
+    public SessionRegistry(int shardCount, long resolvedTtlMillis, long idleTtlMillis) {
+        int size = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = size - 1;
+        this.conversations = new ConversationParticipantIndex(resolvedTtlMillis, idleTtlMillis);
+    }
+
+    /**
+     * 注册连接
+     * sessionId索引与用户数组在同一分片锁内更新，与remove互斥，不会出现只在其中一个索引里的连接
+     */
+    public void add(UserSession session) {
+        Shard shard = shard(session.getUserId());
+        Map<String, UserSession[]> users = shard.users(session.getUserType());
+        synchronized (shard) {
+            bySessionId.put(session.getSessionId(), session);
+            if (users != null) {
+                UserSession[] existing = users.getOrDefault(session.getUserId(), EMPTY);
+                UserSession[] updated = Arrays.copyOf(existing, existing.length + 1);
+                updated[existing.length] = session;
+                users.put(session.getUserId(), updated);
+                stats.sessionAdded(session.getUserType(), updated.length, session.getConnectedAtMillis());
+            }
+        }
+    }
+
+    /**
+     * 立即移除连接
+     *
+     * @return 被移除的连接，不存在时返回null
+     */
+    public UserSession remove(String sessionId) {
+        UserSession session = bySessionId.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        Shard shard = shard(session.getUserId());
+        Map<String, UserSession[]> users = shard.users(session.getUserType());
+        synchronized (shard) {
+            // 加锁前已被其他线程移除
+            if (!bySessionId.remove(sessionId, session)) {
+                return null;
+            }
+            if (users != null) {
+                UserSession[] existing = users.get(session.getUserId());
+                if (existing != null) {
+                    UserSession[] updated = without(existing, session);
+                    if (updated.length == 0) {
+                        users.remove(session.getUserId());
+                    } else if (updated != existing) {
+                        users.put(session.getUserId(), updated);
+                    }
+                    if (updated != existing) {
+                        stats.sessionRemoved(session.getUserType(), updated.length, session.getConnectedAtMillis());
+                    }
+                }
+            }
+        }
+        return session;
+    }
+
+    /**
+     * 登记待移除的连接，推送遍历期间使用
+     */
+    public void deferRemoval(String sessionId) {
+        pendingRemovals.add(sessionId);
+    }
+
+    /**
+     * 移除所有已登记的连接
+     *
+     * @param onRemoved 每个实际被移除的连接
+     */
+    public void drainDeferredRemovals(Consumer<UserSession> onRemoved) {
+        String sessionId;
+        while ((sessionId = pendingRemovals.poll()) != null) {
+            UserSession removed = remove(sessionId);
+            if (removed != null) {
+                onRemoved.accept(removed);
+            }
+        }
+    }
+
+    public boolean hasDeferredRemovals() {
+        return !pendingRemovals.isEmpty();
+    }
+
+    public UserSession get(String sessionId) {
+        return bySessionId.get(sessionId);
+    }
+
+    /**
+     * 获取用户的所有连接，返回的数组不可修改，没有连接时返回空数组
+     */
+    public UserSession[] getSessions(String userType, String userId) {
+        if (userId == null) {
+            return EMPTY;
+        }
+        Map<String, UserSession[]> users = shard(userId).users(userType);
+        if (users == null) {
+            return EMPTY;
+        }
+        UserSession[] sessions = users.get(userId);
+        return sessions != null ? sessions : EMPTY;
+    }
+
+    /**
+     * 遍历某类用户及其连接
+     */
+    public void forEachUser(String userType, BiConsumer<String, UserSession[]> action) {
+        for (Shard shard : shards) {
+            Map<String, UserSession[]> users = shard.users(userType);
+            if (users != null) {
+                users.forEach(action);
+            }
+        }
+    }
+
+    public void forEachSession(Consumer<UserSession> action) {
+        bySessionId.values().forEach(action);
+    }
+
+    public int size() {
+        return bySessionId.size();
+    }
+
+    /**
+     * 增量维护的连接统计
+     */
+    public ConnectionStats getStats() {
+        return stats;
+    }
+
+    public void updateParticipants(String conversationId, String contactId, String assigneeId,
+            boolean metaPresent, boolean resolved) {
+        conversations.update(conversationId, contactId, assigneeId, metaPresent, resolved);
+    }
+
+    public ConversationParticipantIndex.Participants getParticipants(String conversationId) {
+        return conversations.get(conversationId);
+    }
+
+    public int evictExpiredConversations() {
+        return conversations.evictExpired();
+    }
+
+    public int getConversationCount() {
+        return conversations.size();
+    }
+
+    private Shard shard(String userId) {
+        int h = userId.hashCode();
+        return shards[(h ^ (h >>> 16)) & shardMask];
+    }
+
+    private static UserSession[] without(UserSession[] sessions, UserSession session) {
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i] == session) {
+                UserSession[] updated = new UserSession[sessions.length - 1];
+                System.arraycopy(sessions, 0, updated, 0, i);
+                System.arraycopy(sessions, i + 1, updated, i, sessions.length - i - 1);
+                return updated;
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * 分片：用户ID到连接数组，写操作持有分片锁
+     */
+    private static final class Shard {
+        final Map<String, UserSession[]> guests = new ConcurrentHashMap<>();
+        final Map<String, UserSession[]> agents = new ConcurrentHashMap<>();
+
+        Map<String, UserSession[]> users(String userType) {
+            if ("guest".equals(userType)) {
+                return guests;
+            }
+            if ("agent".equals(userType)) {
+                return agents;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.hotelwebhook.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 客服订阅倒排索引：收件箱/团队 → 在线客服ID
+ * 订阅按客服保存（同一客服的多端共用），声明时整体替换；每个主题的订阅者为写时复制数组，推送时无锁遍历。
+ * 未声明过订阅的客服登记在 {@link #UNDECLARED} 下，由调用方决定是否接收全部事件
+ */
+public class SubscriptionIndex {
+
+    public static final String UNDECLARED = "*";
+
+    private static final String[] EMPTY = new String[0];
+    private static final String[] UNDECLARED_TOPICS = {UNDECLARED};
+
+    // 主题 → 订阅的客服ID
+    private final Map<String, String[]> subscribers = new ConcurrentHashMap<>();
+    // 客服ID → 订阅的主题，同一客服的更新在compute中串行执行
+    private final Map<String, String[]> memberships = new ConcurrentHashMap<>();
+
+    public static String inboxTopic(String inboxId) {
+        return "inbox:" + inboxId;
+    }
+
+    public static String teamTopic(String teamId) {
+        return "team:" + teamId;
+    }
+
+    /**
+     * 替换客服的订阅
+     *
+     * @param topics 订阅的主题，空数组表示声明为不订阅任何收件箱和团队
+     */
+    public void declare(String agentId, String[] topics) {
+        String[] updated = distinct(topics);
+        memberships.compute(agentId, (id, existing) -> {
+            relink(id, existing != null ? existing : EMPTY, updated);
+            return updated;
+        });
+    }
+
+    /**
+     * 客服上线时调用，尚无订阅记录时登记为未声明
+     */
+    public void ensureIndexed(String agentId) {
+        memberships.computeIfAbsent(agentId, id -> {
+            relink(id, EMPTY, UNDECLARED_TOPICS);
+            return UNDECLARED_TOPICS;
+        });
+    }
+
+    /**
+     * 客服全部连接断开后移除其订阅
+     */
+    public void remove(String agentId) {
+        remove(agentId, () -> false);
+    }
+
+    /**
+     * 客服不再在线时移除其订阅
+     * 在线检查与移除在同一个compute中执行，与重连时的 {@link #ensureIndexed}/{@link #declare} 串行，
+     * 不会删掉刚重连的客服的订阅
+     *
+     * @param online 客服是否仍有连接，先注册连接再更新订阅的调用方保证此检查可见
+     */
+    public void remove(String agentId, BooleanSupplier online) {
+        memberships.computeIfPresent(agentId, (id, existing) -> {
+            if (online.getAsBoolean()) {
+                return existing;
+            }
+            relink(id, existing, EMPTY);
+            return null;
+        });
+    }
+
+    /**
+     * 遍历收件箱或团队的订阅者，同时订阅两者的客服只访问一次
+     *
+     * @param inboxId           收件箱ID，可为null
+     * @param teamId            团队ID，可为null
+     * @param includeUndeclared 是否包含未声明订阅的客服
+     */
+    public void forEachSubscriber(String inboxId, String teamId, boolean includeUndeclared, Consumer<String> action) {
+        String inboxTopic = inboxId != null ? inboxTopic(inboxId) : null;
+        if (inboxTopic != null) {
+            for (String agentId : subscribers.getOrDefault(inboxTopic, EMPTY)) {
+                action.accept(agentId);
+            }
+        }
+        if (teamId != null) {
+            for (String agentId : subscribers.getOrDefault(teamTopic(teamId), EMPTY)) {
+                if (inboxTopic == null || !contains(memberships.getOrDefault(agentId, EMPTY), inboxTopic)) {
+                    action.accept(agentId);
+                }
+            }
+        }
+        if (includeUndeclared) {
+            for (String agentId : subscribers.getOrDefault(UNDECLARED, EMPTY)) {
+                action.accept(agentId);
+            }
+        }
+    }
+
+    /**
+     * 客服当前订阅的主题，未上线时返回空数组
+     */
+    public String[] getTopics(String agentId) {
+        return memberships.getOrDefault(agentId, EMPTY);
+    }
+
+    public int getTopicCount() {
+        return subscribers.size();
+    }
+
+    public int getAgentCount() {
+        return memberships.size();
+    }
+
+    /**
+     * 把客服从旧主题移到新主题
+     */
+    private void relink(String agentId, String[] oldTopics, String[] newTopics) {
+        for (String topic : oldTopics) {
+            if (!contains(newTopics, topic)) {
+                subscribers.computeIfPresent(topic, (t, agents) -> {
+                    String[] updated = without(agents, agentId);
+                    return updated.length == 0 ? null : updated;
+                });
+            }
+        }
+        for (String topic : newTopics) {
+            if (!contains(oldTopics, topic)) {
+                subscribers.merge(topic, new String[] {agentId}, (agents, added) -> {
+                    String[] updated = Arrays.copyOf(agents, agents.length + 1);
+                    updated[agents.length] = agentId;
+                    return updated;
+                });
+            }
+        }
+    }
+
+    private static String[] distinct(String[] topics) {
+        return Arrays.stream(topics).distinct().toArray(String[]::new);
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] without(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                String[] updated = new String[values.length - 1];
+                System.arraycopy(values, 0, updated, 0, i);
+                System.arraycopy(values, i + 1, updated, i, values.length - i - 1);
+                return updated;
+            }
+        }
+        return values;
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.hotelwebhook.service;
 
+import com.example.hotelwebhook.cluster.ClusterBus;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -12,21 +14,70 @@ public class WebSocketHeartbeatTask {
     @Autowired
     private WebSocketSessionManager sessionManager;
     
+    @Autowired
+    private NotificationReplayBuffer replayBuffer;
+    
+    @Autowired
+    private ClusterBus clusterBus;
+    
+    @Value("${websocket.ping.enabled:true}")
+    private boolean pingEnabled;
+    
     /**
-     * 每5分钟清理一次过期连接
+     * 分批发送服务端ping，每批覆盖约 batch-interval/interval 的连接
      */
-    @Scheduled(fixedRate = 300000) // 5分钟
-    public void cleanupExpiredConnections() {
+    @Scheduled(fixedRateString = "${websocket.ping.batch-interval-ms:1000}")
+    public void sendPingBatch() {
+        if (!pingEnabled) {
+            return;
+        }
         try {
-            int beforeCount = sessionManager.getTotalConnectionCount();
-            sessionManager.cleanupExpiredConnections();
-            int afterCount = sessionManager.getTotalConnectionCount();
-            
-            if (beforeCount != afterCount) {
-                log.info("清理过期连接完成: {} -> {}", beforeCount, afterCount);
+            sessionManager.sendPingBatch();
+        } catch (Exception e) {
+            log.error("发送ping失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 每分钟淘汰一次过期的会话参与者索引
+     */
+    @Scheduled(fixedRate = 60000) // 1分钟
+    public void evictExpiredConversations() {
+        try {
+            int evicted = sessionManager.evictExpiredConversations();
+            if (evicted > 0) {
+                log.info("淘汰过期会话索引: {}，剩余: {}", evicted, sessionManager.getIndexedConversationCount());
             }
         } catch (Exception e) {
-            log.error("清理过期连接失败: {}", e.getMessage(), e);
+            log.error("淘汰会话索引失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 每分钟淘汰一次过期的补发通知
+     */
+    @Scheduled(fixedRate = 60000) // 1分钟
+    public void evictExpiredReplays() {
+        try {
+            int evicted = replayBuffer.evictExpired();
+            if (evicted > 0) {
+                log.info("淘汰空闲补发缓冲区: {}，剩余接收者: {}，占用: {} 字节",
+                        evicted, replayBuffer.getRecipientCount(), replayBuffer.getTotalBytes());
+            }
+        } catch (Exception e) {
+            log.error("淘汰补发缓冲区失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 定期重建集群在线摘要，清除已下线的接收者
+     */
+    @Scheduled(fixedRateString = "${cluster.presence.rebuild-ms:30000}")
+    public void rebuildClusterPresence() {
+        try {
+            clusterBus.rebuildPresence();
+        } catch (Exception e) {
+            log.error("重建集群在线摘要失败: {}", e.getMessage(), e);
         }
     }
     
@@ -1,34 +1,146 @@
 package com.example.hotelwebhook.service;
 
+import com.example.hotelwebhook.cluster.ClusterBus;
+import com.example.hotelwebhook.cluster.ClusterDelivery;
+import com.example.hotelwebhook.cluster.ClusterListener;
+import com.example.hotelwebhook.metrics.PipelineMetrics;
 import com.example.hotelwebhook.model.UserSession;
+import com.example.hotelwebhook.utils.ClientIpUtil;
+import com.example.hotelwebhook.websocket.NotificationFrame;
+import com.example.hotelwebhook.websocket.SessionSendQueue;
+import com.example.hotelwebhook.websocket.SessionSendQueueFactory;
 import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @Service
-public class WebSocketSessionManager {
+public class WebSocketSessionManager implements ClusterListener {
     
-    // 客人ID到会话的映射 (支持多端登录)
-    private final Map<String, Map<String, UserSession>> contactSessions = new ConcurrentHashMap<>();
+    // 补发缓冲区已淘汰客户端所需的通知时下发，客户端应全量刷新
+    private static final TextMessage RESYNC = new TextMessage("{\"type\":\"resync\"}");
     
-    // 客服ID到会话的映射 (支持多端登录)
-    private final Map<String, Map<String, UserSession>> agentSessions = new ConcurrentHashMap<>();
+    // 空载荷的ping控制帧，所有连接共用
+    private static final PingMessage PING = new PingMessage();
     
-    // 会话ID到用户会话的映射
-    private final Map<String, UserSession> sessionMap = new ConcurrentHashMap<>();
+    // 旧客户端文本心跳的应答
+    private static final TextMessage PONG = new TextMessage("pong");
+    
+    @Autowired
+    private SessionSendQueueFactory sendQueueFactory;
+    
+    @Autowired
+    private NotificationReplayBuffer replayBuffer;
+    
+    @Autowired
+    private ClusterBus clusterBus;
+    
+    @Autowired
+    private PipelineMetrics metrics;
+    
+    // 连接注册表：按sessionId、(用户类型, 用户ID)、会话参与者索引 (支持多端登录)
+    private SessionRegistry registry;
+    
+    @Value("${websocket.registry.shards:16}")
+    private int registryShards;
+    
+    // 心跳超时时间轮
+    private HeartbeatWheel heartbeatWheel;
+    
+    @Value("${websocket.heartbeat.tick-ms:1000}")
+    private long heartbeatTickMs;
+    
+    @Value("${websocket.heartbeat.wheel-size:512}")
+    private int heartbeatWheelSize;
+    
+    @Value("${websocket.heartbeat.guest-timeout-seconds:300}")
+    private long guestHeartbeatTimeoutSeconds;
+    
+    @Value("${websocket.heartbeat.agent-timeout-seconds:300}")
+    private long agentHeartbeatTimeoutSeconds;
+    
+    // 服务端ping：按批次错开发送
+    private PingRing pingRing;
+    
+    @Value("${websocket.ping.interval-seconds:30}")
+    private long pingIntervalSeconds;
+    
+    @Value("${websocket.ping.batch-interval-ms:1000}")
+    private long pingBatchIntervalMs;
+    
+    private final AtomicLong pingsSent = new AtomicLong();
+    
+    @Value("${websocket.conversation-index.resolved-ttl-seconds:300}")
+    private long resolvedConversationTtlSeconds;
+    
+    @Value("${websocket.conversation-index.idle-ttl-seconds:86400}")
+    private long idleConversationTtlSeconds;
+    
+    // 客服收件箱/团队订阅索引
+    private final SubscriptionIndex subscriptions = new SubscriptionIndex();
+    
+    // 未声明订阅的客服是否接收全部按订阅推送的通知（兼容未升级的客户端）
+    @Value("${websocket.subscription.undeclared-receive-all:true}")
+    private boolean undeclaredReceiveAll;
+    
+    @PostConstruct
+    public void init() {
+        registry = new SessionRegistry(registryShards,
+                resolvedConversationTtlSeconds * 1000, idleConversationTtlSeconds * 1000);
+        heartbeatWheel = new HeartbeatWheel(heartbeatTickMs, heartbeatWheelSize, this::expireSession);
+        heartbeatWheel.start();
+        pingRing = new PingRing((int) Math.max(1, pingIntervalSeconds * 1000 / pingBatchIntervalMs));
+        clusterBus.start(this);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        heartbeatWheel.stop();
+    }
     
     /**
      * 注册用户会话
      */
     public void registerSession(String userId, String userType, WebSocketSession webSocketSession) {
+        registerSession(userId, userType, webSocketSession, null);
+    }
+    
+    /**
+     * 注册用户会话，并补发lastSeq之后的通知
+     *
+     * @param lastSeq 客户端已收到的最大通知序号，为null时不补发
+     */
+    public void registerSession(String userId, String userType, WebSocketSession webSocketSession, Long lastSeq) {
+        registerSession(userId, userType, webSocketSession, lastSeq, null);
+    }
+    
+    /**
+     * 注册用户会话，并补发lastSeq之后的通知
+     *
+     * @param lastSeq 客户端已收到的最大通知序号，为null时不补发
+     * @param topics  客服握手时声明的订阅主题，注册时一并生效；为null时沿用已有订阅或登记为未声明
+     */
+    public void registerSession(String userId, String userType, WebSocketSession webSocketSession, Long lastSeq,
+            String[] topics) {
         String sessionId = webSocketSession.getId();
         
         UserSession userSession = UserSession.builder()
@@ -37,20 +149,38 @@ public class WebSocketSessionManager {
                 .sessionId(sessionId)
                 .webSocketSession(webSocketSession)
                 .connectedAt(LocalDateTime.now())
-                .lastHeartbeat(LocalDateTime.now())
+                .connectedAtMillis(System.currentTimeMillis())
                 .userAgent(webSocketSession.getHandshakeHeaders().getFirst("User-Agent"))
-                .ipAddress(getClientIpAddress(webSocketSession))
+                .ipAddress(ClientIpUtil.resolve(webSocketSession.getHandshakeHeaders(), webSocketSession.getRemoteAddress()))
+                .sendQueue(sendQueueFactory.create(webSocketSession, userType, this::removeSession))
+                .heartbeatTimer(heartbeatWheel.schedule(sessionId, heartbeatTimeoutNanos(userType)))
                 .build();
         
-        // 根据用户类型添加到对应的映射
-        if ("guest".equals(userType)) {
-            contactSessions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(sessionId, userSession);
-        } else if ("agent".equals(userType)) {
-            agentSessions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(sessionId, userSession);
-        }
-        
-        // 添加到会话映射
-        sessionMap.put(sessionId, userSession);
+        // 补发通知先入队再注册，之后的实时通知排在补发之后
+        replayBuffer.resume(replayKey(userType, userId), lastSeq, replay -> {
+            SessionSendQueue sendQueue = userSession.getSendQueue();
+            if (replay.gap()) {
+                sendQueue.enqueue(RESYNC);
+            }
+            sendQueue.enqueueReplay(replay.frames());
+            
+            registry.add(userSession);
+            pingRing.add(userSession);
+            // 先注册连接再更新订阅，与断开时的在线检查配合，见SubscriptionIndex#remove
+            if ("agent".equals(userType)) {
+                if (topics != null) {
+                    subscriptions.declare(userId, topics);
+                } else {
+                    subscriptions.ensureIndexed(userId);
+                }
+            }
+            
+            if (lastSeq != null) {
+                log.info("用户 {} (类型: {}) 重连，lastSeq: {}，补发通知: {}，缺口: {}",
+                        userId, userType, lastSeq, replay.frames().size(), replay.gap());
+            }
+        });
+        clusterBus.recipientOnline(replayKey(userType, userId), "agent".equals(userType));
         
         log.info("用户 {} (类型: {}) 建立WebSocket连接，会话ID: {}", userId, userType, sessionId);
     }
@@ -59,55 +189,52 @@ public class WebSocketSessionManager {
      * 移除用户会话
      */
     public void removeSession(String sessionId) {
-        UserSession userSession = sessionMap.remove(sessionId);
+        UserSession userSession = registry.remove(sessionId);
         if (userSession != null) {
-            String userId = userSession.getUserId();
-            String userType = userSession.getUserType();
-            
-            // 从对应的映射中移除
-            if ("guest".equals(userType)) {
-                Map<String, UserSession> userSessionMap = contactSessions.get(userId);
-                if (userSessionMap != null) {
-                    userSessionMap.remove(sessionId);
-                    if (userSessionMap.isEmpty()) {
-                        contactSessions.remove(userId);
-                    }
-                }
-            } else if ("agent".equals(userType)) {
-                Map<String, UserSession> userSessionMap = agentSessions.get(userId);
-                if (userSessionMap != null) {
-                    userSessionMap.remove(sessionId);
-                    if (userSessionMap.isEmpty()) {
-                        agentSessions.remove(userId);
-                    }
-                }
-            }
-            
-            log.info("用户 {} (类型: {}) 断开WebSocket连接，会话ID: {}", userId, userType, sessionId);
+            onSessionRemoved(userSession);
         }
     }
     
+    private void onSessionRemoved(UserSession userSession) {
+        userSession.getSendQueue().close();
+        userSession.getHeartbeatTimer().cancel();
+        pingRing.remove(userSession);
+        if ("agent".equals(userSession.getUserType())) {
+            String agentId = userSession.getUserId();
+            subscriptions.remove(agentId, () -> registry.getSessions("agent", agentId).length > 0);
+        }
+        log.info("用户 {} (类型: {}) 断开WebSocket连接，会话ID: {}",
+                userSession.getUserId(), userSession.getUserType(), userSession.getSessionId());
+    }
+    
+    /**
+     * 移除推送过程中发现的失效连接
+     */
+    private void removeDeferredSessions() {
+        if (registry.hasDeferredRemovals()) {
+            registry.drainDeferredRemovals(this::onSessionRemoved);
+        }
+    }
+    
+    /**
+     * 将文本消息编码为不参与补发的通知帧
+     */
+    private static NotificationFrame encodeFrame(String message) {
+        return new NotificationFrame(0, message.getBytes(StandardCharsets.UTF_8));
+    }
+    
     /**
      * 向客人发送通知
      */
     public void sendNotificationToGuest(String contactId, String message) {
-        Map<String, UserSession> userSessionMap = contactSessions.get(contactId);
-        if (userSessionMap != null) {
-            userSessionMap.values().forEach(session -> {
-                try {
-                    if (session.getWebSocketSession().isOpen()) {
-                        session.getWebSocketSession().sendMessage(new TextMessage(message));
-                        log.info("向客人 {} 发送通知: {}", contactId, message);
-                    } else {
-                        // 清理无效连接
-                        removeSession(session.getSessionId());
-                    }
-                } catch (IOException e) {
-                    log.error("向客人 {} 发送通知失败: {}", contactId, e.getMessage());
-                    removeSession(session.getSessionId());
-                }
-            });
-        } else {
+        sendNotificationToGuest(contactId, encodeFrame(message));
+    }
+    
+    /**
+     * 向客人发送通知（共享帧）
+     */
+    public void sendNotificationToGuest(String contactId, NotificationFrame frame) {
+        if (!deliver("guest", contactId, frame)) {
             log.warn("向客人 {} 发送通知失败，chatwoot contactId未建立链接", contactId);
         }
     }
@@ -116,23 +243,14 @@ public class WebSocketSessionManager {
      * 向客服发送通知
      */
     public void sendNotificationToAgent(String agentId, String message) {
-        Map<String, UserSession> userSessionMap = agentSessions.get(agentId);
-        if (userSessionMap != null) {
-            userSessionMap.values().forEach(session -> {
-                try {
-                    if (session.getWebSocketSession().isOpen()) {
-                        session.getWebSocketSession().sendMessage(new TextMessage(message));
-                        log.info("向客服 {} 发送通知: {}", agentId, message);
-                    } else {
-                        // 清理无效连接
-                        removeSession(session.getSessionId());
-                    }
-                } catch (IOException e) {
-                    log.error("向客服 {} 发送通知失败: {}", agentId, e.getMessage());
-                    removeSession(session.getSessionId());
-                }
-            });
-        } else {
+        sendNotificationToAgent(agentId, encodeFrame(message));
+    }
+    
+    /**
+     * 向客服发送通知（共享帧）
+     */
+    public void sendNotificationToAgent(String agentId, NotificationFrame frame) {
+        if (!deliver("agent", agentId, frame)) {
             log.warn("向客服 {} 发送通知失败，chatwoot agentId未建立链接", agentId);
         }
     }
@@ -141,9 +259,103 @@ public class WebSocketSessionManager {
      * 向所有客服发送通知
      */
     public void sendNotificationToAllAgent(String message) {
-        agentSessions.forEach((agentId, sessions) -> {
-            sendNotificationToAgent(agentId, message);
-        });
+        sendNotificationToAllAgent(encodeFrame(message));
+    }
+
+    /**
+     * 向所有在线客服发送通知（共享帧，所有连接共用一次编码结果）
+     */
+    public void sendNotificationToAllAgent(NotificationFrame frame) {
+        boolean local = registry.getStats().getAgentSessions() > 0;
+        deliverToAllAgentsLocal(frame);
+        boolean remote = clusterBus.publish(ClusterDelivery.toAllAgents(frame.getSeq(), frame.getJson()));
+        if (!local && !remote) {
+            metrics.increment(PipelineMetrics.Outcome.UNDELIVERABLE, "agent");
+        }
+    }
+    
+    private void deliverToAllAgentsLocal(NotificationFrame frame) {
+        registry.forEachUser("agent", (agentId, sessions) -> replayBuffer.append(replayKey("agent", agentId), frame,
+                stamped -> enqueueToSessions("agent", agentId, stamped)));
+        removeDeferredSessions();
+    }
+
+    /**
+     * 向订阅了收件箱或团队的客服发送通知（共享帧），只遍历订阅者
+     *
+     * @param inboxId 收件箱ID，可为null
+     * @param teamId  团队ID，可为null
+     */
+    public void sendNotificationToSubscribers(String inboxId, String teamId, NotificationFrame frame) {
+        boolean local = deliverToSubscribersLocal(inboxId, teamId, frame);
+        boolean remote = clusterBus.publish(ClusterDelivery.toSubscribers(inboxId, teamId, frame.getSeq(), frame.getJson()));
+        if (!local && !remote) {
+            metrics.increment(PipelineMetrics.Outcome.UNDELIVERABLE, "agent");
+        }
+    }
+    
+    /**
+     * @return 本节点是否有订阅者
+     */
+    private boolean deliverToSubscribersLocal(String inboxId, String teamId, NotificationFrame frame) {
+        boolean[] delivered = new boolean[1];
+        subscriptions.forEachSubscriber(inboxId, teamId, undeclaredReceiveAll, agentId ->
+                replayBuffer.append(replayKey("agent", agentId), frame, stamped -> {
+                    if (enqueueToSessions("agent", agentId, stamped) > 0) {
+                        delivered[0] = true;
+                    }
+                }));
+        removeDeferredSessions();
+        return delivered[0];
+    }
+    
+    /**
+     * 更新客服连接所属客服的收件箱/团队订阅，整体替换原有订阅
+     *
+     * @return 更新后的订阅主题；连接不存在或不是客服时返回null
+     */
+    public String[] updateSubscriptions(String sessionId, Collection<String> inboxIds, Collection<String> teamIds) {
+        UserSession userSession = registry.get(sessionId);
+        if (userSession == null || !"agent".equals(userSession.getUserType())) {
+            return null;
+        }
+        String[] topics = topics(inboxIds, teamIds);
+        subscriptions.declare(userSession.getUserId(), topics);
+        log.info("客服 {} 更新订阅: {}", userSession.getUserId(), Arrays.toString(topics));
+        return subscriptions.getTopics(userSession.getUserId());
+    }
+    
+    /**
+     * 收件箱/团队ID转换为订阅主题
+     */
+    public static String[] topics(Collection<String> inboxIds, Collection<String> teamIds) {
+        String[] topics = new String[inboxIds.size() + teamIds.size()];
+        int i = 0;
+        for (String inboxId : inboxIds) {
+            topics[i++] = SubscriptionIndex.inboxTopic(inboxId);
+        }
+        for (String teamId : teamIds) {
+            topics[i++] = SubscriptionIndex.teamTopic(teamId);
+        }
+        return topics;
+    }
+    
+    /**
+     * 订阅索引统计
+     */
+    public Map<String, Object> getSubscriptionStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("topics", subscriptions.getTopicCount());
+        stats.put("agents", subscriptions.getAgentCount());
+        stats.put("undeclaredReceiveAll", undeclaredReceiveAll);
+        return stats;
+    }
+    
+    /**
+     * 获取客服当前订阅的主题
+     */
+    public String[] getSubscriptions(String agentId) {
+        return subscriptions.getTopics(agentId);
     }
 
     /**
@@ -155,57 +367,268 @@ public class WebSocketSessionManager {
     }
     
     /**
-     * 向会话中的所有用户发送通知（除了发送者）
+     * 向用户发送通知（兼容旧接口，共享帧）
+     */
+    public void sendNotificationToUser(String userId, NotificationFrame frame) {
+        sendNotificationToAgent(userId, frame);
+    }
+    
+    /**
+     * 向会话参与者发送通知（除了发送者）
      * 注意：这个方法现在主要用于会话状态更新，消息通知使用新的定向推送方法
      */
     public void sendNotificationToConversation(String conversationId, String senderId, String message) {
-        // 这里需要根据conversationId获取相关用户列表
-        // 暂时实现为向所有在线用户发送（除了发送者）
-        // 遍历客人
-        contactSessions.forEach((contactId, sessions) -> {
-            if (!contactId.equals(senderId)) {
-                sendNotificationToGuest(contactId, message);
-            }
-        });
+        sendNotificationToConversation(conversationId, senderId, encodeFrame(message));
+    }
+    
+    /**
+     * 向会话参与者发送通知（共享帧），离线参与者的通知保留在补发缓冲区
+     * 参与者索引只由本节点收到的webhook维护。集群模式下会话此前的webhook都落在其他节点、
+     * 且本次事件不带 meta 时，本节点查不到参与者，通知不推送；参与者找到后的投递仍经集群发往持有连接的节点
+     */
+    public void sendNotificationToConversation(String conversationId, String senderId, NotificationFrame frame) {
+        ConversationParticipantIndex.Participants participants = registry.getParticipants(conversationId);
+        if (participants == null) {
+            log.warn("会话 {} 在本节点未找到参与者（事件不带meta且本节点未收到过该会话的webhook），跳过状态通知", conversationId);
+            return;
+        }
         
-        // 遍历客服
-        agentSessions.forEach((agentId, sessions) -> {
-            if (!agentId.equals(senderId)) {
-                sendNotificationToAgent(agentId, message);
+        String contactId = participants.contactId();
+        if (contactId != null && !contactId.equals(senderId)) {
+            deliver("guest", contactId, frame);
+        }
+        
+        String assigneeId = participants.assigneeId();
+        if (assigneeId != null && !assigneeId.equals(senderId)) {
+            deliver("agent", assigneeId, frame);
+        }
+    }
+    
+    /**
+     * 推送到本节点连接，并发布给可能持有该接收者的其他节点
+     *
+     * @return 本节点或其他节点是否可能有在线连接
+     */
+    private boolean deliver(String userType, String userId, NotificationFrame frame) {
+        boolean remote = clusterBus.publish(ClusterDelivery.toUser(userType, userId, frame.getSeq(), frame.getJson()));
+        // 接收者在其他节点在线时由持有连接的节点记录补发；全集群都不在线时由本节点保留
+        boolean local = deliverLocal(userType, userId, frame, !remote);
+        if (!local && !remote) {
+            metrics.increment(PipelineMetrics.Outcome.UNDELIVERABLE, userType);
+        }
+        return local || remote;
+    }
+    
+    /**
+     * 入队到接收者在本节点的所有在线连接，有连接时记录到其补发缓冲区
+     *
+     * @param bufferOffline 本节点没有连接时是否仍记录补发
+     * @return 本节点是否有在线连接
+     */
+    private boolean deliverLocal(String userType, String userId, NotificationFrame frame, boolean bufferOffline) {
+        if (!bufferOffline && registry.getSessions(userType, userId).length == 0) {
+            return false;
+        }
+        boolean[] delivered = new boolean[1];
+        replayBuffer.append(replayKey(userType, userId), frame,
+                stamped -> delivered[0] = enqueueToSessions(userType, userId, stamped) > 0);
+        removeDeferredSessions();
+        return delivered[0];
+    }
+    
+    /**
+     * 入队到接收者在本节点的所有在线连接；在补发缓冲区的接收者锁内调用，与重连时的补发在同一把锁上排序，注册前后都不会漏发
+     *
+     * @return 连接数
+     */
+    private int enqueueToSessions(String userType, String userId, NotificationFrame frame) {
+        UserSession[] sessions = registry.getSessions(userType, userId);
+        for (UserSession session : sessions) {
+            enqueueFrame(session, frame);
+        }
+        return sessions.length;
+    }
+    
+    private static String replayKey(String userType, String userId) {
+        return userType + ":" + userId;
+    }
+    
+    /**
+     * 投递其他节点发布的通知，只推送本节点连接
+     * 序号由各节点按接收者独立分配，转发来的通知在记录补发时按本节点的序号重新编号，补发也只在本节点的序列上比较
+     */
+    @Override
+    public void onDelivery(ClusterDelivery delivery) {
+        NotificationFrame frame = new NotificationFrame(delivery.seq(), delivery.payload());
+        switch (delivery.target()) {
+            case ALL_AGENTS -> deliverToAllAgentsLocal(frame);
+            case SUBSCRIBERS -> deliverToSubscribersLocal(delivery.inboxId(), delivery.teamId(), frame);
+            case USER -> deliverLocal(delivery.userType(), delivery.userId(), frame, false);
+        }
+    }
+    
+    @Override
+    public void forEachLocalRecipient(BiConsumer<String, Boolean> action) {
+        registry.forEachUser("guest", (contactId, sessions) -> action.accept(replayKey("guest", contactId), false));
+        registry.forEachUser("agent", (agentId, sessions) -> action.accept(replayKey("agent", agentId), true));
+    }
+    
+    /**
+     * 帧入队，由写线程发送
+     */
+    private void enqueueFrame(UserSession session, NotificationFrame frame) {
+        if (session.getWebSocketSession().isOpen()) {
+            if (session.getSendQueue().enqueue(frame)) {
+                log.debug("向{} {} 发送通知，会话ID: {}", session.getUserType(), session.getUserId(), session.getSessionId());
+            } else {
+                log.warn("向{} {} 发送通知被丢弃，会话ID: {}", session.getUserType(), session.getUserId(), session.getSessionId());
             }
+        } else {
+            // 失效连接在本次推送遍历结束后清理
+            registry.deferRemoval(session.getSessionId());
+        }
+    }
+    
+    /**
+     * 更新会话参与者索引
+     *
+     * @param metaPresent 事件是否携带 meta 对象，携带时以 assigneeId 覆盖负责客服（null即已取消分配）
+     */
+    public void updateConversationParticipants(String conversationId, String contactId, String assigneeId,
+            boolean metaPresent, boolean resolved) {
+        registry.updateParticipants(conversationId, contactId, assigneeId, metaPresent, resolved);
+    }
+    
+    /**
+     * 淘汰过期的会话参与者索引
+     */
+    public int evictExpiredConversations() {
+        return registry.evictExpiredConversations();
+    }
+    
+    /**
+     * 获取会话参与者索引大小
+     */
+    public int getIndexedConversationCount() {
+        return registry.getConversationCount();
+    }
+    
+    /**
+     * 向指定连接发送消息（经由发送队列，避免与通知并发写入）
+     */
+    public boolean sendMessageToSession(String sessionId, WebSocketMessage<?> message) {
+        UserSession userSession = registry.get(sessionId);
+        return userSession != null && userSession.getSendQueue().enqueue(message);
+    }
+    
+    /**
+     * 获取用户各连接的发送队列深度
+     */
+    public Map<String, Map<String, Object>> getSendQueueStats(String userId) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        getUserSessions(userId).forEach(session -> {
+            SessionSendQueue sendQueue = session.getSendQueue();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("userType", session.getUserType());
+            stats.put("queuedMessages", sendQueue.getQueuedMessages());
+            stats.put("queuedBytes", sendQueue.getQueuedBytes());
+            stats.put("sentCount", sendQueue.getSentCount());
+            stats.put("droppedCount", sendQueue.getDroppedCount());
+            stats.put("batching", sendQueue.isBatching());
+            stats.put("batchCount", sendQueue.getBatchCount());
+            stats.put("encoding", sendQueue.getEncoding());
+            result.put(session.getSessionId(), stats);
         });
+        return result;
     }
     
     /**
-     * 更新用户心跳
+     * 更新用户心跳，只顺延定时器的截止时间
      */
     public void updateHeartbeat(String sessionId) {
-        UserSession userSession = sessionMap.get(sessionId);
+        UserSession userSession = registry.get(sessionId);
         if (userSession != null) {
-            userSession.setLastHeartbeat(LocalDateTime.now());
+            userSession.getHeartbeatTimer().touch(System.nanoTime());
         }
     }
     
+    /**
+     * 旧客户端的文本心跳：顺延截止时间并用缓存帧应答
+     */
+    public void handleLegacyPing(String sessionId) {
+        UserSession userSession = registry.get(sessionId);
+        if (userSession != null) {
+            userSession.getHeartbeatTimer().touch(System.nanoTime());
+            userSession.getSendQueue().enqueue(PONG);
+        }
+    }
+    
+    /**
+     * 向下一批连接发送ping控制帧，最近半个周期内有过心跳的连接跳过
+     */
+    public void sendPingBatch() {
+        long now = System.nanoTime();
+        long recentNanos = TimeUnit.SECONDS.toNanos(pingIntervalSeconds) / 2;
+        pingRing.nextBatch(session -> {
+            if (now - session.getHeartbeatTimer().getLastTouchNanos() < recentNanos) {
+                return;
+            }
+            if (session.getSendQueue().enqueue(PING)) {
+                pingsSent.incrementAndGet();
+            }
+        });
+    }
+    
+    private long heartbeatTimeoutNanos(String userType) {
+        long seconds = "agent".equals(userType) ? agentHeartbeatTimeoutSeconds : guestHeartbeatTimeoutSeconds;
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+    
+    /**
+     * 心跳超时：关闭连接并移出注册表（时间轮线程中调用）
+     */
+    private void expireSession(String sessionId) {
+        UserSession session = registry.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        log.info("心跳超时，关闭连接: 用户 {} (类型: {})，会话ID: {}",
+                session.getUserId(), session.getUserType(), sessionId);
+        session.getSendQueue().closeAsync(CloseStatus.SESSION_NOT_RELIABLE);
+        removeSession(sessionId);
+    }
+    
+    /**
+     * 获取心跳定时器统计
+     */
+    public Map<String, Object> getHeartbeatStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("scheduled", heartbeatWheel.getScheduledCount());
+        stats.put("expired", heartbeatWheel.getExpiredCount());
+        stats.put("pingsSent", pingsSent.get());
+        return stats;
+    }
+    
     /**
      * 获取客人的所有会话
      */
-    public Map<String, UserSession> getGuestSessions(String contactId) {
-        return contactSessions.getOrDefault(contactId, new ConcurrentHashMap<>());
+    public List<UserSession> getGuestSessions(String contactId) {
+        return Arrays.asList(registry.getSessions("guest", contactId));
     }
     
     /**
      * 获取客服的所有会话
      */
-    public Map<String, UserSession> getAgentSessions(String agentId) {
-        return agentSessions.getOrDefault(agentId, new ConcurrentHashMap<>());
+    public List<UserSession> getAgentSessions(String agentId) {
+        return Arrays.asList(registry.getSessions("agent", agentId));
     }
     
     /**
      * 获取用户的所有会话（兼容旧接口）
      */
-    public Map<String, UserSession> getUserSessions(String userId) {
+    public List<UserSession> getUserSessions(String userId) {
         // 尝试获取客人会话
-        Map<String, UserSession> guestSessions = getGuestSessions(userId);
+        List<UserSession> guestSessions = getGuestSessions(userId);
         if (!guestSessions.isEmpty()) {
             return guestSessions;
         }
@@ -218,22 +641,21 @@ public class WebSocketSessionManager {
      * 检查客人是否在线
      */
     public boolean isGuestOnline(String contactId) {
-        Map<String, UserSession> userSessionMap = contactSessions.get(contactId);
-        if (userSessionMap != null) {
-            return userSessionMap.values().stream()
-                    .anyMatch(session -> session.getWebSocketSession().isOpen());
-        }
-        return false;
+        return anyOpen(registry.getSessions("guest", contactId));
     }
     
     /**
      * 检查客服是否在线
      */
     public boolean isAgentOnline(String agentId) {
-        Map<String, UserSession> userSessionMap = agentSessions.get(agentId);
-        if (userSessionMap != null) {
-            return userSessionMap.values().stream()
-                    .anyMatch(session -> session.getWebSocketSession().isOpen());
+        return anyOpen(registry.getSessions("agent", agentId));
+    }
+    
+    private static boolean anyOpen(UserSession[] sessions) {
+        for (UserSession session : sessions) {
+            if (session.getWebSocketSession().isOpen()) {
+                return true;
+            }
         }
         return false;
     }
@@ -249,20 +671,14 @@ public class WebSocketSessionManager {
      * 获取在线客人数量
      */
     public int getOnlineGuestCount() {
-        return (int) contactSessions.values().stream()
-                .flatMap(sessions -> sessions.values().stream())
-                .filter(session -> session.getWebSocketSession().isOpen())
-                .count();
+        return (int) registry.getStats().getGuestSessions();
     }
     
     /**
      * 获取在线客服数量
      */
     public int getOnlineAgentCount() {
-        return (int) agentSessions.values().stream()
-                .flatMap(sessions -> sessions.values().stream())
-                .filter(session -> session.getWebSocketSession().isOpen())
-                .count();
+        return (int) registry.getStats().getAgentSessions();
     }
     
     /**
@@ -273,37 +689,25 @@ public class WebSocketSessionManager {
     }
     
     /**
-     * 获取总连接数
+     * 获取连接统计：在线用户数、每用户设备数分布、每秒连接/断开数、连接时长百分位
      */
-    public int getTotalConnectionCount() {
-        return sessionMap.size();
+    public Map<String, Object> getConnectionStats() {
+        return registry.getStats().snapshot();
     }
     
     /**
-     * 清理过期连接
+     * 获取总连接数
      */
-    public void cleanupExpiredConnections() {
-        LocalDateTime now = LocalDateTime.now();
-        sessionMap.values().stream()
-                .filter(session -> session.getLastHeartbeat().plusMinutes(5).isBefore(now))
-                .forEach(session -> {
-                    log.info("清理过期连接: 用户 {} (类型: {})，会话ID: {}", 
-                            session.getUserId(), session.getUserType(), session.getSessionId());
-                    removeSession(session.getSessionId());
-                });
+    public int getTotalConnectionCount() {
+        return registry.size();
     }
     
-    private String getClientIpAddress(WebSocketSession session) {
-        String forwarded = session.getHandshakeHeaders().getFirst("X-Forwarded-For");
-        if (forwarded != null && !forwarded.isEmpty()) {
-            return forwarded.split(",")[0].trim();
-        }
-        
-        String realIp = session.getHandshakeHeaders().getFirst("X-Real-IP");
-        if (realIp != null && !realIp.isEmpty()) {
-            return realIp;
-        }
-        
-        return session.getRemoteAddress() != null ? session.getRemoteAddress().getAddress().getHostAddress() : "unknown";
+    /**
+     * 所有连接发送队列中待发送的消息总数（遍历全部连接，供指标采集使用）
+     */
+    public long getQueuedMessageTotal() {
+        long[] total = new long[1];
+        registry.forEachSession(session -> total[0] += session.getSendQueue().getQueuedMessages());
+        return total[0];
     }
 }
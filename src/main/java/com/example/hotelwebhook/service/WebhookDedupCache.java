@@ -0,0 +1,186 @@
+package com.example.hotelwebhook.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * webhook去重缓存
+ * Chatwoot在响应慢时会重试同一个webhook，按事件去重键丢弃窗口内重复的事件。
+ * 键只保存64位指纹和记录时间（每条16字节），容量由内存预算决定；
+ * 按指纹分段加锁，每段为组相联表：一个指纹只可能落在所在组的几个槽位，满时替换组内最早的记录
+ */
+@Slf4j
+@Component
+public class WebhookDedupCache {
+
+    private static final int WAYS = 4;
+    private static final int BYTES_PER_ENTRY = 16;
+
+    @Value("${webhook.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${webhook.dedup.window-seconds:600}")
+    private long windowSeconds;
+
+    @Value("${webhook.dedup.memory-budget-bytes:4194304}")
+    private long memoryBudgetBytes;
+
+    @Value("${webhook.dedup.stripes:16}")
+    private int stripeCount;
+
+    private Stripe[] stripes;
+    private int stripeMask;
+    private long windowMillis;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        long entries = Math.max(WAYS * size, memoryBudgetBytes / BYTES_PER_ENTRY);
+        // 每段的组数取2的幂
+        int setsPerStripe = Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE / WAYS, entries / WAYS / size));
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(setsPerStripe);
+        }
+        stripeMask = size - 1;
+        windowMillis = windowSeconds * 1000;
+        log.info("webhook去重缓存: {}, 窗口={}秒, 容量={}条, 分段={}",
+                enabled ? "开启" : "关闭", windowSeconds, getCapacity(), size);
+    }
+
+    /**
+     * 记录事件，窗口内已出现过时返回false
+     *
+     * @param key 事件去重键，为null时不去重
+     */
+    public boolean firstSeen(String key) {
+        if (!enabled || key == null) {
+            return true;
+        }
+        lookups.increment();
+        long fingerprint = fingerprint(key);
+        boolean first = stripe(fingerprint).putIfAbsent(fingerprint, System.currentTimeMillis(), windowMillis);
+        if (!first) {
+            hits.increment();
+        }
+        return first;
+    }
+
+    /**
+     * 移除记录，事件处理失败时调用，使重试能被再次处理
+     */
+    public void forget(String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        long fingerprint = fingerprint(key);
+        stripe(fingerprint).remove(fingerprint);
+    }
+
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 命中率：被判定为重复的事件占比
+     */
+    public double getHitRate() {
+        long total = lookups.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    public long getCapacity() {
+        return (long) stripes.length * stripes[0].fingerprints.length;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windowSeconds", windowSeconds);
+        stats.put("capacity", getCapacity());
+        stats.put("lookups", getLookupCount());
+        stats.put("hits", getHitCount());
+        stats.put("hitRate", getHitRate());
+        return stats;
+    }
+
+    private Stripe stripe(long fingerprint) {
+        return stripes[(int) (fingerprint >>> 32) & stripeMask];
+    }
+
+    /**
+     * 64位FNV-1a加混合，0保留为空槽
+     */
+    private static long fingerprint(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * 一段组相联表，fingerprints与recordedAt按槽位对应，0表示空槽
+     */
+    private static final class Stripe {
+        final long[] fingerprints;
+        final long[] recordedAt;
+        final int setMask;
+
+        Stripe(int sets) {
+            fingerprints = new long[sets * WAYS];
+            recordedAt = new long[sets * WAYS];
+            setMask = sets - 1;
+        }
+
+        synchronized boolean putIfAbsent(long fingerprint, long now, long windowMillis) {
+            int base = ((int) fingerprint & setMask) * WAYS;
+            int victim = base;
+            for (int i = base; i < base + WAYS; i++) {
+                if (fingerprints[i] == fingerprint) {
+                    if (now - recordedAt[i] < windowMillis) {
+                        return false;
+                    }
+                    // 已超出窗口，视为新事件
+                    recordedAt[i] = now;
+                    return true;
+                }
+                if (recordedAt[i] < recordedAt[victim]) {
+                    victim = i;
+                }
+            }
+            fingerprints[victim] = fingerprint;
+            recordedAt[victim] = now;
+            return true;
+        }
+
+        synchronized void remove(long fingerprint) {
+            int base = ((int) fingerprint & setMask) * WAYS;
+            for (int i = base; i < base + WAYS; i++) {
+                if (fingerprints[i] == fingerprint) {
+                    fingerprints[i] = 0;
+                    recordedAt[i] = 0;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.example.hotelwebhook.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.hotelwebhook.utils.BoundedVirtualExecutor;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Webhook异步接收队列
+ * 请求线程只负责入队，由工作线程池异步处理；内存队列满时溢出到本地磁盘段文件，不阻塞请求线程。
+ * 段文件回放时把已移入内存队列的位置记录在同名 .offset 文件中，中途停止后从该位置继续，不会重复回放。
+ * 开启虚拟线程时由一个分发线程取出事件，每个事件一个虚拟线程处理，并发数由信号量限制；只有分发线程从队列取事件
+ * 仅在 webhook.ingest.mode=async 时启用，sync 模式下不创建溢出目录、不启动任何线程
+ */
+@Slf4j
+@Service
+public class WebhookIngestQueue {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String OFFSET_SUFFIX = ".offset";
+    // 每条记录：入队时间(8) + 长度(4) + 内容
+    private static final int RECORD_HEADER_BYTES = 12;
+    // 单条记录的长度上限，超出视为段文件损坏，当作段结束
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    @Autowired
+    private ChatwootWebhookProcessor webhookProcessor;
+
+    // 接收模式: sync 在请求线程内处理; async 入队后立即返回202
+    @Value("${webhook.ingest.mode:sync}")
+    private String ingestMode;
+
+    @Value("${webhook.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${webhook.ingest.workers:4}")
+    private int workerCount;
+
+    @Value("${webhook.ingest.virtual-max-concurrency:256}")
+    private int virtualMaxConcurrency;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${webhook.ingest.spill-dir:${java.io.tmpdir}/hotel-webhook-spill}")
+    private String spillDir;
+
+    private BlockingQueue<IngestTask> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private Thread spillDrainer;
+    private BoundedVirtualExecutor virtualExecutor;
+    private volatile boolean enabled;
+    private volatile boolean running;
+
+    // 溢出段文件：当前写入段 + 已封存待回放段；持锁期间有文件写入，使用ReentrantLock避免固定虚拟线程
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private final Deque<Path> sealedSegments = new ArrayDeque<>();
+    private Path activeSegment;
+    private DataOutputStream activeWriter;
+    private long segmentSeq;
+
+    // 统计信息
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong spilledPending = new AtomicLong();
+    private final AtomicLong totalQueueMillis = new AtomicLong();
+    private final AtomicLong maxQueueMillis = new AtomicLong();
+    private volatile long lastQueueMillis;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!"async".equals(ingestMode)) {
+            log.info("Webhook接收模式: {}，不启用异步队列", ingestMode);
+            return;
+        }
+        enabled = true;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Files.createDirectories(Paths.get(spillDir));
+        recoverSegments();
+
+        running = true;
+        if (virtualThreads) {
+            virtualExecutor = new BoundedVirtualExecutor("webhook-worker-", virtualMaxConcurrency);
+            Thread dispatcher = Thread.ofVirtual().name("webhook-dispatcher").unstarted(this::runDispatcher);
+            workers.add(dispatcher);
+            dispatcher.start();
+        } else {
+            for (int i = 0; i < workerCount; i++) {
+                Thread worker = Thread.ofPlatform().name("webhook-worker-" + i).daemon().unstarted(this::runWorker);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+        spillDrainer = Thread.ofPlatform().name("webhook-spill-drainer").daemon().unstarted(this::runSpillDrainer);
+        spillDrainer.start();
+
+        log.info("Webhook异步队列启动: 容量={}, 工作线程={}, 溢出目录={}", queueCapacity,
+                virtualThreads ? "虚拟线程(最多" + virtualMaxConcurrency + "并发)" : workerCount, spillDir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        workers.forEach(Thread::interrupt);
+        workers.forEach(WebhookIngestQueue::join);
+        if (virtualExecutor != null) {
+            // 分发线程已退出，不再有新事件出队；等处理中的事件完成
+            virtualExecutor.shutdown();
+            try {
+                if (!virtualExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("关闭时仍有 {} 个webhook事件在处理", virtualExecutor.getActiveCount());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (spillDrainer != null) {
+            spillDrainer.interrupt();
+            // 等回放线程记录完回放位置，再把内存队列写回磁盘
+            join(spillDrainer);
+        }
+
+        // 未处理的内存队列写入磁盘，下次启动时回放
+        List<IngestTask> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (IngestTask task : remaining) {
+            try {
+                spill(task);
+            } catch (IOException e) {
+                log.error("关闭时写入溢出段失败，丢弃事件: {}", e.getMessage());
+            }
+        }
+        spillLock.lock();
+        try {
+            closeActiveSegment();
+        } finally {
+            spillLock.unlock();
+        }
+        log.info("Webhook异步队列已停止，落盘事件数: {}", remaining.size());
+    }
+
+    /**
+     * 是否为异步接收模式
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交webhook事件，内存队列满时写入磁盘段文件
+     *
+     * @return 是否成功接收（仅在内存队列已满且磁盘写入失败时返回false）
+     */
+    public boolean submit(byte[] body) {
+        IngestTask task = new IngestTask(body, System.currentTimeMillis());
+        acceptedCount.incrementAndGet();
+
+        // 磁盘中仍有积压时继续写磁盘，新事件不越过积压的事件；多个工作线程并发处理，不保证严格的先后顺序
+        if (spilledPending.get() == 0 && queue.offer(task)) {
+            return true;
+        }
+
+        try {
+            spill(task);
+            return true;
+        } catch (IOException e) {
+            acceptedCount.decrementAndGet();
+            log.error("webhook事件写入溢出段失败: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 获取队列统计信息
+     */
+    public Map<String, Object> getStats() {
+        long processed = processedCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", ingestMode);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("spilledPending", spilledPending.get());
+        stats.put("spilledTotal", spilledCount.get());
+        stats.put("acceptedTotal", acceptedCount.get());
+        stats.put("processedTotal", processed);
+        stats.put("lastQueueMillis", lastQueueMillis);
+        stats.put("maxQueueMillis", maxQueueMillis.get());
+        stats.put("avgQueueMillis", processed > 0 ? totalQueueMillis.get() / processed : 0);
+        if (virtualExecutor != null) {
+            stats.put("activeWorkers", virtualExecutor.getActiveCount());
+        }
+        return stats;
+    }
+
+    public int getQueueDepth() {
+        return enabled ? queue.size() : 0;
+    }
+
+    public long getSpilledPending() {
+        return spilledPending.get();
+    }
+
+    private void runWorker() {
+        while (running) {
+            IngestTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            process(task);
+        }
+    }
+
+    /**
+     * 虚拟线程模式：分发线程取出事件后等待许可再启动虚拟线程处理，处理并发已满时最多持有一个事件，其余留在队列中
+     */
+    private void runDispatcher() {
+        while (running) {
+            IngestTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                virtualExecutor.executeWhenPermitted(() -> process(task));
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // 关闭时未能启动的事件放回队列，随队列一起落盘
+                requeue(task);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+        }
+    }
+
+    private void requeue(IngestTask task) {
+        if (queue.offer(task)) {
+            return;
+        }
+        try {
+            spill(task);
+        } catch (IOException e) {
+            log.error("关闭时写入溢出段失败，丢弃事件: {}", e.getMessage());
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(IngestTask task) {
+        long queueMillis = System.currentTimeMillis() - task.enqueuedAt();
+        lastQueueMillis = queueMillis;
+        totalQueueMillis.addAndGet(queueMillis);
+        maxQueueMillis.accumulateAndGet(queueMillis, Math::max);
+
+        try {
+            // 入队时间可能来自溢出段文件，按墙钟时间换算为接收时刻
+            webhookProcessor.processWebhookEvent(task.body(), System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(queueMillis));
+        } catch (Exception e) {
+            log.error("异步处理webhook事件失败: {}", e.getMessage(), e);
+        } finally {
+            processedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 将磁盘段文件中的事件回放到内存队列
+     */
+    private void runSpillDrainer() {
+        while (running) {
+            try {
+                Path segment = nextSealedSegment();
+                if (segment == null) {
+                    TimeUnit.MILLISECONDS.sleep(200);
+                    continue;
+                }
+                replaySegment(segment);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("回放溢出段失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private Path nextSealedSegment() {
+        spillLock.lock();
+        try {
+            // 没有已封存段但当前段有数据时，封存当前段以便回放
+            if (sealedSegments.isEmpty() && activeWriter != null) {
+                closeActiveSegment();
+            }
+            return sealedSegments.peekFirst();
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 从上次记录的位置开始回放段文件，每移入一条事件更新一次回放位置
+     */
+    private void replaySegment(Path segment) throws IOException, InterruptedException {
+        Path offsetFile = offsetFile(segment);
+        long offset = replayOffset(segment);
+        int replayed = 0;
+        ByteBuffer offsetBuffer = ByteBuffer.allocate(Long.BYTES);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)));
+             FileChannel offsetChannel = FileChannel.open(offsetFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            in.skipNBytes(offset);
+            while (true) {
+                IngestTask task = readRecord(in, segment);
+                if (task == null) {
+                    break;
+                }
+                while (!queue.offer(task, 1, TimeUnit.SECONDS)) {
+                    if (!running) {
+                        throw new InterruptedException();
+                    }
+                }
+                offset += RECORD_HEADER_BYTES + task.body().length;
+                offsetBuffer.clear();
+                offsetBuffer.putLong(0, offset);
+                offsetChannel.write(offsetBuffer, 0);
+                spilledPending.decrementAndGet();
+                replayed++;
+            }
+        }
+
+        spillLock.lock();
+        try {
+            sealedSegments.remove(segment);
+        } finally {
+            spillLock.unlock();
+        }
+        Files.deleteIfExists(segment);
+        Files.deleteIfExists(offsetFile);
+        log.info("溢出段回放完成: {}, 事件数: {}", segment.getFileName(), replayed);
+    }
+
+    /**
+     * 读取一条记录
+     *
+     * @return 到达段末尾、记录不完整或长度无效时返回null
+     */
+    private static IngestTask readRecord(DataInputStream in, Path segment) throws IOException {
+        try {
+            long enqueuedAt = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD_BYTES) {
+                log.warn("溢出段 {} 记录长度无效: {}，视为段结束", segment.getFileName(), length);
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return new IngestTask(body, enqueuedAt);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static Path offsetFile(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + OFFSET_SUFFIX);
+    }
+
+    /**
+     * 读取段文件已回放到的位置，没有记录时从头开始，超出文件长度时视为已回放完
+     */
+    private static long replayOffset(Path segment) throws IOException {
+        Path offsetFile = offsetFile(segment);
+        if (!Files.exists(offsetFile)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(offsetFile);
+        long offset = bytes.length >= Long.BYTES ? Math.max(0, ByteBuffer.wrap(bytes).getLong()) : 0;
+        return Math.min(offset, Files.size(segment));
+    }
+
+    private void spill(IngestTask task) throws IOException {
+        byte[] body = task.body();
+        spillLock.lock();
+        try {
+            if (activeWriter == null) {
+                activeSegment = Paths.get(spillDir, SEGMENT_PREFIX + System.currentTimeMillis() + "-" + (segmentSeq++) + SEGMENT_SUFFIX);
+                activeWriter = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(activeSegment)));
+            }
+            activeWriter.writeLong(task.enqueuedAt());
+            activeWriter.writeInt(body.length);
+            activeWriter.write(body);
+            activeWriter.flush();
+            spilledCount.incrementAndGet();
+            spilledPending.incrementAndGet();
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 封存当前写入段（需持有spillLock）
+     */
+    private void closeActiveSegment() {
+        if (activeWriter == null) {
+            return;
+        }
+        try {
+            activeWriter.close();
+        } catch (IOException e) {
+            log.warn("关闭溢出段失败: {}", e.getMessage());
+        }
+        sealedSegments.addLast(activeSegment);
+        activeWriter = null;
+        activeSegment = null;
+    }
+
+    /**
+     * 启动时恢复上次遗留的溢出段
+     */
+    private void recoverSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(spillDir), SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(null);
+        for (Path segment : segments) {
+            long records = countRecords(segment, replayOffset(segment));
+            sealedSegments.addLast(segment);
+            spilledPending.addAndGet(records);
+        }
+        if (!segments.isEmpty()) {
+            log.info("恢复遗留溢出段: {} 个, 待回放事件: {}", segments.size(), spilledPending.get());
+        }
+    }
+
+    /**
+     * 统计回放位置之后的完整记录数
+     */
+    private long countRecords(Path segment, long offset) throws IOException {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            in.skipNBytes(offset);
+            while (true) {
+                try {
+                    in.readLong();
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        return count;
+                    }
+                    in.skipNBytes(length);
+                    count++;
+                } catch (EOFException e) {
+                    return count;
+                }
+            }
+        }
+    }
+
+    private record IngestTask(byte[] body, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.hotelwebhook.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个任务一个虚拟线程，并发数由信号量而不是线程池大小限制
+ * 虚拟线程阻塞时不占用载体线程，等待许可的任务只是挂起的虚拟线程
+ */
+public class BoundedVirtualExecutor implements Executor {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private volatile boolean shutdown;
+
+    /**
+     * @param namePrefix     线程名前缀，后接递增序号
+     * @param maxConcurrency 同时运行的任务数上限
+     */
+    public BoundedVirtualExecutor(String namePrefix, int maxConcurrency) {
+        this.threadFactory = Thread.ofVirtual().name(namePrefix, 0).factory();
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency);
+    }
+
+    /**
+     * 立即返回，任务在自己的虚拟线程中等待许可
+     */
+    @Override
+    public void execute(Runnable task) {
+        checkRunning();
+        threadFactory.newThread(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            run(task);
+        }).start();
+    }
+
+    /**
+     * 在调用线程中等待许可后再启动任务，用于需要向上游施加背压的场景
+     */
+    public void executeWhenPermitted(Runnable task) throws InterruptedException {
+        checkRunning();
+        permits.acquire();
+        try {
+            checkRunning();
+            threadFactory.newThread(() -> run(task)).start();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 不再接收新任务，已提交的任务照常执行
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * 等待运行中的任务结束（取回全部许可）
+     *
+     * @return 超时前全部结束返回true
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!permits.tryAcquire(maxConcurrency, timeout, unit)) {
+            return false;
+        }
+        permits.release(maxConcurrency);
+        return true;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * 等待许可的任务数（近似值）
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    private void checkRunning() {
+        if (shutdown) {
+            throw new RejectedExecutionException("执行器已关闭");
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } finally {
+            permits.release();
+        }
+    }
+}
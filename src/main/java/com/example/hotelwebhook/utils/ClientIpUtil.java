@@ -0,0 +1,33 @@
+package com.example.hotelwebhook.utils;
+
+import java.net.InetSocketAddress;
+
+import org.springframework.http.HttpHeaders;
+
+public class ClientIpUtil {
+
+    private ClientIpUtil() {
+    }
+
+    /**
+     * 获取客户端IP：优先取代理转发的 X-Forwarded-For 首个地址，其次 X-Real-IP，最后是连接的对端地址
+     */
+    public static String resolve(HttpHeaders headers, InetSocketAddress remoteAddress) {
+        return resolve(headers.getFirst("X-Forwarded-For"), headers.getFirst("X-Real-IP"),
+                remoteAddress != null && remoteAddress.getAddress() != null
+                        ? remoteAddress.getAddress().getHostAddress() : null);
+    }
+
+    public static String resolve(String forwardedFor, String realIp, String remoteAddress) {
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            int comma = forwardedFor.indexOf(',');
+            return (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+        }
+
+        if (realIp != null && !realIp.isEmpty()) {
+            return realIp;
+        }
+
+        return remoteAddress != null ? remoteAddress : "unknown";
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.hotelwebhook.utils;
+
+/**
+ * 连接标识解码后的内容，验证通过后不可变
+ *
+ * @param userId    用户ID
+ * @param userType  用户类型 (guest/agent)
+ * @param expiresAt 过期时间（毫秒时间戳）
+ * @param nonce     随机数，保证同一用户每次签发的标识不同
+ */
+public record ConnectionClaims(String userId, String userType, long expiresAt, long nonce) {
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAt;
+    }
+}
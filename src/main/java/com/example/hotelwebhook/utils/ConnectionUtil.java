@@ -1,174 +1,220 @@
 package com.example.hotelwebhook.utils;
 
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * 简化的Token工具类
- * 用于生成简单的连接标识
+ * 连接标识工具类
+ * 标识格式：base64url(类型 过期时间.随机数.用户ID) + "." + base64url(HMAC-SHA256前16字节)，
+ * 一次解码得到 {@link ConnectionClaims}。验证结果按标识缓存在固定大小的直接映射表中，
+ * 重连风暴时同一标识不重复计算MAC
  */
 @Slf4j
 @Component
 public class ConnectionUtil {
     
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    
+    private final SecureRandom random = new SecureRandom();
+    
+    @Value("${websocket.token.secret:}")
+    private String secret;
+    
+    @Value("${websocket.token.ttl-seconds:86400}")
+    private long ttlSeconds;
+    
+    @Value("${websocket.token.cache-size:4096}")
+    private int cacheSize;
+    
+    @Value("${websocket.token.issuer-key:}")
+    private String issuerKey;
+    
+    private SecretKeySpec key;
+    private ThreadLocal<Mac> macs;
+    private CachedClaims[] cache;
+    private int cacheMask;
+    
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            // 未配置密钥时随机生成：重启后旧标识失效，多节点部署必须配置相同的密钥
+            log.warn("未配置websocket.token.secret，使用随机密钥");
+            keyBytes = new byte[32];
+            random.nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        if (issuerKey == null || issuerKey.isBlank()) {
+            log.error("未配置websocket.token.issuer-key，连接标识签发接口拒绝所有请求");
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+        macs = ThreadLocal.withInitial(this::newMac);
+        int size = Integer.highestOneBit(Math.max(2, cacheSize) - 1) << 1;
+        cache = new CachedClaims[size];
+        cacheMask = size - 1;
+    }
+    
     /**
-     * 生成简单的连接标识
+     * 签发连接标识
      */
     public String generateConnectionId(String userId, String userType) {
-        try {
-            LocalDateTime now = LocalDateTime.now();
-            
-            // 构建连接标识
-            String connectionData = String.format("%s:%s:%s", 
-                    userId, userType, 
-                    System.currentTimeMillis());
-            
-            // Base64编码
-            return Base64.getEncoder().encodeToString(connectionData.getBytes(StandardCharsets.UTF_8));
-            
-        } catch (Exception e) {
-            log.error("生成连接标识失败: {}", e.getMessage(), e);
-            return null;
-        }
+        char type = "agent".equals(userType) ? 'a' : 'g';
+        long expiresAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        String payload = type + Long.toString(expiresAt, 36) + "." + Long.toString(random.nextLong() >>> 1, 36) + "." + userId;
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
     }
     
     /**
-     * 从连接标识中提取用户ID
+     * 验证连接标识
+     *
+     * @return 签名有效且未过期时返回解码后的内容，否则返回null
      */
-    public String extractUserId(String connectionId) {
-        try {
-            if (connectionId == null || connectionId.isEmpty()) {
-                return null;
-            }
-            
-            // Base64解码
-            String decodedData = new String(Base64.getDecoder().decode(connectionId), StandardCharsets.UTF_8);
-            String[] parts = decodedData.split(":");
-            
-            if (parts.length >= 1) {
-                return parts[0];
-            }
-            
+    public ConnectionClaims verify(String connectionId) {
+        if (connectionId == null || connectionId.isEmpty()) {
             return null;
-            
-        } catch (Exception e) {
-            log.warn("从连接标识中提取用户ID失败: {}", e.getMessage());
+        }
+        long now = System.currentTimeMillis();
+        int index = spread(connectionId.hashCode()) & cacheMask;
+        CachedClaims cached = cache[index];
+        if (cached != null && constantTimeEquals(cached.token, connectionId)) {
+            return cached.claims.isExpired(now) ? null : cached.claims;
+        }
+        ConnectionClaims claims = decode(connectionId);
+        if (claims == null || claims.isExpired(now)) {
             return null;
         }
+        // 只缓存验证通过的标识，伪造的标识不会冲掉缓存条目
+        cache[index] = new CachedClaims(connectionId, claims);
+        return claims;
     }
     
     /**
-     * 从连接标识中提取用户类型
+     * 是否配置了签发方密钥
      */
-    public String extractUserType(String connectionId) {
-        try {
-            if (connectionId == null || connectionId.isEmpty()) {
-                return null;
-            }
-            
-            // Base64解码
-            String decodedData = new String(Base64.getDecoder().decode(connectionId), StandardCharsets.UTF_8);
-            String[] parts = decodedData.split(":");
-            
-            if (parts.length >= 2) {
-                return parts[1];
-            }
-            
-            return null;
-            
-        } catch (Exception e) {
-            log.warn("从连接标识中提取用户类型失败: {}", e.getMessage());
-            return null;
-        }
+    public boolean isIssuerConfigured() {
+        return issuerKey != null && !issuerKey.isBlank();
     }
     
     /**
-     * 验证连接标识的有效性
+     * 校验签发方密钥
+     *
+     * @return 未配置websocket.token.issuer-key时总是返回false
      */
-    public boolean isValidConnectionId(String connectionId) {
-        try {
-            if (connectionId == null || connectionId.isEmpty()) {
-                return false;
-            }
-            
-            // Base64解码
-            String decodedData = new String(Base64.getDecoder().decode(connectionId), StandardCharsets.UTF_8);
-            String[] parts = decodedData.split(":");
-            
-            // 验证格式：userId:userType:timestamp
-            if (parts.length != 3) {
-                return false;
-            }
-            
-            // 验证用户类型
-            String userType = parts[1];
-            if (!"agent".equals(userType) && !"guest".equals(userType)) {
-                return false;
-            }
-            
-            // 验证时间戳格式（毫秒时间戳）
-            try {
-                Long.parseLong(parts[2]);
-            } catch (Exception e) {
-                return false;
-            }
-            
-            return true;
-            
-        } catch (Exception e) {
-            log.warn("验证连接标识失败: {}", e.getMessage());
+    public boolean isTrustedIssuer(String presentedKey) {
+        if (!isIssuerConfigured()) {
             return false;
         }
+        return presentedKey != null && MessageDigest.isEqual(
+                issuerKey.getBytes(StandardCharsets.UTF_8), presentedKey.getBytes(StandardCharsets.UTF_8));
     }
     
     /**
-     * 从连接标识中提取时间戳（毫秒时间戳）
+     * 日志中使用的连接标识摘要：SHA-256前8字节，可关联同一标识但不能用于连接
      */
-    public Long extractTimestamp(String connectionId) {
+    public static String fingerprint(String connectionId) {
+        if (connectionId == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(connectionId.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化SHA-256失败", e);
+        }
+    }
+    
+    private ConnectionClaims decode(String connectionId) {
+        int dot = connectionId.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
         try {
-            if (connectionId == null || connectionId.isEmpty()) {
-                return null;
-            }
-            
-            // Base64解码
-            String decodedData = new String(Base64.getDecoder().decode(connectionId), StandardCharsets.UTF_8);
-            String[] parts = decodedData.split(":");
-            
-            if (parts.length >= 3) {
-                return Long.parseLong(parts[2]);
-            }
-            
+            payload = DECODER.decode(connectionId.substring(0, dot));
+            signature = DECODER.decode(connectionId.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+        
+        String data = new String(payload, StandardCharsets.UTF_8);
+        int first = data.indexOf('.');
+        int second = first < 0 ? -1 : data.indexOf('.', first + 1);
+        if (second < 0 || data.isEmpty()) {
             return null;
-            
-        } catch (Exception e) {
-            log.warn("从连接标识中提取时间戳失败: {}", e.getMessage());
+        }
+        String userType = switch (data.charAt(0)) {
+            case 'a' -> "agent";
+            case 'g' -> "guest";
+            default -> null;
+        };
+        if (userType == null) {
             return null;
         }
+        try {
+            long expiresAt = Long.parseLong(data, 1, first, 36);
+            long nonce = Long.parseLong(data, first + 1, second, 36);
+            String userId = data.substring(second + 1);
+            return userId.isEmpty() ? null : new ConnectionClaims(userId, userType, expiresAt, nonce);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private byte[] sign(byte[] payload) {
+        return Arrays.copyOf(macs.get().doFinal(payload), MAC_LENGTH);
+    }
+    
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化" + ALGORITHM + "失败", e);
+        }
     }
     
     /**
-     * 从连接标识中提取时间戳并转换为LocalDateTime
+     * 比较耗时与匹配的前缀长度无关，避免通过缓存命中的耗时推测有效标识
      */
-    public LocalDateTime extractTimestampAsLocalDateTime(String connectionId) {
-        try {
-            Long timestamp = extractTimestamp(connectionId);
-            if (timestamp != null) {
-                return LocalDateTime.ofInstant(
-                    java.time.Instant.ofEpochMilli(timestamp), 
-                    java.time.ZoneId.systemDefault()
-                );
-            }
-            return null;
-            
-        } catch (Exception e) {
-            log.warn("从连接标识中提取时间戳并转换为LocalDateTime失败: {}", e.getMessage());
-            return null;
+    private static boolean constantTimeEquals(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < a.length(); i++) {
+            diff |= a.charAt(i) ^ b.charAt(i);
         }
+        return diff == 0;
+    }
+    
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+    
+    private record CachedClaims(String token, ConnectionClaims claims) {
     }
 }
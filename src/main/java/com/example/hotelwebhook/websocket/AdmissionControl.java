@@ -0,0 +1,210 @@
+package com.example.hotelwebhook.websocket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import com.example.hotelwebhook.utils.ClientIpUtil;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 连接准入控制，应对部署或网络抖动后的集中重连
+ * WebSocket握手和 /api/websocket/connect/* 共用同一组令牌桶：每个IP一个（按IP散列到固定数量的桶，内存有界），
+ * 另有一个全局桶；同时限制处理中的握手数。被拒绝的请求返回503，Retry-After 带随机抖动，避免客户端同时重试
+ */
+@Slf4j
+@Component
+public class AdmissionControl implements HandshakeInterceptor, HandlerInterceptor {
+    
+    private static final String ATTR_ADMITTED = AdmissionControl.class.getName() + ".admitted";
+    
+    @Value("${websocket.admission.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${websocket.admission.global-rate:500}")
+    private double globalRate;
+    
+    @Value("${websocket.admission.global-burst:1000}")
+    private double globalBurst;
+    
+    @Value("${websocket.admission.ip-rate:20}")
+    private double ipRate;
+    
+    @Value("${websocket.admission.ip-burst:100}")
+    private double ipBurst;
+    
+    @Value("${websocket.admission.ip-buckets:16384}")
+    private int ipBucketCount;
+    
+    @Value("${websocket.admission.max-pending:256}")
+    private int maxPending;
+    
+    @Value("${websocket.admission.retry-after-seconds:2}")
+    private int retryAfterSeconds;
+    
+    @Value("${websocket.admission.retry-after-jitter-seconds:8}")
+    private int retryAfterJitterSeconds;
+    
+    private TokenBucket globalBucket;
+    private TokenBucket[] ipBuckets;
+    private int ipMask;
+    private final AtomicInteger pending = new AtomicInteger();
+    
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedPending = new AtomicLong();
+    private final AtomicLong rejectedIp = new AtomicLong();
+    private final AtomicLong rejectedGlobal = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        globalBucket = new TokenBucket(globalRate, globalBurst);
+        int size = Integer.highestOneBit(Math.max(2, ipBucketCount) - 1) << 1;
+        ipBuckets = new TokenBucket[size];
+        for (int i = 0; i < size; i++) {
+            ipBuckets[i] = new TokenBucket(ipRate, ipBurst);
+        }
+        ipMask = size - 1;
+    }
+    
+    /**
+     * 尝试准入，成功后必须调用 {@link #release()}
+     */
+    public boolean tryAdmit(String clientIp) {
+        if (!enabled) {
+            return true;
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejectedPending.incrementAndGet();
+            return false;
+        }
+        // 先扣IP桶，单个IP无法耗尽全局配额
+        int h = clientIp.hashCode();
+        if (!ipBuckets[(h ^ (h >>> 16)) & ipMask].tryAcquire()) {
+            pending.decrementAndGet();
+            rejectedIp.incrementAndGet();
+            return false;
+        }
+        if (!globalBucket.tryAcquire()) {
+            pending.decrementAndGet();
+            rejectedGlobal.incrementAndGet();
+            return false;
+        }
+        admitted.incrementAndGet();
+        return true;
+    }
+    
+    public void release() {
+        if (enabled) {
+            pending.decrementAndGet();
+        }
+    }
+    
+    /**
+     * 建议的重试间隔（秒），在基础值上加随机抖动
+     */
+    public int nextRetryAfterSeconds() {
+        return retryAfterSeconds + ThreadLocalRandom.current().nextInt(retryAfterJitterSeconds + 1);
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedPending", rejectedPending.get());
+        stats.put("rejectedIp", rejectedIp.get());
+        stats.put("rejectedGlobal", rejectedGlobal.get());
+        stats.put("rejected", rejectedPending.get() + rejectedIp.get() + rejectedGlobal.get());
+        stats.put("pending", pending.get());
+        return stats;
+    }
+    
+    // WebSocket握手
+    
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
+        String clientIp = ClientIpUtil.resolve(request.getHeaders(), request.getRemoteAddress());
+        if (tryAdmit(clientIp)) {
+            return true;
+        }
+        log.debug("握手被准入控制拒绝: {}", clientIp);
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(nextRetryAfterSeconds()));
+        return false;
+    }
+    
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Exception exception) {
+        release();
+    }
+    
+    // 连接信息接口
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String clientIp = ClientIpUtil.resolve(request.getHeader("X-Forwarded-For"), request.getHeader("X-Real-IP"),
+                request.getRemoteAddr());
+        if (tryAdmit(clientIp)) {
+            request.setAttribute(ATTR_ADMITTED, Boolean.TRUE);
+            return true;
+        }
+        log.debug("请求被准入控制拒绝: {}", clientIp);
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(nextRetryAfterSeconds()));
+        return false;
+    }
+    
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        if (request.getAttribute(ATTR_ADMITTED) != null) {
+            release();
+        }
+    }
+    
+    /**
+     * 令牌桶：按经过的时间补充令牌
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+        
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+        
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.hotelwebhook.websocket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * 把已编码的JSON通知转为CBOR
+ * 流式逐个token复制，不构建对象树；通知中原样拼接的 data 也转为CBOR结构，客户端无需二次解析。
+ * 结果缓存在 {@link NotificationFrame} 上，同一通知只转换一次
+ */
+public class CborTranscoder {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    public byte[] transcode(byte[] json) {
+        try (ByteArrayBuilder out = new ByteArrayBuilder(json.length)) {
+            try (JsonParser parser = jsonFactory.createParser(json);
+                 JsonGenerator generator = cborFactory.createGenerator(out)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("通知转换CBOR失败", e);
+        }
+    }
+
+    /**
+     * 写入CBOR数组头（定长数组），合批时在各元素前拼接
+     *
+     * @return 写入的字节数
+     */
+    public static int writeArrayHeader(byte[] buffer, int size) {
+        if (size < 24) {
+            buffer[0] = (byte) (0x80 | size);
+            return 1;
+        }
+        if (size < 0x100) {
+            buffer[0] = (byte) 0x98;
+            buffer[1] = (byte) size;
+            return 2;
+        }
+        buffer[0] = (byte) 0x99;
+        buffer[1] = (byte) (size >>> 8);
+        buffer[2] = (byte) size;
+        return 3;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.hotelwebhook.websocket;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import com.example.hotelwebhook.utils.ConnectionClaims;
+import com.example.hotelwebhook.utils.ConnectionUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 握手拦截器：升级前解析一次查询参数并验证连接标识
+ * 标识缺失、无效或过期返回401，与userId/contactId不符返回403；
+ * 验证通过的身份以会话属性传给 {@link NotifyWebSocketHandler}
+ */
+@Slf4j
+@Component
+public class ConnectionHandshakeInterceptor implements HandshakeInterceptor {
+    
+    public static final String ATTR_USER_ID = "userId";
+    public static final String ATTR_USER_TYPE = "userType";
+    public static final String ATTR_CONNECTION_ID = "connectionId";
+    public static final String ATTR_LAST_SEQ = "lastSeq";
+    public static final String ATTR_BATCH = "batch";
+    public static final String ATTR_COMPRESS = "compress";
+    public static final String ATTR_INBOXES = "inboxes";
+    public static final String ATTR_TEAMS = "teams";
+    
+    @Autowired
+    private ConnectionUtil connectionUtil;
+    
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
+        HandshakeParams params = HandshakeParams.parse(request.getURI().getRawQuery());
+        
+        if (params.connectionId == null || params.connectionId.isEmpty()) {
+            log.warn("WebSocket握手缺少connectionId参数: {}", request.getRemoteAddress());
+            return reject(response, HttpStatus.UNAUTHORIZED);
+        }
+        
+        // 校验签名与有效期
+        ConnectionClaims claims = connectionUtil.verify(params.connectionId);
+        if (claims == null) {
+            log.warn("连接标识无效或已过期: connectionId={}", ConnectionUtil.fingerprint(params.connectionId));
+            return reject(response, HttpStatus.UNAUTHORIZED);
+        }
+        
+        // 根据参数判断用户类型，并与连接标识比对
+        String actualUserId;
+        String userType;
+        if (params.userId != null && !params.userId.isEmpty()) {
+            actualUserId = params.userId;
+            userType = "agent";
+        } else {
+            actualUserId = params.contactId;
+            userType = "guest";
+        }
+        if (!claims.userId().equals(actualUserId) || !claims.userType().equals(userType)) {
+            log.warn("连接标识验证失败: 实际={}({}), 期望={}({}), connectionId={}",
+                    actualUserId, userType, claims.userId(), claims.userType(), ConnectionUtil.fingerprint(params.connectionId));
+            return reject(response, HttpStatus.FORBIDDEN);
+        }
+        
+        attributes.put(ATTR_USER_ID, claims.userId());
+        attributes.put(ATTR_USER_TYPE, claims.userType());
+        attributes.put(ATTR_CONNECTION_ID, params.connectionId);
+        if (params.lastSeq != null) {
+            attributes.put(ATTR_LAST_SEQ, params.lastSeq);
+        }
+        if (params.batch) {
+            attributes.put(ATTR_BATCH, Boolean.TRUE);
+        }
+        if (params.compress) {
+            attributes.put(ATTR_COMPRESS, Boolean.TRUE);
+        }
+        // 客服在握手时声明的收件箱/团队订阅，任一参数出现即视为已声明
+        if ("agent".equals(userType) && (params.inboxes != null || params.teams != null)) {
+            attributes.put(ATTR_INBOXES, params.inboxes != null ? params.inboxes : List.of());
+            attributes.put(ATTR_TEAMS, params.teams != null ? params.teams : List.of());
+        }
+        return true;
+    }
+    
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Exception exception) {
+    }
+    
+    private static boolean reject(ServerHttpResponse response, HttpStatus status) {
+        response.setStatusCode(status);
+        return false;
+    }
+    
+    /**
+     * 握手查询参数，一次遍历解析
+     */
+    static final class HandshakeParams {
+        String userId;
+        String contactId;
+        String connectionId;
+        Long lastSeq;
+        boolean batch;
+        boolean compress;
+        List<String> inboxes;
+        List<String> teams;
+        
+        static HandshakeParams parse(String query) {
+            HandshakeParams params = new HandshakeParams();
+            if (query == null) {
+                return params;
+            }
+            int start = 0;
+            while (start < query.length()) {
+                int end = query.indexOf('&', start);
+                if (end < 0) {
+                    end = query.length();
+                }
+                int eq = query.indexOf('=', start);
+                if (eq > start && eq < end) {
+                    params.set(query.substring(start, eq), query.substring(eq + 1, end));
+                }
+                start = end + 1;
+            }
+            return params;
+        }
+        
+        private void set(String name, String rawValue) {
+            switch (name) {
+                case "userId" -> userId = decode(rawValue);
+                case "contactId" -> contactId = decode(rawValue);
+                case "connectionId" -> connectionId = decode(rawValue);
+                case "batch" -> batch = "1".equals(rawValue) || "true".equalsIgnoreCase(rawValue);
+                case "compress" -> compress = "deflate".equals(rawValue);
+                case "inboxes" -> inboxes = splitIds(decode(rawValue));
+                case "teams" -> teams = splitIds(decode(rawValue));
+                case "lastSeq" -> {
+                    try {
+                        lastSeq = Long.valueOf(rawValue);
+                    } catch (NumberFormatException e) {
+                        log.warn("lastSeq参数无效: {}", rawValue);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        
+        /**
+         * 逗号分隔的ID列表，忽略空项
+         */
+        private static List<String> splitIds(String value) {
+            List<String> ids = new ArrayList<>();
+            for (String id : value.split(",")) {
+                if (!id.isBlank()) {
+                    ids.add(id.trim());
+                }
+            }
+            return ids;
+        }
+        
+        private static String decode(String value) {
+            return value.indexOf('%') < 0 && value.indexOf('+') < 0
+                    ? value
+                    : URLDecoder.decode(value, StandardCharsets.UTF_8);
+        }
+    }
+}
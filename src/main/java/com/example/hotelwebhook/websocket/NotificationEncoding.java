@@ -0,0 +1,27 @@
+package com.example.hotelwebhook.websocket;
+
+/**
+ * 通知编码，由握手时的 Sec-WebSocket-Protocol 子协议选择，未声明子协议时为JSON
+ */
+public enum NotificationEncoding {
+
+    JSON("hotel.notify.json"),
+    CBOR("hotel.notify.cbor");
+
+    private final String subprotocol;
+
+    NotificationEncoding(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    /**
+     * @param subprotocol 握手协商出的子协议，可为null
+     */
+    public static NotificationEncoding fromSubprotocol(String subprotocol) {
+        return CBOR.subprotocol.equals(subprotocol) ? CBOR : JSON;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.hotelwebhook.websocket;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.web.socket.TextMessage;
+
+import com.example.hotelwebhook.model.ChatwootEventType;
+
+/**
+ * 已编码的通知帧
+ * 通知只序列化一次；参与补发的通知按接收者替换序号（只复制字节，见 {@link #withSeq(long)}），同一接收者的所有连接共享该帧；
+ * 文本消息（Spring的TextMessage会立即解码出完整字符串）、压缩结果与CBOR编码在第一次需要时生成，之后所有使用同一编码的连接共用。
+ * 重放缓冲区只保存共享字节的副本，见 {@link #retained()}
+ */
+public final class NotificationFrame {
+
+    private static final byte[] SEQ_FIELD = "\"seq\":".getBytes(StandardCharsets.UTF_8);
+
+    private final long seq;
+    private final long createdAt;
+    private final long createdNanos;
+    private final ChatwootEventType eventType;
+    private final byte[] json;
+    private volatile TextMessage textMessage;
+    private volatile byte[] deflated;
+    private volatile byte[] cbor;
+    // 广播时所有接收者的缓冲区共用同一份副本
+    private volatile NotificationFrame retainedCopy;
+
+    public NotificationFrame(long seq, byte[] json) {
+        this(seq, json, null);
+    }
+
+    /**
+     * @param eventType 来源事件类型，非null时记录写入耗时
+     */
+    public NotificationFrame(long seq, byte[] json, ChatwootEventType eventType) {
+        this(seq, System.currentTimeMillis(), System.nanoTime(), eventType, json);
+    }
+
+    private NotificationFrame(long seq, long createdAt, long createdNanos, ChatwootEventType eventType, byte[] json) {
+        this.seq = seq;
+        this.createdAt = createdAt;
+        this.createdNanos = createdNanos;
+        this.eventType = eventType;
+        this.json = json;
+    }
+
+    /**
+     * 供重放缓冲区保存的副本：共享已编码的字节，不持有发送时生成的文本消息、压缩与CBOR结果，
+     * 缓冲区按 {@link #getLength()} 统计的内存即为实际占用
+     */
+    public NotificationFrame retained() {
+        NotificationFrame copy = retainedCopy;
+        if (copy == null) {
+            // 并发时可能各自创建一份，内容相同，不影响正确性
+            copy = new NotificationFrame(seq, createdAt, createdNanos, eventType, json);
+            copy.retainedCopy = copy;
+            retainedCopy = copy;
+        }
+        return copy;
+    }
+
+    /**
+     * 通知序号，0表示不参与重放
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    public ChatwootEventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * 文本消息，同一帧只解码一次
+     */
+    public TextMessage getTextMessage() {
+        TextMessage message = textMessage;
+        if (message == null) {
+            synchronized (this) {
+                message = textMessage;
+                if (message == null) {
+                    message = new TextMessage(json);
+                    textMessage = message;
+                }
+            }
+        }
+        return message;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public int getLength() {
+        return json.length;
+    }
+
+    /**
+     * 以新序号重新编码，替换信封中的seq字段，其余字节原样复制，创建时间沿用原帧
+     * 序号按接收者分配，共享帧在记录补发时为每个接收者各生成一份
+     *
+     * @param seq 接收者的序号，为0时不参与重放
+     */
+    public NotificationFrame withSeq(long seq) {
+        int start = indexOf(json, SEQ_FIELD);
+        if (start < 0) {
+            return new NotificationFrame(seq, createdAt, createdNanos, eventType, json);
+        }
+        start += SEQ_FIELD.length;
+        int end = start;
+        while (end < json.length && json[end] != ',' && json[end] != '}') {
+            end++;
+        }
+        byte[] value = (seq > 0 ? Long.toString(seq) : "null").getBytes(StandardCharsets.US_ASCII);
+        byte[] restamped = new byte[json.length - (end - start) + value.length];
+        System.arraycopy(json, 0, restamped, 0, start);
+        System.arraycopy(value, 0, restamped, start, value.length);
+        System.arraycopy(json, end, restamped, start + value.length, json.length - end);
+        return new NotificationFrame(seq, createdAt, createdNanos, eventType, restamped);
+    }
+
+    /**
+     * 信封字段在data之前，第一次出现的位置即为信封的seq字段
+     */
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 压缩后的字节，同一帧只压缩一次
+     * 二进制帧的ByteBuffer在发送时会被读取，每次发送需各自包装，不能像文本帧一样共享消息对象
+     */
+    public byte[] getDeflated(PayloadCompressor compressor) {
+        byte[] bytes = deflated;
+        if (bytes == null) {
+            synchronized (this) {
+                bytes = deflated;
+                if (bytes == null) {
+                    bytes = compressor.deflate(getJson());
+                    deflated = bytes;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * CBOR编码的字节，同一帧只转换一次
+     */
+    public byte[] getCbor(CborTranscoder transcoder) {
+        byte[] bytes = cbor;
+        if (bytes == null) {
+            synchronized (this) {
+                bytes = cbor;
+                if (bytes == null) {
+                    bytes = transcoder.transcode(getJson());
+                    cbor = bytes;
+                }
+            }
+        }
+        return bytes;
+    }
+}
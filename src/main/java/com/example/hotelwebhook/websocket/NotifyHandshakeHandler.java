@@ -0,0 +1,117 @@
+package com.example.hotelwebhook.websocket;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+/**
+ * 握手处理：决定是否协商容器内置的permessage-deflate扩展
+ * 内置扩展逐连接、逐条压缩所有消息，无法设置阈值或在连接间共享压缩结果；
+ * 申请了应用层压缩（compress=deflate）的JSON连接不再协商，避免重复压缩；CBOR连接不做应用层压缩，仍协商内置扩展。
+ * 是否申请压缩取自握手拦截器解析后写入的属性，不再重复解析查询串。
+ * Tomcat升级时直接读取请求头与内置扩展协商，不经过Spring的扩展筛选，因此改为对Tomcat隐藏扩展请求头
+ */
+@Component
+public class NotifyHandshakeHandler extends DefaultHandshakeHandler {
+
+    private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+    private static final String DEFLATE_ALLOWED_ATTRIBUTE = NotifyHandshakeHandler.class.getName() + ".deflateAllowed";
+
+    @Autowired
+    private SessionSendQueueFactory sendQueueFactory;
+
+    @Value("${websocket.compression.permessage-deflate:true}")
+    private boolean permessageDeflate;
+
+    public NotifyHandshakeHandler() {
+        this(new ExtensionFilteringUpgradeStrategy());
+    }
+
+    private NotifyHandshakeHandler(ExtensionFilteringUpgradeStrategy upgradeStrategy) {
+        super(upgradeStrategy);
+        upgradeStrategy.deflateAllowed = this::permessageDeflateAllowed;
+    }
+
+    /**
+     * @param selectedProtocol 协商出的子协议，可为null
+     * @param attributes       握手拦截器写入的连接属性
+     */
+    private boolean permessageDeflateAllowed(String selectedProtocol, Map<String, Object> attributes) {
+        if (!permessageDeflate) {
+            return false;
+        }
+        // CBOR连接不做应用层压缩，保留内置扩展
+        if (NotificationEncoding.fromSubprotocol(selectedProtocol) == NotificationEncoding.CBOR) {
+            return true;
+        }
+        return !(sendQueueFactory.isCompressionEnabled()
+                && Boolean.TRUE.equals(attributes.get(ConnectionHandshakeInterceptor.ATTR_COMPRESS)));
+    }
+
+    /**
+     * 不允许permessage-deflate时，升级请求中不再携带扩展请求头
+     */
+    private static final class ExtensionFilteringUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+        private BiPredicate<String, Map<String, Object>> deflateAllowed = (protocol, attributes) -> true;
+
+        /**
+         * 子协议与连接属性只在此处可见，判断结果记在请求属性上供升级时使用
+         */
+        @Override
+        public void upgrade(ServerHttpRequest request, ServerHttpResponse response, String selectedProtocol,
+                List<WebSocketExtension> selectedExtensions, Principal user, WebSocketHandler wsHandler,
+                Map<String, Object> attrs) throws HandshakeFailureException {
+            if (request instanceof ServletServerHttpRequest servletRequest) {
+                servletRequest.getServletRequest().setAttribute(DEFLATE_ALLOWED_ATTRIBUTE,
+                        deflateAllowed.test(selectedProtocol, attrs));
+            }
+            super.upgrade(request, response, selectedProtocol, selectedExtensions, user, wsHandler, attrs);
+        }
+
+        @Override
+        protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+            boolean allowed = !Boolean.FALSE.equals(request.getAttribute(DEFLATE_ALLOWED_ATTRIBUTE));
+            super.upgradeHttpToWebSocket(allowed ? request : new WithoutExtensionsRequest(request),
+                    response, endpointConfig, pathParams);
+        }
+    }
+
+    private static final class WithoutExtensionsRequest extends HttpServletRequestWrapper {
+
+        WithoutExtensionsRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.hotelwebhook.websocket;
+
+/**
+ * 发送队列溢出策略
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃队列中最旧的消息，为新消息腾出空间
+     */
+    DROP_OLDEST,
+
+    /**
+     * 丢弃新到达的消息
+     */
+    DROP_NEWEST,
+
+    /**
+     * 关闭慢速连接
+     */
+    DISCONNECT
+}
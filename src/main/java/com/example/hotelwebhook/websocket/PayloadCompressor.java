@@ -0,0 +1,95 @@
+package com.example.hotelwebhook.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * 应用层通知压缩
+ * 达到阈值的通知以raw DEFLATE编码为二进制帧发送（浏览器可用 DecompressionStream("deflate-raw") 解压）。
+ * 与逐连接的permessage-deflate不同，压缩结果缓存在 {@link NotificationFrame} 上，广播时只压缩一次。
+ * Deflater持有原生zlib内存，放在有界池中复用：虚拟线程模式下写线程按任务创建，不能按线程缓存；
+ * 池满时归还的Deflater立即释放
+ */
+public class PayloadCompressor {
+
+    private final int minBytes;
+    private final int level;
+    private final BlockingQueue<Deflater> pool;
+
+    /**
+     * @param minBytes 小于该长度的通知不压缩
+     * @param level    压缩级别 1~9
+     */
+    public PayloadCompressor(int minBytes, int level) {
+        this.minBytes = minBytes;
+        this.level = level;
+        // 压缩是纯CPU操作，同时进行的压缩数不超过CPU数
+        this.pool = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getMinBytes() {
+        return minBytes;
+    }
+
+    /**
+     * 是否值得压缩
+     */
+    public boolean accepts(int length) {
+        return length >= minBytes;
+    }
+
+    /**
+     * 以raw DEFLATE格式压缩
+     */
+    public byte[] deflate(byte[] input) {
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            return deflate(deflater, input);
+        } finally {
+            deflater.reset();
+            if (!pool.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * 释放池中的Deflater
+     */
+    public void close() {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] input) {
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, input.length / 2)];
+        ByteArrayOutputStream out = null;
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                if (out == null) {
+                    out = new ByteArrayOutputStream(buffer.length * 2);
+                }
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        if (out == null) {
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        }
+        out.write(buffer, 0, length);
+        return out.toByteArray();
+    }
+}
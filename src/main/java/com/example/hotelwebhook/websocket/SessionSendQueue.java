@@ -0,0 +1,443 @@
+package com.example.hotelwebhook.websocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.hotelwebhook.metrics.PipelineMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 单个WebSocket连接的出站发送队列
+ * 调用方只负责入队，由写线程串行发送，保证同一连接不会被并发写入。
+ * 队列元素为 {@link WebSocketMessage} 或 {@link NotificationFrame}，后者在写入后记录耗时。
+ * 开启合批时，通知入队后等待一个窗口再发送，期间连续的多条通知合并为一个JSON数组帧；
+ * 开启压缩时，达到阈值的通知以压缩后的二进制帧发送；
+ * 协商了CBOR子协议时，通知（含补发与合批）均以CBOR二进制帧发送，控制消息仍为JSON文本帧
+ */
+@Slf4j
+public class SessionSendQueue {
+
+    private static final long[] EMPTY_SEQS = new long[0];
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final CloseStatus overflowCloseStatus;
+    private final Consumer<String> failureHandler;
+    private final PipelineMetrics.SendMeters meters;
+    private final Batching batching;
+    private final PayloadCompressor compressor;
+    private final CborTranscoder cborTranscoder;
+
+    private final ArrayDeque<Object> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean draining;
+    private boolean closed;
+    // 合批窗口内等待执行的排空任务
+    private ScheduledFuture<?> scheduledDrain;
+    // 合批缓冲，只由写线程使用
+    private NotificationFrame[] batchBuffer;
+    // 重连时已补发的通知序号（升序），实时推送中的同一通知不再重复发送；同一接收者的实时通知按序号递增入队，越过最大序号后清空
+    private long[] replayedSeqs = EMPTY_SEQS;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    public SessionSendQueue(WebSocketSession session, Executor executor, int maxMessages, long maxBytes,
+                            OverflowPolicy overflowPolicy, CloseStatus overflowCloseStatus,
+                            Consumer<String> failureHandler, PipelineMetrics.SendMeters meters) {
+        this(session, executor, maxMessages, maxBytes, overflowPolicy, overflowCloseStatus, failureHandler, meters,
+                null, null, null);
+    }
+
+    /**
+     * @param batching   合批参数，为null时每条消息立即单独发送
+     * @param compressor     应用层压缩，为null时不压缩，只作用于JSON编码
+     * @param cborTranscoder CBOR编码，为null时通知以JSON文本发送
+     */
+    public SessionSendQueue(WebSocketSession session, Executor executor, int maxMessages, long maxBytes,
+                            OverflowPolicy overflowPolicy, CloseStatus overflowCloseStatus,
+                            Consumer<String> failureHandler, PipelineMetrics.SendMeters meters,
+                            Batching batching, PayloadCompressor compressor, CborTranscoder cborTranscoder) {
+        this.session = session;
+        this.executor = executor;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowCloseStatus = overflowCloseStatus;
+        this.failureHandler = failureHandler;
+        this.meters = meters;
+        this.batching = batching;
+        this.compressor = cborTranscoder == null ? compressor : null;
+        this.cborTranscoder = cborTranscoder;
+    }
+
+    /**
+     * 消息入队，不等待网络发送
+     *
+     * @return 是否入队成功
+     */
+    public boolean enqueue(WebSocketMessage<?> message) {
+        return enqueue(message, message.getPayloadLength(), 0);
+    }
+
+    /**
+     * 通知入队
+     */
+    public boolean enqueue(NotificationFrame frame) {
+        return enqueue(frame, frame.getLength(), frame.getSeq());
+    }
+
+    /**
+     * 按顺序入队补发的通知，并记录已补发的序号
+     * 补发的帧来自重放缓冲区，编码结果只给本连接使用，不缓存在缓冲区保存的帧上
+     */
+    public synchronized void enqueueReplay(List<NotificationFrame> frames) {
+        long[] seqs = new long[frames.size()];
+        for (int i = 0; i < seqs.length; i++) {
+            NotificationFrame frame = frames.get(i);
+            WebSocketMessage<?> message = cborTranscoder != null
+                    ? new BinaryMessage(cborTranscoder.transcode(frame.getJson())) : new TextMessage(frame.getJson());
+            enqueue(message, message.getPayloadLength(), 0);
+            seqs[i] = frame.getSeq();
+        }
+        // 补发按序号升序，之后的实时通知序号递增
+        replayedSeqs = seqs;
+    }
+
+    /**
+     * @param entry  入队的元素：消息本身或通知帧
+     * @param length 计入队列字节数的长度
+     * @param seq    通知序号，0表示不参与补发去重
+     */
+    private boolean enqueue(Object entry, int length, long seq) {
+        boolean disconnect = false;
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (seq > 0 && replayedSeqs.length > 0) {
+                if (seq > replayedSeqs[replayedSeqs.length - 1]) {
+                    // 实时通知已越过补发范围，不再需要去重
+                    replayedSeqs = EMPTY_SEQS;
+                } else if (Arrays.binarySearch(replayedSeqs, seq) >= 0) {
+                    // 已在补发中发送
+                    return true;
+                }
+            }
+
+            if (queue.size() + 1 > maxMessages || queuedBytes + length > maxBytes) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST -> {
+                        droppedCount.incrementAndGet();
+                        meters.increment(PipelineMetrics.Outcome.DROPPED);
+                        return false;
+                    }
+                    case DROP_OLDEST -> {
+                        while (!queue.isEmpty() && (queue.size() + 1 > maxMessages || queuedBytes + length > maxBytes)) {
+                            queuedBytes -= length(queue.pollFirst());
+                            droppedCount.incrementAndGet();
+                            meters.increment(PipelineMetrics.Outcome.DROPPED);
+                        }
+                    }
+                    case DISCONNECT -> {
+                        droppedCount.addAndGet(queue.size() + 1L);
+                        meters.increment(PipelineMetrics.Outcome.DROPPED, queue.size() + 1L);
+                        clear();
+                        closed = true;
+                        disconnect = true;
+                    }
+                }
+            }
+
+            if (!disconnect) {
+                queue.addLast(entry);
+                queuedBytes += length;
+                if (!draining) {
+                    draining = true;
+                    if (batching != null && entry instanceof NotificationFrame) {
+                        scheduledDrain = batching.scheduler().schedule(() -> executor.execute(this::drain),
+                                batching.windowMillis(), TimeUnit.MILLISECONDS);
+                    } else {
+                        executor.execute(this::drain);
+                    }
+                } else if (scheduledDrain != null && queue.size() >= batching.maxMessages()
+                        && scheduledDrain.cancel(false)) {
+                    // 已攒满一批，不再等待窗口结束
+                    scheduledDrain = null;
+                    executor.execute(this::drain);
+                }
+                return true;
+            }
+        }
+
+        log.warn("连接 {} 发送队列溢出，断开慢速连接", session.getId());
+        executor.execute(() -> closeSession(overflowCloseStatus));
+        return false;
+    }
+
+    /**
+     * 关闭队列并丢弃未发送消息
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+        if (scheduledDrain != null) {
+            scheduledDrain.cancel(false);
+            scheduledDrain = null;
+        }
+    }
+
+    /**
+     * 关闭队列并在写线程中关闭连接
+     */
+    public void closeAsync(CloseStatus status) {
+        close();
+        executor.execute(() -> closeSession(status));
+    }
+
+    public synchronized int getQueuedMessages() {
+        return queue.size();
+    }
+
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 以数组帧发出的合批次数
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public boolean isBatching() {
+        return batching != null;
+    }
+
+    public NotificationEncoding getEncoding() {
+        return cborTranscoder != null ? NotificationEncoding.CBOR : NotificationEncoding.JSON;
+    }
+
+    /**
+     * 写线程：串行取出并发送，直到队列为空
+     */
+    private void drain() {
+        while (true) {
+            Object entry;
+            int batchSize = 0;
+            synchronized (this) {
+                scheduledDrain = null;
+                entry = queue.pollFirst();
+                if (entry == null || closed) {
+                    draining = false;
+                    return;
+                }
+                queuedBytes -= length(entry);
+                if (batching != null && entry instanceof NotificationFrame first
+                        && queue.peekFirst() instanceof NotificationFrame) {
+                    batchSize = pollBatch(first);
+                }
+            }
+
+            try {
+                if (!session.isOpen()) {
+                    close();
+                    failureHandler.accept(session.getId());
+                    return;
+                }
+                if (batchSize > 0) {
+                    sendBatch(batchSize);
+                    continue;
+                }
+                if (entry instanceof NotificationFrame frame) {
+                    sendFrame(frame);
+                } else {
+                    session.sendMessage((WebSocketMessage<?>) entry);
+                    sentCount.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("连接 {} 发送消息失败: {}", session.getId(), e.getMessage());
+                meters.increment(PipelineMetrics.Outcome.FAILED);
+                close();
+                failureHandler.accept(session.getId());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 发送单条通知，CBOR编码或达到压缩阈值时发送共享的编码结果
+     */
+    private void sendFrame(NotificationFrame frame) throws IOException {
+        int wireLength;
+        if (cborTranscoder != null) {
+            byte[] cbor = frame.getCbor(cborTranscoder);
+            session.sendMessage(new BinaryMessage(cbor));
+            wireLength = cbor.length;
+        } else if (compressor != null && compressor.accepts(frame.getLength())) {
+            byte[] deflated = frame.getDeflated(compressor);
+            session.sendMessage(new BinaryMessage(deflated));
+            wireLength = deflated.length;
+        } else {
+            session.sendMessage(frame.getTextMessage());
+            wireLength = frame.getLength();
+        }
+        sentCount.incrementAndGet();
+        meters.recordBytes(frame.getLength(), wireLength);
+        if (frame.getEventType() != null) {
+            meters.recordWrite(frame.getEventType(), System.nanoTime() - frame.getCreatedNanos());
+        }
+    }
+
+    /**
+     * 从队首取出连续的通知组成一批（需持有锁）
+     *
+     * @return 本批通知数
+     */
+    private int pollBatch(NotificationFrame first) {
+        if (batchBuffer == null) {
+            batchBuffer = new NotificationFrame[batching.maxMessages()];
+        }
+        batchBuffer[0] = first;
+        int size = 1;
+        while (size < batchBuffer.length && queue.peekFirst() instanceof NotificationFrame frame) {
+            queue.pollFirst();
+            queuedBytes -= frame.getLength();
+            batchBuffer[size++] = frame;
+        }
+        return size;
+    }
+
+    /**
+     * 把一批通知拼接为一个数组帧，一次写入
+     */
+    private void sendBatch(int size) throws IOException {
+        if (cborTranscoder != null) {
+            sendCborBatch(size);
+        } else {
+            sendJsonBatch(size);
+        }
+        sentCount.addAndGet(size);
+        batchCount.incrementAndGet();
+        long now = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            NotificationFrame frame = batchBuffer[i];
+            batchBuffer[i] = null;
+            if (frame.getEventType() != null) {
+                meters.recordWrite(frame.getEventType(), now - frame.getCreatedNanos());
+            }
+        }
+    }
+
+    /**
+     * JSON数组帧；数组为单个连接独有，压缩不共享
+     */
+    private void sendJsonBatch(int size) throws IOException {
+        int length = size + 1;
+        for (int i = 0; i < size; i++) {
+            length += batchBuffer[i].getLength();
+        }
+        byte[] json = new byte[length];
+        json[0] = '[';
+        int offset = 1;
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json[offset++] = ',';
+            }
+            byte[] element = batchBuffer[i].getJson();
+            System.arraycopy(element, 0, json, offset, element.length);
+            offset += element.length;
+        }
+        json[offset] = ']';
+
+        if (compressor != null && compressor.accepts(json.length)) {
+            byte[] deflated = compressor.deflate(json);
+            session.sendMessage(new BinaryMessage(deflated));
+            meters.recordBytes(json.length, deflated.length);
+        } else {
+            session.sendMessage(new TextMessage(json));
+            meters.recordBytes(json.length, json.length);
+        }
+    }
+
+    /**
+     * CBOR数组帧：数组头后直接拼接各通知共享的CBOR编码
+     */
+    private void sendCborBatch(int size) throws IOException {
+        byte[] header = new byte[3];
+        int headerLength = CborTranscoder.writeArrayHeader(header, size);
+        int length = headerLength;
+        int originalLength = size + 1;
+        for (int i = 0; i < size; i++) {
+            length += batchBuffer[i].getCbor(cborTranscoder).length;
+            originalLength += batchBuffer[i].getLength();
+        }
+        byte[] cbor = new byte[length];
+        System.arraycopy(header, 0, cbor, 0, headerLength);
+        int offset = headerLength;
+        for (int i = 0; i < size; i++) {
+            byte[] element = batchBuffer[i].getCbor(cborTranscoder);
+            System.arraycopy(element, 0, cbor, offset, element.length);
+            offset += element.length;
+        }
+        session.sendMessage(new BinaryMessage(cbor));
+        meters.recordBytes(originalLength, cbor.length);
+    }
+
+    private static int length(Object entry) {
+        return entry instanceof NotificationFrame frame ? frame.getLength() : ((WebSocketMessage<?>) entry).getPayloadLength();
+    }
+
+    private void clear() {
+        queue.clear();
+        queuedBytes = 0;
+    }
+
+    private void closeSession(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.warn("关闭连接 {} 失败: {}", session.getId(), e.getMessage());
+        } finally {
+            failureHandler.accept(session.getId());
+        }
+    }
+
+    /**
+     * 合批参数
+     *
+     * @param scheduler    窗口计时
+     * @param windowMillis 第一条通知入队后等待的时长
+     * @param maxMessages  每批最多通知数，攒满后立即发送
+     */
+    public record Batching(ScheduledExecutorService scheduler, long windowMillis, int maxMessages) {
+    }
+}
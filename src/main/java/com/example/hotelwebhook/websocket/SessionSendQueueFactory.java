@@ -0,0 +1,201 @@
+package com.example.hotelwebhook.websocket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import com.example.hotelwebhook.metrics.PipelineMetrics;
+import com.example.hotelwebhook.utils.BoundedVirtualExecutor;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 出站发送队列工厂
+ * 持有队列限额、溢出策略配置以及共享的写线程池；
+ * 开启虚拟线程时每次排空队列使用一个虚拟线程，同时写入的连接数由信号量限制
+ */
+@Slf4j
+@Component
+public class SessionSendQueueFactory {
+
+    // Tomcat阻塞发送超时的会话属性名
+    private static final String TOMCAT_BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${websocket.outbound.max-messages:256}")
+    private int maxMessages;
+
+    @Value("${websocket.outbound.max-bytes:1048576}")
+    private long maxBytes;
+
+    @Value("${websocket.outbound.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${websocket.outbound.close-code:1013}")
+    private int closeCode;
+
+    @Value("${websocket.outbound.writer-threads:16}")
+    private int writerThreads;
+
+    @Value("${websocket.outbound.virtual-max-writers:1024}")
+    private int virtualMaxWriters;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${websocket.outbound.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    // 客服端可在握手时申请合批（batch=1），客人端始终逐条发送
+    @Value("${websocket.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${websocket.batch.window-ms:10}")
+    private long batchWindowMs;
+
+    @Value("${websocket.batch.max-messages:32}")
+    private int batchMaxMessages;
+
+    // 客户端可在握手时申请应用层压缩（compress=deflate）
+    @Value("${websocket.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${websocket.compression.min-bytes:1024}")
+    private int compressionMinBytes;
+
+    @Value("${websocket.compression.level:6}")
+    private int compressionLevel;
+
+    // 客户端可通过子协议 hotel.notify.cbor 选择CBOR编码
+    @Value("${websocket.encoding.cbor.enabled:true}")
+    private boolean cborEnabled;
+
+    private Executor writerExecutor;
+    private CloseStatus overflowCloseStatus;
+    private SessionSendQueue.Batching batching;
+    private PayloadCompressor compressor;
+    private CborTranscoder cborTranscoder;
+
+    @PostConstruct
+    public void init() {
+        if (virtualThreads) {
+            writerExecutor = new BoundedVirtualExecutor("ws-writer-", virtualMaxWriters);
+        } else {
+            writerExecutor = Executors.newFixedThreadPool(writerThreads,
+                    Thread.ofPlatform().name("ws-writer-", 0).daemon().factory());
+        }
+        overflowCloseStatus = new CloseStatus(closeCode, "slow consumer");
+        if (batchEnabled && batchWindowMs > 0 && batchMaxMessages > 1) {
+            ScheduledExecutorService batchScheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("ws-batch-timer").daemon().factory());
+            batching = new SessionSendQueue.Batching(batchScheduler, batchWindowMs, batchMaxMessages);
+        }
+        if (compressionEnabled) {
+            compressor = new PayloadCompressor(compressionMinBytes, compressionLevel);
+        }
+        if (cborEnabled) {
+            cborTranscoder = new CborTranscoder();
+        }
+        log.info("出站发送队列配置: 最大消息数={}, 最大字节数={}, 溢出策略={}, 写线程={}",
+                maxMessages, maxBytes, overflowPolicy,
+                virtualThreads ? "虚拟线程(最多" + virtualMaxWriters + "并发)" : writerThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writerExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        } else if (writerExecutor instanceof BoundedVirtualExecutor virtual) {
+            virtual.shutdown();
+        }
+        if (batching != null) {
+            batching.scheduler().shutdownNow();
+        }
+        if (compressor != null) {
+            compressor.close();
+        }
+    }
+
+    /**
+     * 写线程统计，用于对比平台线程与虚拟线程模式
+     */
+    public Map<String, Object> getWriterStats() {
+        Map<String, Object> stats = new HashMap<>();
+        if (writerExecutor instanceof BoundedVirtualExecutor virtual) {
+            stats.put("mode", "virtual");
+            stats.put("maxConcurrency", virtual.getMaxConcurrency());
+            stats.put("active", virtual.getActiveCount());
+            stats.put("waiting", virtual.getWaitingCount());
+        } else if (writerExecutor instanceof ThreadPoolExecutor pool) {
+            stats.put("mode", "platform");
+            stats.put("maxConcurrency", pool.getMaximumPoolSize());
+            stats.put("active", pool.getActiveCount());
+            stats.put("waiting", pool.getQueue().size());
+        }
+        return stats;
+    }
+
+    /**
+     * 为连接创建发送队列
+     *
+     * @param userType       接收者类型，用于指标标签
+     * @param failureHandler 发送失败或连接被断开时的回调（参数为会话ID）
+     */
+    public SessionSendQueue create(WebSocketSession session, String userType, Consumer<String> failureHandler) {
+        applySendTimeout(session);
+        // 合批只对客服端生效
+        Map<String, Object> attributes = session.getAttributes();
+        boolean batchRequested = "agent".equals(userType)
+                && Boolean.TRUE.equals(attributes.get(ConnectionHandshakeInterceptor.ATTR_BATCH));
+        boolean compressRequested = Boolean.TRUE.equals(attributes.get(ConnectionHandshakeInterceptor.ATTR_COMPRESS));
+        boolean cborSelected = NotificationEncoding.fromSubprotocol(session.getAcceptedProtocol()) == NotificationEncoding.CBOR;
+        return new SessionSendQueue(session, writerExecutor, maxMessages, maxBytes,
+                overflowPolicy, overflowCloseStatus, failureHandler, metrics.sendMeters(userType),
+                batchRequested ? batching : null, compressRequested ? compressor : null,
+                cborSelected ? cborTranscoder : null);
+    }
+
+    /**
+     * 握手时可协商的子协议，客户端未声明时不选择子协议，按JSON发送
+     */
+    public String[] getSupportedSubprotocols() {
+        return cborTranscoder != null
+                ? new String[] {NotificationEncoding.JSON.getSubprotocol(), NotificationEncoding.CBOR.getSubprotocol()}
+                : new String[] {NotificationEncoding.JSON.getSubprotocol()};
+    }
+
+    /**
+     * 应用层压缩是否可用，握手时据此决定是否仍协商permessage-deflate
+     */
+    public boolean isCompressionEnabled() {
+        return compressor != null;
+    }
+
+    /**
+     * 限制单次阻塞发送时长，避免写线程被卡死的客户端长期占用
+     */
+    private void applySendTimeout(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            jakarta.websocket.Session jakartaSession = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+            if (jakartaSession != null) {
+                jakartaSession.getUserProperties().put(TOMCAT_BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+            }
+        }
+    }
+}
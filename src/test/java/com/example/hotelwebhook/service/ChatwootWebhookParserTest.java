@@ -0,0 +1,198 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.hotelwebhook.config.AppConfig;
+import com.example.hotelwebhook.model.ChatwootEvent;
+import com.example.hotelwebhook.model.ChatwootEventType;
+import com.example.hotelwebhook.model.RecipientType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 流式解析器对真实webhook样例的字段提取
+ */
+class ChatwootWebhookParserTest {
+
+    private ObjectMapper objectMapper;
+    private ChatwootWebhookParser parser;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new AppConfig().objectMapper();
+        parser = new ChatwootWebhookParser();
+        ReflectionTestUtils.setField(parser, "objectMapper", objectMapper);
+        parser.init();
+    }
+
+    @Test
+    void messageCreatedReadsConversationObject() throws IOException {
+        ChatwootEvent event = parser.parse(fixture("message_created.json"));
+
+        assertNotNull(event);
+        assertEquals(ChatwootEventType.MESSAGE_CREATED, event.getEventType());
+        assertEquals("90417", event.getConversationId());
+        assertEquals("48213", event.getContactId());
+        assertEquals("17", event.getAssigneeId());
+        assertTrue(event.isMetaPresent());
+        assertEquals("3", event.getInboxId());
+        assertEquals("2", event.getTeamId());
+        // 客服发出的消息推送给客人
+        assertEquals("outgoing", event.getMessageType());
+        assertEquals(RecipientType.GUEST, event.getRecipientType());
+        assertEquals("48213", event.getRecipientId());
+        assertEquals("message_created:1204455", event.getDedupKey());
+    }
+
+    @Test
+    void incomingMessageIsRoutedToAssignee() throws IOException {
+        ChatwootEvent event = parser.parse(fixture("message_created_attachments.json"));
+
+        assertNotNull(event);
+        assertEquals(RecipientType.AGENT, event.getRecipientType());
+        assertEquals("17", event.getRecipientId());
+        assertEquals("message_created:1204456", event.getDedupKey());
+    }
+
+    @Test
+    void conversationEventReadsTopLevelPayload() throws IOException {
+        ChatwootEvent event = parser.parse(fixture("conversation_updated.json"));
+
+        assertNotNull(event);
+        assertEquals(ChatwootEventType.CONVERSATION_UPDATED, event.getEventType());
+        assertEquals("90417", event.getConversationId());
+        assertEquals("48213", event.getContactId());
+        assertEquals("17", event.getAssigneeId());
+        assertEquals("3", event.getInboxId());
+        assertEquals("2", event.getTeamId());
+        assertFalse(event.isResolved());
+        assertEquals("conversation_updated:90417:2026-10-14T02:31:08.552Z", event.getDedupKey());
+        assertNull(event.getMetadata());
+    }
+
+    @Test
+    void resolvedStatusMarksConversationResolved() throws IOException {
+        ObjectNode payload = (ObjectNode) objectMapper.readTree(fixture("conversation_updated.json"));
+        payload.put("status", "resolved");
+
+        ChatwootEvent event = parser.parse(objectMapper.writeValueAsBytes(payload));
+
+        assertNotNull(event);
+        assertTrue(event.isResolved());
+    }
+
+    @Test
+    void nonObjectMetaAndSenderAreIgnored() throws IOException {
+        ObjectNode payload = (ObjectNode) objectMapper.readTree(fixture("message_created.json"));
+        ObjectNode conversation = (ObjectNode) payload.get("conversation");
+        ((ObjectNode) conversation.get("meta")).put("sender", "48213-not-an-object");
+
+        ChatwootEvent event = parser.parse(objectMapper.writeValueAsBytes(payload));
+        assertNotNull(event);
+        // 标量 sender 视为ID本身，assignee 不受影响
+        assertEquals("48213-not-an-object", event.getContactId());
+        assertEquals("17", event.getAssigneeId());
+
+        conversation.putArray("meta").add(1).add(2);
+        event = parser.parse(objectMapper.writeValueAsBytes(payload));
+        assertNotNull(event);
+        assertFalse(event.isMetaPresent());
+        assertNull(event.getContactId());
+        assertNull(event.getAssigneeId());
+        assertNull(event.getTeamId());
+        // 之后的字段照常解析
+        assertEquals("3", event.getInboxId());
+    }
+
+    @Test
+    void missingAssigneeWithMetaMeansUnassigned() throws IOException {
+        ObjectNode payload = (ObjectNode) objectMapper.readTree(fixture("conversation_updated.json"));
+        ((ObjectNode) payload.get("meta")).putNull("assignee");
+
+        ChatwootEvent event = parser.parse(objectMapper.writeValueAsBytes(payload));
+
+        assertNotNull(event);
+        assertTrue(event.isMetaPresent());
+        assertNull(event.getAssigneeId());
+    }
+
+    @Test
+    void firstMessageIsSlicedFromRawBytes() throws IOException {
+        for (String name : new String[] {"message_created.json", "message_created_attachments.json"}) {
+            byte[] body = fixture(name);
+            ChatwootEvent event = parser.parse(body);
+            assertNotNull(event, name);
+
+            // 截取的是原始字节：多字节中文内容的边界必须准确，解析结果与原数组首元素一致
+            byte[] metadata = event.getMetadata();
+            assertNotNull(metadata, name);
+            assertEquals('{', metadata[0]);
+            assertEquals('}', metadata[metadata.length - 1]);
+            JsonNode expected = objectMapper.readTree(body).path("conversation").path("messages").get(0);
+            assertEquals(expected, objectMapper.readTree(metadata), name);
+            assertTrue(new String(metadata, StandardCharsets.UTF_8).contains(expected.path("content").asText()), name);
+        }
+    }
+
+    @Test
+    void firstMessageSlicingHandlesMultibyteBeforeArray() throws IOException {
+        String body = "{\"event\":\"message_created\",\"message_type\":\"incoming\",\"id\":7,"
+                + "\"content\":\"前置的多字节内容😀\",\"conversation\":{\"id\":5,"
+                + "\"meta\":{\"sender\":{\"id\":1},\"assignee\":{\"id\":2}},"
+                + "\"messages\":[{\"content\":\"入住😀\",\"id\":9},{\"content\":\"第二条\"}]}}";
+
+        ChatwootEvent event = parser.parse(body.getBytes(StandardCharsets.UTF_8));
+
+        assertNotNull(event);
+        assertArrayEquals("{\"content\":\"入住😀\",\"id\":9}".getBytes(StandardCharsets.UTF_8), event.getMetadata());
+    }
+
+    @Test
+    void nonObjectFirstMessageYieldsNoMetadata() throws IOException {
+        String body = "{\"event\":\"message_created\",\"message_type\":\"incoming\",\"id\":7,"
+                + "\"conversation\":{\"id\":5,\"messages\":[\"text\",{\"id\":9}]}}";
+
+        ChatwootEvent event = parser.parse(body.getBytes(StandardCharsets.UTF_8));
+
+        assertNotNull(event);
+        assertNull(event.getMetadata());
+    }
+
+    @Test
+    void unknownAndUnroutableEventsAreDropped() throws IOException {
+        ObjectNode payload = (ObjectNode) objectMapper.readTree(fixture("message_created.json"));
+        payload.put("event", "contact_updated");
+        assertNull(parser.parse(objectMapper.writeValueAsBytes(payload)));
+
+        payload.remove("event");
+        assertNull(parser.parse(objectMapper.writeValueAsBytes(payload)));
+
+        // 既不是incoming也不是outgoing的消息（如activity）不推送
+        payload.put("event", "message_created");
+        payload.put("message_type", "activity");
+        assertNull(parser.parse(objectMapper.writeValueAsBytes(payload)));
+
+        assertNull(parser.parse("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = ChatwootWebhookParserTest.class.getResourceAsStream("/fixtures/" + name)) {
+            assertNotNull(in, name);
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.hotelwebhook.config.AppConfig;
+import com.example.hotelwebhook.metrics.PipelineMetrics;
+import com.example.hotelwebhook.model.ChatwootEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 去重与处理结果：推送失败的事件允许Chatwoot重试
+ */
+class ChatwootWebhookProcessorTest {
+
+    private final StubNotificationService notificationService = new StubNotificationService();
+    private ChatwootWebhookProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        ChatwootWebhookParser parser = new ChatwootWebhookParser();
+        ReflectionTestUtils.setField(parser, "objectMapper", new AppConfig().objectMapper());
+        parser.init();
+
+        PipelineMetrics metrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+
+        WebhookDedupCache dedupCache = new WebhookDedupCache();
+        ReflectionTestUtils.setField(dedupCache, "enabled", true);
+        ReflectionTestUtils.setField(dedupCache, "windowSeconds", 600L);
+        ReflectionTestUtils.setField(dedupCache, "memoryBudgetBytes", 65536L);
+        ReflectionTestUtils.setField(dedupCache, "stripeCount", 4);
+        dedupCache.init();
+
+        processor = new ChatwootWebhookProcessor();
+        ReflectionTestUtils.setField(processor, "notificationService", notificationService);
+        ReflectionTestUtils.setField(processor, "webhookParser", parser);
+        ReflectionTestUtils.setField(processor, "metrics", metrics);
+        ReflectionTestUtils.setField(processor, "dedupCache", dedupCache);
+    }
+
+    @Test
+    void retriedEventIsDroppedAfterSuccess() throws IOException {
+        byte[] body = fixture("message_created.json");
+
+        assertTrue(processor.processWebhookEvent(body));
+        assertTrue(processor.processWebhookEvent(body));
+
+        assertEquals(1, notificationService.calls);
+    }
+
+    @Test
+    void failedEventIsProcessedAgainOnRetry() throws IOException {
+        byte[] body = fixture("message_created.json");
+        notificationService.succeed = false;
+
+        assertFalse(processor.processWebhookEvent(body));
+        notificationService.succeed = true;
+        assertTrue(processor.processWebhookEvent(body));
+        assertTrue(processor.processWebhookEvent(body));
+
+        assertEquals(2, notificationService.calls);
+    }
+
+    @Test
+    void malformedBodyIsNotRetried() {
+        assertTrue(processor.processWebhookEvent("{\"event\":".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0, notificationService.calls);
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = ChatwootWebhookProcessorTest.class.getResourceAsStream("/fixtures/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static class StubNotificationService extends NotificationService {
+
+        private boolean succeed = true;
+        private int calls;
+
+        @Override
+        public boolean processEvent(ChatwootEvent event) {
+            calls++;
+            return succeed;
+        }
+    }
+}
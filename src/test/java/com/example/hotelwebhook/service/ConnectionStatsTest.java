@@ -0,0 +1,114 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 连接统计的增量计数与连接时长百分位
+ */
+class ConnectionStatsTest {
+
+    private static final long DAY_SECONDS = 86_400;
+
+    @Test
+    void countersFollowAddAndRemove() {
+        ConnectionStats stats = new ConnectionStats();
+        long now = System.currentTimeMillis();
+
+        // 客服1：三台设备；客服2：一台；访客7：一台
+        stats.sessionAdded("agent", 1, now);
+        stats.sessionAdded("agent", 2, now);
+        stats.sessionAdded("agent", 3, now);
+        stats.sessionAdded("agent", 1, now);
+        stats.sessionAdded("guest", 1, now);
+
+        assertEquals(4, stats.getAgentSessions());
+        assertEquals(2, stats.getAgentUsers());
+        assertEquals(1, stats.getGuestSessions());
+        assertEquals(1, stats.getGuestUsers());
+        assertEquals(Map.of("1", 2L, "2", 0L, "3", 1L, "4", 0L, "5+", 0L), devices(stats));
+
+        // 客服1断开一台，访客7离线
+        stats.sessionRemoved("agent", 2, now);
+        stats.sessionRemoved("guest", 0, now);
+
+        assertEquals(3, stats.getAgentSessions());
+        assertEquals(2, stats.getAgentUsers());
+        assertEquals(0, stats.getGuestSessions());
+        assertEquals(0, stats.getGuestUsers());
+        assertEquals(Map.of("1", 1L, "2", 1L, "3", 0L, "4", 0L, "5+", 0L), devices(stats));
+        Map<String, Object> snapshot = stats.snapshot();
+        assertEquals(2L, snapshot.get("distinctUsers"));
+        assertEquals(0L, snapshot.get("onlineGuestUsers"));
+    }
+
+    @Test
+    void devicesAboveFiveShareTheLastBucket() {
+        ConnectionStats stats = new ConnectionStats();
+        long now = System.currentTimeMillis();
+        for (int devices = 1; devices <= 7; devices++) {
+            stats.sessionAdded("guest", devices, now);
+        }
+        assertEquals(1L, devices(stats).get("5+"));
+
+        stats.sessionRemoved("guest", 6, now);
+        stats.sessionRemoved("guest", 5, now);
+        assertEquals(1L, devices(stats).get("5+"));
+        stats.sessionRemoved("guest", 4, now);
+        assertEquals(0L, devices(stats).get("5+"));
+        assertEquals(1L, devices(stats).get("4"));
+    }
+
+    @Test
+    void agePercentilesWalkFromNewestSlot() {
+        ConnectionStats stats = new ConnectionStats();
+        long now = System.currentTimeMillis();
+        long tenMinutesAgo = now - 600_000;
+        long yesterday = now - (DAY_SECONDS + 3600) * 1000;
+        for (int i = 0; i < 5; i++) {
+            stats.sessionAdded("guest", 1, now);
+        }
+        for (int i = 0; i < 4; i++) {
+            stats.sessionAdded("guest", 1, tenMinutesAgo);
+        }
+        // 超出24小时窗口的连接只计入总数
+        stats.sessionAdded("guest", 1, yesterday);
+
+        Map<String, Long> ages = ages(stats);
+        assertBetween(0, 20, ages.get("p50"));
+        assertBetween(600, 620, ages.get("p90"));
+        assertEquals(DAY_SECONDS, ages.get("p99"));
+        assertEquals(DAY_SECONDS, ages.get("max"));
+
+        stats.sessionRemoved("guest", 0, yesterday);
+        ages = ages(stats);
+        assertBetween(600, 620, ages.get("p99"));
+        assertBetween(600, 620, ages.get("max"));
+
+        for (int i = 0; i < 5; i++) {
+            stats.sessionRemoved("guest", 0, now);
+        }
+        for (int i = 0; i < 4; i++) {
+            stats.sessionRemoved("guest", 0, tenMinutesAgo);
+        }
+        assertEquals(Map.of("p50", 0L, "p90", 0L, "p99", 0L, "max", 0L), ages(stats));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " 不在 [" + min + ", " + max + "]");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> devices(ConnectionStats stats) {
+        return (Map<String, Long>) stats.snapshot().get("devicesPerUser");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> ages(ConnectionStats stats) {
+        return (Map<String, Long>) stats.snapshot().get("connectionAgeSeconds");
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.hotelwebhook.model.ChatwootEvent;
+import com.example.hotelwebhook.model.ChatwootEventType;
+
+/**
+ * 会话更新在窗口内合并、提前发出与停止时的发出
+ */
+class ConversationUpdateCoalescerTest {
+
+    private final BlockingQueue<ChatwootEvent> emitted = new LinkedBlockingQueue<>();
+    private ConversationUpdateCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() {
+        if (coalescer != null) {
+            coalescer.stop();
+        }
+    }
+
+    @Test
+    void updatesWithinWindowCollapseToLatest() throws InterruptedException {
+        coalescer = new ConversationUpdateCoalescer(200, emitted::add);
+
+        coalescer.submit(update("90417", "t1"));
+        coalescer.submit(update("90417", "t2"));
+        coalescer.submit(update("90418", "t1"));
+        coalescer.submit(update("90417", "t3"));
+        assertEquals(2, coalescer.getPendingCount());
+
+        List<ChatwootEvent> events = take(2);
+        assertEquals("t3", latestOf(events, "90417").getDedupKey());
+        assertEquals("t1", latestOf(events, "90418").getDedupKey());
+        assertEquals(4, coalescer.getReceivedCount());
+        assertEquals(2, coalescer.getEmittedCount());
+        assertEquals(0.5, coalescer.getCollapseRatio(), 1e-9);
+
+        // 窗口结束后的更新开始新的窗口
+        coalescer.submit(update("90417", "t4"));
+        assertEquals("t4", take(1).get(0).getDedupKey());
+        assertTrue(emitted.isEmpty());
+    }
+
+    @Test
+    void flushEmitsPendingBeforeResolve() throws InterruptedException {
+        coalescer = new ConversationUpdateCoalescer(300, emitted::add);
+
+        coalescer.submit(update("90417", "t1"));
+        coalescer.submit(update("90417", "t2"));
+        // 解决事件到达时在调用线程同步发出待合并的更新，返回后才发出解决通知
+        coalescer.flush("90417");
+        assertEquals(1, emitted.size());
+        assertEquals("t2", emitted.poll().getDedupKey());
+        assertEquals(0, coalescer.getPendingCount());
+
+        // 已提前发出的窗口到期时不再重复发出；之后的更新等待自己的窗口
+        coalescer.submit(update("90417", "t3"));
+        List<ChatwootEvent> events = take(1);
+        assertEquals("t3", events.get(0).getDedupKey());
+        assertNull(emitted.poll(400, TimeUnit.MILLISECONDS));
+        assertEquals(2, coalescer.getEmittedCount());
+
+        // 没有待发送的更新时flush不发出
+        coalescer.flush("90417");
+        assertTrue(emitted.isEmpty());
+    }
+
+    @Test
+    void stopDrainsPendingUpdates() {
+        coalescer = new ConversationUpdateCoalescer(60_000, emitted::add);
+
+        coalescer.submit(update("90417", "t1"));
+        coalescer.submit(update("90417", "t2"));
+        coalescer.submit(update("90418", "t1"));
+        coalescer.stop();
+
+        assertEquals(2, emitted.size());
+        assertEquals(0, coalescer.getPendingCount());
+        List<ChatwootEvent> events = new ArrayList<>(emitted);
+        assertEquals("t2", latestOf(events, "90417").getDedupKey());
+
+        // 停止后提交的更新直接发出
+        emitted.clear();
+        coalescer.submit(update("90419", "t1"));
+        assertEquals(1, emitted.size());
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    void handlerFailureDoesNotStopLaterWindows() throws InterruptedException {
+        coalescer = new ConversationUpdateCoalescer(50, event -> {
+            if ("fail".equals(event.getDedupKey())) {
+                throw new IllegalStateException("boom");
+            }
+            emitted.add(event);
+        });
+
+        coalescer.submit(update("90417", "fail"));
+        Thread.sleep(150);
+        coalescer.submit(update("90417", "ok"));
+
+        assertEquals("ok", take(1).get(0).getDedupKey());
+    }
+
+    private List<ChatwootEvent> take(int count) throws InterruptedException {
+        List<ChatwootEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ChatwootEvent event = emitted.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "等待第" + (i + 1) + "条合并结果超时");
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static ChatwootEvent latestOf(List<ChatwootEvent> events, String conversationId) {
+        return events.stream().filter(e -> conversationId.equals(e.getConversationId())).reduce((a, b) -> b).orElseThrow();
+    }
+
+    /**
+     * 用去重键标记同一会话的不同更新
+     */
+    private static ChatwootEvent update(String conversationId, String marker) {
+        return ChatwootEvent.builder()
+                .eventType(ChatwootEventType.CONVERSATION_UPDATED)
+                .conversationId(conversationId)
+                .dedupKey(marker)
+                .build();
+    }
+}
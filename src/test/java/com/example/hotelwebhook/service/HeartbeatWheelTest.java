@@ -0,0 +1,132 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 心跳时间轮的过期时机、心跳顺延与取消
+ */
+class HeartbeatWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    private final BlockingQueue<String> expired = new LinkedBlockingQueue<>();
+    private final Map<String, Long> expiredAt = new ConcurrentHashMap<>();
+    private HeartbeatWheel wheel;
+
+    @AfterEach
+    void tearDown() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void expiresAtSlotBoundaryNotBefore() throws InterruptedException {
+        wheel = wheel(64);
+        // 超时恰好为整数个格子
+        long timeoutMillis = 10 * TICK_MILLIS;
+        long scheduledAt = System.nanoTime();
+        wheel.schedule("s1", TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+
+        assertEquals("s1", expired.poll(5, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(expiredAt.get("s1") - scheduledAt);
+        assertTrue(elapsedMillis >= timeoutMillis, "过早过期: " + elapsedMillis + "ms");
+        // 精度为一格，留出调度抖动
+        assertTrue(elapsedMillis < timeoutMillis + 2 * TICK_MILLIS + 200, "过期过晚: " + elapsedMillis + "ms");
+        assertEquals(1, wheel.getExpiredCount());
+        assertEquals(0, wheel.getScheduledCount());
+    }
+
+    @Test
+    void timeoutLongerThanOneRevolutionIsNotEarly() throws InterruptedException {
+        // 4格的轮子转一圈40ms，超时跨越多圈
+        wheel = wheel(4);
+        long timeoutMillis = 25 * TICK_MILLIS;
+        long scheduledAt = System.nanoTime();
+        wheel.schedule("s1", TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+
+        assertEquals("s1", expired.poll(5, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(expiredAt.get("s1") - scheduledAt);
+        assertTrue(elapsedMillis >= timeoutMillis, "过早过期: " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void heartbeatRearmsTimer() throws InterruptedException {
+        wheel = wheel(16);
+        long timeoutMillis = 8 * TICK_MILLIS;
+        HeartbeatWheel.Timer timer = wheel.schedule("s1", TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+
+        // 持续收到pong，总时长远超一个超时周期
+        long lastTouch = System.nanoTime();
+        long until = lastTouch + TimeUnit.MILLISECONDS.toNanos(5 * timeoutMillis);
+        while (System.nanoTime() < until) {
+            Thread.sleep(timeoutMillis / 4);
+            lastTouch = System.nanoTime();
+            timer.touch(lastTouch);
+            assertNull(expired.peek(), "有心跳的连接被判定过期");
+        }
+        assertEquals(lastTouch, timer.getLastTouchNanos());
+
+        // 心跳停止后从最后一次心跳起算过期
+        assertEquals("s1", expired.poll(5, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(expiredAt.get("s1") - lastTouch);
+        assertTrue(elapsedMillis >= timeoutMillis, "过早过期: " + elapsedMillis + "ms");
+        assertEquals(1, wheel.getExpiredCount());
+    }
+
+    @Test
+    void cancelledTimersAreRemovedWithoutExpiry() throws InterruptedException {
+        wheel = wheel(16);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(5 * TICK_MILLIS);
+
+        // 挂入前取消
+        wheel.schedule("before-link", timeoutNanos).cancel();
+        // 挂入后、过期前取消
+        HeartbeatWheel.Timer linked = wheel.schedule("after-link", timeoutNanos);
+        wheel.schedule("live", timeoutNanos);
+        Thread.sleep(2 * TICK_MILLIS);
+        linked.cancel();
+
+        assertEquals("live", expired.poll(5, TimeUnit.SECONDS));
+        assertNull(expired.poll(20 * TICK_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, wheel.getExpiredCount());
+        assertEquals(0, wheel.getScheduledCount());
+    }
+
+    @Test
+    void handlerFailureDoesNotStopWheel() throws InterruptedException {
+        wheel = new HeartbeatWheel(TICK_MILLIS, 16, sessionId -> {
+            if ("bad".equals(sessionId)) {
+                throw new IllegalStateException("boom");
+            }
+            expired.add(sessionId);
+        });
+        wheel.start();
+        wheel.schedule("bad", TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS));
+        wheel.schedule("good", TimeUnit.MILLISECONDS.toNanos(5 * TICK_MILLIS));
+
+        assertNotNull(expired.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, wheel.getExpiredCount());
+    }
+
+    private HeartbeatWheel wheel(int size) {
+        HeartbeatWheel wheel = new HeartbeatWheel(TICK_MILLIS, size, sessionId -> {
+            expiredAt.put(sessionId, System.nanoTime());
+            expired.add(sessionId);
+        });
+        wheel.start();
+        return wheel;
+    }
+}
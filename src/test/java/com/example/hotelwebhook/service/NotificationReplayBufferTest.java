@@ -0,0 +1,187 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.hotelwebhook.websocket.NotificationFrame;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 补发缓冲区的按接收者序号、缺口判断与淘汰后的续号
+ */
+class NotificationReplayBufferTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<NotificationReplayBuffer> buffers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        buffers.forEach(NotificationReplayBuffer::shutdown);
+    }
+
+    @Test
+    void seqsAreConsecutivePerRecipientAndWrittenIntoPayload() throws Exception {
+        NotificationReplayBuffer buffer = buffer(100, 300);
+        NotificationFrame shared = frame("message_created");
+
+        List<NotificationFrame> agent = new ArrayList<>();
+        List<NotificationFrame> guest = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            buffer.append("agent:1", shared, agent::add);
+        }
+        buffer.append("guest:7", shared, guest::add);
+
+        long base = agent.get(0).getSeq();
+        assertEquals(List.of(base, base + 1, base + 2), agent.stream().map(NotificationFrame::getSeq).toList());
+        // 各接收者的序号互不影响
+        assertEquals(1, guest.size());
+        assertTrue(guest.get(0).getSeq() > 1);
+        for (NotificationFrame frame : agent) {
+            assertEquals(frame.getSeq(), objectMapper.readTree(frame.getJson()).path("seq").asLong());
+            assertEquals(shared.getCreatedAt(), frame.getCreatedAt());
+        }
+        // 共享帧本身不变
+        assertEquals(NotificationReplayBuffer.PENDING_SEQ, objectMapper.readTree(shared.getJson()).path("seq").asLong());
+    }
+
+    @Test
+    void unsequencedFramesAreDeliveredAsIs() {
+        NotificationReplayBuffer buffer = buffer(100, 300);
+        NotificationFrame frame = new NotificationFrame(0, "{\"type\":\"pong\"}".getBytes(StandardCharsets.UTF_8));
+        List<NotificationFrame> delivered = new ArrayList<>();
+
+        buffer.append("agent:1", frame, delivered::add);
+
+        assertSame(frame, delivered.get(0));
+        assertEquals(0, buffer.getRecipientCount());
+    }
+
+    @Test
+    void concurrentAppendsDeliverInSeqOrder() throws Exception {
+        NotificationReplayBuffer buffer = buffer(1000, 300);
+        int threads = 8;
+        int perThread = 500;
+        // deliver在接收者锁内调用，按调用顺序记录即为入队顺序
+        List<Long> delivered = new ArrayList<>();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    NotificationFrame shared = frame("conversation_updated");
+                    for (int i = 0; i < perThread; i++) {
+                        buffer.append("agent:1", shared, stamped -> delivered.add(stamped.getSeq()));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * perThread, delivered.size());
+        for (int i = 1; i < delivered.size(); i++) {
+            assertEquals(delivered.get(i - 1) + 1, delivered.get(i));
+        }
+        // 缓冲区保留最近1000条，上一次位置之后的全部可补发
+        long last = delivered.get(delivered.size() - 1);
+        NotificationReplayBuffer.Replay replay = resume(buffer, "agent:1", last - 10);
+        assertFalse(replay.gap());
+        assertEquals(List.of(last - 9, last - 8, last - 7, last - 6, last - 5, last - 4, last - 3, last - 2, last - 1, last),
+                seqs(replay));
+    }
+
+    @Test
+    void gapWhenLastSeqIsTrimmedOrUnknown() {
+        NotificationReplayBuffer buffer = buffer(3, 300);
+        List<Long> seqs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            buffer.append("agent:1", frame("message_created"), stamped -> seqs.add(stamped.getSeq()));
+        }
+        long first = seqs.get(0);
+
+        // 保留最后3条，丢弃到第2条：lastSeq为第2条时正好接上
+        NotificationReplayBuffer.Replay exact = resume(buffer, "agent:1", first + 1);
+        assertFalse(exact.gap());
+        assertEquals(List.of(first + 2, first + 3, first + 4), seqs(exact));
+
+        NotificationReplayBuffer.Replay trimmed = resume(buffer, "agent:1", first);
+        assertTrue(trimmed.gap());
+        assertEquals(List.of(first + 2, first + 3, first + 4), seqs(trimmed));
+
+        // 已是最新
+        NotificationReplayBuffer.Replay upToDate = resume(buffer, "agent:1", first + 4);
+        assertFalse(upToDate.gap());
+        assertTrue(upToDate.frames().isEmpty());
+
+        // 不是本节点分配的序号（其他节点、重启前）
+        assertTrue(resume(buffer, "agent:1", first + 100).gap());
+        assertTrue(resume(buffer, "agent:2", first + 1).gap());
+        assertTrue(resume(buffer, "agent:1", null).frames().isEmpty());
+    }
+
+    @Test
+    void evictedRecipientContinuesFromDroppedSeq() throws InterruptedException {
+        NotificationReplayBuffer buffer = buffer(100, 0);
+        List<Long> seqs = new ArrayList<>();
+        buffer.append("guest:7", frame("message_created"), stamped -> seqs.add(stamped.getSeq()));
+        buffer.append("guest:7", frame("message_created"), stamped -> seqs.add(stamped.getSeq()));
+        Thread.sleep(5);
+
+        // 保留时长为0，过期后整个接收者被淘汰
+        assertEquals(1, buffer.evictExpired());
+        assertEquals(0, buffer.getRecipientCount());
+
+        // 淘汰前已收到全部通知的客户端没有缺口，之后的序号接着分配
+        NotificationReplayBuffer.Replay replay = resume(buffer, "guest:7", seqs.get(1));
+        assertFalse(replay.gap());
+        assertTrue(resume(buffer, "guest:7", seqs.get(0)).gap());
+        buffer.append("guest:7", frame("message_created"), stamped -> seqs.add(stamped.getSeq()));
+        assertEquals(seqs.get(1) + 1, seqs.get(2));
+    }
+
+    private static NotificationReplayBuffer.Replay resume(NotificationReplayBuffer buffer, String key, Long lastSeq) {
+        NotificationReplayBuffer.Replay[] result = new NotificationReplayBuffer.Replay[1];
+        buffer.resume(key, lastSeq, replay -> result[0] = replay);
+        return result[0];
+    }
+
+    private static List<Long> seqs(NotificationReplayBuffer.Replay replay) {
+        return replay.frames().stream().map(NotificationFrame::getSeq).toList();
+    }
+
+    private static NotificationFrame frame(String type) {
+        String json = "{\"type\":\"" + type + "\",\"seq\":" + NotificationReplayBuffer.PENDING_SEQ
+                + ",\"conversationId\":\"90417\",\"data\":\"您好\"}";
+        return new NotificationFrame(NotificationReplayBuffer.PENDING_SEQ, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private NotificationReplayBuffer buffer(int maxMessages, long maxAgeSeconds) {
+        NotificationReplayBuffer buffer = new NotificationReplayBuffer();
+        ReflectionTestUtils.setField(buffer, "maxMessages", maxMessages);
+        ReflectionTestUtils.setField(buffer, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(buffer, "maxAgeSeconds", maxAgeSeconds);
+        ReflectionTestUtils.setField(buffer, "memoryBudgetBytes", 1L << 26);
+        buffers.add(buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.hotelwebhook.model.UserSession;
+
+/**
+ * 10万连接下并发注册、移除、推送遍历的一致性
+ */
+class SessionRegistryStressTest {
+
+    private static final int USERS = 50_000;
+    private static final int DEVICES = 2;
+    private static final int WRITERS = 8;
+
+    @Test
+    void concurrentRegisterRemoveAndIterate() throws Exception {
+        SessionRegistry registry = new SessionRegistry(16, 300_000, 86_400_000);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong iterated = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        // 每个写线程负责一段用户：注册两台设备，移除第二台，再注册第三台并登记延迟移除
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int from = w * USERS / WRITERS;
+            int to = (w + 1) * USERS / WRITERS;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int u = from; u < to; u++) {
+                    for (int d = 0; d < DEVICES; d++) {
+                        registry.add(session(u, d));
+                    }
+                }
+                for (int u = from; u < to; u++) {
+                    registry.remove(sessionId(u, 1));
+                    registry.add(session(u, 2));
+                    registry.deferRemoval(sessionId(u, 2));
+                }
+                return null;
+            }));
+        }
+
+        // 模拟推送：遍历期间数组不会被修改
+        Runnable reader = () -> {
+            while (writing.get()) {
+                registry.forEachUser(userType(0), (userId, sessions) -> {
+                    for (UserSession session : sessions) {
+                        assertEquals(userId, session.getUserId());
+                        iterated.incrementAndGet();
+                    }
+                });
+                for (int u = 0; u < USERS; u += 97) {
+                    for (UserSession session : registry.getSessions(userType(u), "user-" + u)) {
+                        assertEquals("user-" + u, session.getUserId());
+                    }
+                }
+            }
+        };
+        Future<?> reader1 = executor.submit(reader);
+        Future<?> reader2 = executor.submit(reader);
+
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        reader1.get();
+        reader2.get();
+
+        AtomicLong removed = new AtomicLong();
+        registry.drainDeferredRemovals(session -> removed.incrementAndGet());
+        executor.shutdown();
+
+        assertEquals(USERS, removed.get());
+        assertEquals(USERS, registry.size());
+        for (int u = 0; u < USERS; u++) {
+            UserSession[] sessions = registry.getSessions(userType(u), "user-" + u);
+            assertEquals(1, sessions.length);
+            assertEquals(sessionId(u, 0), sessions[0].getSessionId());
+        }
+        assertEquals(0, registry.getSessions("guest", "missing").length);
+        assertTrue(iterated.get() > 0);
+    }
+
+    @Test
+    void removeRacingAddLeavesNoOrphans() throws Exception {
+        SessionRegistry registry = new SessionRegistry(16, 300_000, 86_400_000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        int sessions = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+
+        // 移除线程在注册的同时不断重试，注册一经可见就被移除
+        Future<?> adder = executor.submit(() -> {
+            start.await();
+            for (int u = 0; u < sessions; u++) {
+                registry.add(session(u, 0));
+            }
+            return null;
+        });
+        Future<?> remover = executor.submit(() -> {
+            start.await();
+            for (int u = 0; u < sessions; u++) {
+                while (registry.remove(sessionId(u, 0)) == null) {
+                    Thread.onSpinWait();
+                }
+            }
+            return null;
+        });
+        start.countDown();
+        adder.get();
+        remover.get();
+        executor.shutdown();
+
+        assertEquals(0, registry.size());
+        for (int u = 0; u < sessions; u++) {
+            assertEquals(0, registry.getSessions(userType(u), "user-" + u).length);
+        }
+        assertEquals(0, registry.getStats().getAgentSessions());
+        assertEquals(0, registry.getStats().getGuestSessions());
+        assertEquals(0, registry.getStats().getAgentUsers());
+        assertEquals(0, registry.getStats().getGuestUsers());
+    }
+
+    private static UserSession session(int user, int device) {
+        return UserSession.builder()
+                .userId("user-" + user)
+                .userType(userType(user))
+                .sessionId(sessionId(user, device))
+                .build();
+    }
+
+    private static String sessionId(int user, int device) {
+        return "session-" + user + "-" + device;
+    }
+
+    private static String userType(int user) {
+        return user % 4 == 0 ? "agent" : "guest";
+    }
+}
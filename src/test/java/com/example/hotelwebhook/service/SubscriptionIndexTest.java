@@ -0,0 +1,166 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 订阅索引的声明替换、未声明客服接收全部事件，以及并发更新后两个方向的索引一致
+ */
+class SubscriptionIndexTest {
+
+    private static final int INBOXES = 5;
+    private static final int TEAMS = 3;
+
+    @Test
+    void declaredTopicsRouteEachAgentOnce() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.declare("a1", topics("inbox:3", "team:2", "inbox:3"));
+        index.declare("a2", topics("inbox:5"));
+        index.declare("a3", topics("team:2"));
+
+        // 同时订阅收件箱和团队的a1只出现一次
+        assertEquals(List.of("a1", "a3"), subscribers(index, "3", "2", false));
+        assertEquals(List.of("a2", "a1", "a3"), subscribers(index, "5", "2", false));
+        assertEquals(List.of(), subscribers(index, "9", null, false));
+        assertArrayEquals(topics("inbox:3", "team:2"), index.getTopics("a1"));
+
+        // 重新声明整体替换，空主题被清理
+        index.declare("a1", topics("inbox:5"));
+        assertEquals(List.of(), subscribers(index, "3", null, false));
+        assertEquals(List.of("a2", "a1"), subscribers(index, "5", null, false));
+        assertEquals(2, index.getTopicCount());
+    }
+
+    @Test
+    void undeclaredAgentsReceiveEverythingWhenIncluded() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.declare("a1", topics("inbox:3"));
+        index.ensureIndexed("a2");
+        // 已声明的客服不会被改回未声明
+        index.ensureIndexed("a1");
+
+        assertArrayEquals(topics(SubscriptionIndex.UNDECLARED), index.getTopics("a2"));
+        assertEquals(List.of("a1", "a2"), subscribers(index, "3", null, true));
+        assertEquals(List.of("a2"), subscribers(index, "7", "4", true));
+        assertEquals(List.of("a1"), subscribers(index, "3", null, false));
+
+        // 声明为不订阅任何主题后不再接收全部事件
+        index.declare("a2", topics());
+        assertEquals(List.of(), subscribers(index, "7", null, true));
+        assertEquals(2, index.getAgentCount());
+    }
+
+    @Test
+    void removeKeepsAgentThatIsStillOnline() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.declare("a1", topics("inbox:3", "team:2"));
+
+        index.remove("a1", () -> true);
+        assertEquals(List.of("a1"), subscribers(index, "3", null, false));
+
+        index.remove("a1");
+        assertEquals(0, index.getAgentCount());
+        assertEquals(0, index.getTopicCount());
+        assertEquals(0, index.getTopics("a1").length);
+    }
+
+    @Test
+    void concurrentUpdatesKeepBothDirectionsConsistent() throws Exception {
+        SubscriptionIndex index = new SubscriptionIndex();
+        int threads = 8;
+        int agents = 6;
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        String agentId = "a" + random.nextInt(agents);
+                        switch (random.nextInt(4)) {
+                            case 0 -> index.ensureIndexed(agentId);
+                            case 1 -> index.remove(agentId);
+                            default -> index.declare(agentId, randomTopics(random));
+                        }
+                        // 推送遍历与更新并发进行
+                        subscribers(index, String.valueOf(random.nextInt(INBOXES)),
+                                String.valueOf(random.nextInt(TEAMS)), true);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 主题 → 客服 与 客服 → 主题 两个方向一一对应
+        int links = 0;
+        for (int i = 0; i < INBOXES; i++) {
+            links += assertSubscribers(index, SubscriptionIndex.inboxTopic(String.valueOf(i)),
+                    subscribers(index, String.valueOf(i), null, false));
+        }
+        for (int i = 0; i < TEAMS; i++) {
+            links += assertSubscribers(index, SubscriptionIndex.teamTopic(String.valueOf(i)),
+                    subscribers(index, null, String.valueOf(i), false));
+        }
+        links += assertSubscribers(index, SubscriptionIndex.UNDECLARED, subscribers(index, null, null, true));
+
+        int memberships = 0;
+        for (int a = 0; a < agents; a++) {
+            memberships += index.getTopics("a" + a).length;
+        }
+        assertEquals(memberships, links);
+    }
+
+    private static int assertSubscribers(SubscriptionIndex index, String topic, List<String> agentIds) {
+        assertEquals(agentIds.size(), new HashSet<>(agentIds).size(), topic + " 重复: " + agentIds);
+        for (String agentId : agentIds) {
+            assertTrue(Set.of(index.getTopics(agentId)).contains(topic), agentId + " 未订阅 " + topic);
+        }
+        return agentIds.size();
+    }
+
+    private static String[] randomTopics(ThreadLocalRandom random) {
+        List<String> topics = new ArrayList<>();
+        for (int i = 0; i < INBOXES; i++) {
+            if (random.nextBoolean()) {
+                topics.add(SubscriptionIndex.inboxTopic(String.valueOf(i)));
+            }
+        }
+        for (int i = 0; i < TEAMS; i++) {
+            if (random.nextBoolean()) {
+                topics.add(SubscriptionIndex.teamTopic(String.valueOf(i)));
+            }
+        }
+        return topics.toArray(String[]::new);
+    }
+
+    private static List<String> subscribers(SubscriptionIndex index, String inboxId, String teamId,
+            boolean includeUndeclared) {
+        List<String> agentIds = new ArrayList<>();
+        index.forEachSubscriber(inboxId, teamId, includeUndeclared, agentIds::add);
+        return agentIds;
+    }
+
+    private static String[] topics(String... topics) {
+        return topics;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 去重缓存的容量上限、窗口过期与并发判重
+ */
+class WebhookDedupCacheTest {
+
+    @Test
+    void duplicatesWithinWindowAreRejected() {
+        WebhookDedupCache cache = cache(true, 600, 4096, 4);
+
+        assertTrue(cache.firstSeen("message_created:1"));
+        assertFalse(cache.firstSeen("message_created:1"));
+        assertTrue(cache.firstSeen("message_created:2"));
+        assertEquals(3, cache.getLookupCount());
+        assertEquals(1, cache.getHitCount());
+
+        // 处理失败后移除，重试可再次处理
+        cache.forget("message_created:1");
+        assertTrue(cache.firstSeen("message_created:1"));
+    }
+
+    @Test
+    void nullKeysAndDisabledCacheNeverDeduplicate() {
+        WebhookDedupCache enabled = cache(true, 600, 4096, 4);
+        assertTrue(enabled.firstSeen(null));
+        assertTrue(enabled.firstSeen(null));
+        assertEquals(0, enabled.getLookupCount());
+
+        WebhookDedupCache disabled = cache(false, 600, 4096, 4);
+        assertTrue(disabled.firstSeen("message_created:1"));
+        assertTrue(disabled.firstSeen("message_created:1"));
+    }
+
+    @Test
+    void capacityIsBoundedByMemoryBudget() {
+        // 1 KB 预算：每条16字节，共64条
+        WebhookDedupCache cache = cache(true, 600, 1024, 1);
+        assertEquals(64, cache.getCapacity());
+
+        int keys = 10_000;
+        for (int i = 0; i < keys; i++) {
+            assertTrue(cache.firstSeen("message_created:" + i));
+        }
+        assertEquals(64, cache.getCapacity());
+
+        // 最新的记录仍在，最早的记录已被替换
+        assertFalse(cache.firstSeen("message_created:" + (keys - 1)));
+        int forgotten = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.firstSeen("message_created:" + i)) {
+                forgotten++;
+            }
+        }
+        assertTrue(forgotten > 900, "forgotten=" + forgotten);
+    }
+
+    @Test
+    void capacityRoundsToStripesAndWays() {
+        WebhookDedupCache cache = cache(true, 600, 4L * 1024 * 1024, 16);
+        assertEquals(4L * 1024 * 1024 / 16, cache.getCapacity());
+
+        // 预算小于每段每路一条时保留最小容量
+        WebhookDedupCache tiny = cache(true, 600, 0, 16);
+        assertEquals(16 * 4, tiny.getCapacity());
+    }
+
+    @Test
+    void entriesExpireAfterWindow() throws InterruptedException {
+        WebhookDedupCache cache = cache(true, 1, 4096, 4);
+
+        assertTrue(cache.firstSeen("conversation_updated:90417:t1"));
+        assertFalse(cache.firstSeen("conversation_updated:90417:t1"));
+
+        Thread.sleep(1100);
+
+        assertTrue(cache.firstSeen("conversation_updated:90417:t1"));
+        // 重新记录后窗口重新开始
+        assertFalse(cache.firstSeen("conversation_updated:90417:t1"));
+    }
+
+    @Test
+    void concurrentFirstSeenOnSameKeyAdmitsOne() throws Exception {
+        WebhookDedupCache cache = cache(true, 600, 1 << 20, 16);
+        int threads = 8;
+        int keys = 500;
+        AtomicIntegerArray admitted = new AtomicIntegerArray(keys);
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int k = 0; k < keys; k++) {
+                        // 所有线程同时判定同一个键
+                        barrier.await();
+                        if (cache.firstSeen("message_created:" + k)) {
+                            admitted.incrementAndGet(k);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int k = 0; k < keys; k++) {
+            assertEquals(1, admitted.get(k), "key " + k);
+        }
+        assertEquals((long) threads * keys, cache.getLookupCount());
+        assertEquals((long) (threads - 1) * keys, cache.getHitCount());
+    }
+
+    private static WebhookDedupCache cache(boolean enabled, long windowSeconds, long memoryBudgetBytes, int stripes) {
+        WebhookDedupCache cache = new WebhookDedupCache();
+        ReflectionTestUtils.setField(cache, "enabled", enabled);
+        ReflectionTestUtils.setField(cache, "windowSeconds", windowSeconds);
+        ReflectionTestUtils.setField(cache, "memoryBudgetBytes", memoryBudgetBytes);
+        ReflectionTestUtils.setField(cache, "stripeCount", stripes);
+        cache.init();
+        return cache;
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.hotelwebhook.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 异步接收队列的溢出落盘、回放、回放位置续传与启动恢复
+ */
+class WebhookIngestQueueTest {
+
+    @TempDir
+    Path spillDir;
+
+    private final List<WebhookIngestQueue> started = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        started.forEach(WebhookIngestQueue::stop);
+    }
+
+    @Test
+    void syncModeStartsNothing() throws IOException {
+        Path dir = spillDir.resolve("unused");
+        WebhookIngestQueue queue = new WebhookIngestQueue();
+        ReflectionTestUtils.setField(queue, "webhookProcessor", new RecordingProcessor(new CountDownLatch(0)));
+        ReflectionTestUtils.setField(queue, "ingestMode", "sync");
+        ReflectionTestUtils.setField(queue, "spillDir", dir.toString());
+        queue.start();
+
+        assertFalse(queue.isEnabled());
+        assertFalse(Files.exists(dir));
+        assertEquals("sync", queue.getStats().get("mode"));
+        assertEquals(0, queue.getQueueDepth());
+        queue.stop();
+    }
+
+    @Test
+    void fullQueueSpillsToDiskAndReplaysInOrder() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingProcessor processor = new RecordingProcessor(gate);
+        WebhookIngestQueue queue = start(processor, 2, false);
+
+        // 唯一的工作线程取走e0后阻塞，e1、e2占满内存队列
+        assertTrue(queue.submit(body("e0")));
+        assertEquals("e0", processor.entered.poll(5, TimeUnit.SECONDS));
+        assertTrue(queue.submit(body("e1")));
+        assertTrue(queue.submit(body("e2")));
+        // 之后的事件写入段文件
+        assertTrue(queue.submit(body("e3")));
+        assertTrue(queue.submit(body("e4")));
+        assertTrue(queue.submit(body("e5")));
+
+        assertEquals(3, queue.getSpilledPending());
+        assertEquals(3L, queue.getStats().get("spilledTotal"));
+        assertFalse(segments().isEmpty());
+
+        gate.countDown();
+        assertEquals(List.of("e0", "e1", "e2", "e3", "e4", "e5"), processor.take(6));
+        await(() -> queue.getSpilledPending() == 0 && segments().isEmpty() && offsets().isEmpty());
+        assertEquals(6L, queue.getStats().get("processedTotal"));
+    }
+
+    @Test
+    void recoveryResumesFromRecordedOffset() throws Exception {
+        // 上次运行遗留的段：r0已回放（.offset指向r1），末尾为写了一半的记录
+        Path segment = spillDir.resolve("segment-1-0.bin");
+        long offset;
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(segment))) {
+            writeRecord(out, "r0");
+            offset = out.size();
+            writeRecord(out, "r1");
+            writeRecord(out, "r2");
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(100);
+            out.write(new byte[3]);
+        }
+        Files.write(spillDir.resolve("segment-1-0.bin.offset"), ByteBuffer.allocate(Long.BYTES).putLong(offset).array());
+
+        RecordingProcessor processor = new RecordingProcessor(new CountDownLatch(0));
+        WebhookIngestQueue queue = start(processor, 16, false);
+
+        assertEquals(List.of("r1", "r2"), processor.take(2));
+        assertNull(processor.processed.poll(200, TimeUnit.MILLISECONDS));
+        await(() -> segments().isEmpty() && offsets().isEmpty());
+        assertEquals(0, queue.getSpilledPending());
+    }
+
+    @Test
+    void stopSpillsQueueAndRestartReplaysIt() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingProcessor blocked = new RecordingProcessor(gate);
+        WebhookIngestQueue first = start(blocked, 16, false);
+        first.submit(body("e0"));
+        assertEquals("e0", blocked.entered.poll(5, TimeUnit.SECONDS));
+        first.submit(body("e1"));
+        first.submit(body("e2"));
+
+        // 停止时工作线程被中断，内存队列中的e1、e2写回磁盘
+        first.stop();
+        started.remove(first);
+        assertEquals(1, segments().size());
+
+        RecordingProcessor processor = new RecordingProcessor(new CountDownLatch(0));
+        start(processor, 16, false);
+        assertEquals(List.of("e1", "e2"), processor.take(2));
+        await(() -> segments().isEmpty());
+    }
+
+    @Test
+    void virtualModeProcessesEverythingAndStopsCleanly() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor(new CountDownLatch(0));
+        WebhookIngestQueue queue = start(processor, 16, true);
+
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add("v" + i);
+            assertTrue(queue.submit(body("v" + i)));
+        }
+
+        assertEquals(expected, new HashSet<>(processor.take(50)));
+        await(() -> Integer.valueOf(0).equals(queue.getStats().get("activeWorkers")));
+        queue.stop();
+        started.remove(queue);
+        // 关闭后没有线程再从队列取事件，也没有遗留的段文件
+        assertTrue(segments().isEmpty());
+        assertNull(processor.processed.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private WebhookIngestQueue start(RecordingProcessor processor, int capacity, boolean virtual) throws IOException {
+        WebhookIngestQueue queue = new WebhookIngestQueue();
+        ReflectionTestUtils.setField(queue, "webhookProcessor", processor);
+        ReflectionTestUtils.setField(queue, "ingestMode", "async");
+        ReflectionTestUtils.setField(queue, "queueCapacity", capacity);
+        ReflectionTestUtils.setField(queue, "workerCount", 1);
+        ReflectionTestUtils.setField(queue, "virtualMaxConcurrency", 4);
+        ReflectionTestUtils.setField(queue, "virtualThreads", virtual);
+        ReflectionTestUtils.setField(queue, "spillDir", spillDir.toString());
+        queue.start();
+        started.add(queue);
+        return queue;
+    }
+
+    private List<Path> segments() {
+        return list(".bin");
+    }
+
+    private List<Path> offsets() {
+        return list(".offset");
+    }
+
+    private List<Path> list(String suffix) {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(suffix)).toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(20);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, String body) throws IOException {
+        byte[] bytes = body(body);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] body(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录处理的事件，打开闸门前阻塞；阻塞时被中断视为未处理
+     */
+    private static class RecordingProcessor extends ChatwootWebhookProcessor {
+
+        private final CountDownLatch gate;
+        private final BlockingQueue<String> entered = new LinkedBlockingQueue<>();
+        private final BlockingQueue<String> processed = new LinkedBlockingQueue<>();
+
+        RecordingProcessor(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public boolean processWebhookEvent(byte[] body, long receivedAtNanos) {
+            String event = new String(body, StandardCharsets.UTF_8);
+            entered.add(event);
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            processed.add(event);
+            return true;
+        }
+
+        List<String> take(int count) throws InterruptedException {
+            List<String> events = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String event = processed.poll(5, TimeUnit.SECONDS);
+                assertTrue(event != null, "已处理 " + events);
+                events.add(event);
+            }
+            return events;
+        }
+    }
+}
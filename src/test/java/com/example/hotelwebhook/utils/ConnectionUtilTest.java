@@ -0,0 +1,149 @@
+package com.example.hotelwebhook.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 连接标识的签发、验证、篡改与过期
+ */
+class ConnectionUtilTest {
+
+    private static final String SECRET = "connection-util-test-secret";
+
+    @Test
+    void roundTrip() {
+        ConnectionUtil util = connectionUtil(SECRET, 3600, "");
+        long before = System.currentTimeMillis();
+
+        String agentToken = util.generateConnectionId("17", "agent");
+        ConnectionClaims agent = util.verify(agentToken);
+        assertNotNull(agent);
+        assertEquals("17", agent.userId());
+        assertEquals("agent", agent.userType());
+        assertTrue(agent.expiresAt() >= before + 3600_000 && agent.expiresAt() <= System.currentTimeMillis() + 3600_000);
+
+        // 用户ID中的点号与非ASCII字符原样保留
+        ConnectionClaims guest = util.verify(util.generateConnectionId("客人.48213", "guest"));
+        assertNotNull(guest);
+        assertEquals("客人.48213", guest.userId());
+        assertEquals("guest", guest.userType());
+
+        // 再次验证（缓存命中或被其他标识挤出后重新计算）结果一致
+        assertEquals(agent, util.verify(agentToken));
+    }
+
+    @Test
+    void eachTokenIsUnique() {
+        ConnectionUtil util = connectionUtil(SECRET, 3600, "");
+
+        String first = util.generateConnectionId("17", "agent");
+        String second = util.generateConnectionId("17", "agent");
+
+        assertNotEquals(first, second);
+        assertNotEquals(util.verify(first).nonce(), util.verify(second).nonce());
+    }
+
+    @Test
+    void tokensFromAnotherSecretAreRejected() {
+        String token = connectionUtil(SECRET + "-other", 3600, "").generateConnectionId("17", "agent");
+
+        assertNull(connectionUtil(SECRET, 3600, "").verify(token));
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+        ConnectionUtil util = connectionUtil(SECRET, 3600, "");
+        String token = util.generateConnectionId("17", "guest");
+        int dot = token.lastIndexOf('.');
+
+        // 改写载荷中的用户类型和用户ID，保留原签名
+        String payload = new String(Base64.getUrlDecoder().decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+        String elevated = "a" + payload.substring(1);
+        assertNull(util.verify(encode(elevated) + token.substring(dot)));
+        String otherUser = payload.substring(0, payload.lastIndexOf('.') + 1) + "18";
+        assertNull(util.verify(encode(otherUser) + token.substring(dot)));
+
+        // 签名逐位翻转
+        byte[] signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        signature[0] ^= 1;
+        assertNull(util.verify(token.substring(0, dot + 1) + Base64.getUrlEncoder().withoutPadding().encodeToString(signature)));
+
+        assertNull(util.verify(token.substring(0, dot)));
+        assertNull(util.verify(token + "x"));
+        assertNull(util.verify("not-base64!.@@"));
+        assertNull(util.verify(""));
+        assertNull(util.verify(null));
+
+        // 伪造的标识不影响原标识的验证
+        assertNotNull(util.verify(token));
+    }
+
+    @Test
+    void expiredTokensAreRejected() {
+        assertNull(connectionUtil(SECRET, -1, "").verify(connectionUtil(SECRET, -1, "").generateConnectionId("17", "agent")));
+    }
+
+    @Test
+    void cachedTokensExpire() throws InterruptedException {
+        ConnectionUtil util = connectionUtil(SECRET, 1, "");
+        String token = util.generateConnectionId("17", "agent");
+        assertNotNull(util.verify(token));
+
+        Thread.sleep(1100);
+
+        // 已缓存的标识过期后同样拒绝
+        assertNull(util.verify(token));
+    }
+
+    @Test
+    void issuerKey() {
+        // 未配置签发方密钥时拒绝签发
+        ConnectionUtil unconfigured = connectionUtil(SECRET, 3600, "");
+        assertFalse(unconfigured.isIssuerConfigured());
+        assertFalse(unconfigured.isTrustedIssuer(null));
+        assertFalse(unconfigured.isTrustedIssuer(""));
+
+        ConnectionUtil guarded = connectionUtil(SECRET, 3600, "issuer-key");
+        assertTrue(guarded.isIssuerConfigured());
+        assertTrue(guarded.isTrustedIssuer("issuer-key"));
+        assertFalse(guarded.isTrustedIssuer("issuer-key2"));
+        assertFalse(guarded.isTrustedIssuer(""));
+        assertFalse(guarded.isTrustedIssuer(null));
+    }
+
+    @Test
+    void fingerprintDoesNotRevealToken() {
+        String token = connectionUtil(SECRET, 3600, "").generateConnectionId("17", "agent");
+
+        String fingerprint = ConnectionUtil.fingerprint(token);
+
+        assertEquals(16, fingerprint.length());
+        assertEquals(fingerprint, ConnectionUtil.fingerprint(token));
+        assertFalse(token.contains(fingerprint));
+        assertNull(ConnectionUtil.fingerprint(null));
+    }
+
+    private static String encode(String payload) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ConnectionUtil connectionUtil(String secret, long ttlSeconds, String issuerKey) {
+        ConnectionUtil util = new ConnectionUtil();
+        ReflectionTestUtils.setField(util, "secret", secret);
+        ReflectionTestUtils.setField(util, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(util, "cacheSize", 16);
+        ReflectionTestUtils.setField(util, "issuerKey", issuerKey);
+        util.init();
+        return util;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.hotelwebhook.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 准入控制的IP桶、全局桶、处理中上限与503响应
+ */
+class AdmissionControlTest {
+
+    // 补充速率接近0，测试期间令牌只减不增
+    private static final double NO_REFILL = 1e-6;
+
+    @Test
+    void ipBucketLimitsSingleClient() {
+        AdmissionControl admission = admission(3, 1000, 256);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(admission.tryAdmit("10.0.0.1"));
+            admission.release();
+        }
+        assertFalse(admission.tryAdmit("10.0.0.1"));
+        // 其他客户端不受影响
+        assertTrue(admission.tryAdmit("10.0.0.2"));
+        admission.release();
+
+        assertEquals(1L, admission.getStats().get("rejectedIp"));
+        assertEquals(4L, admission.getStats().get("admitted"));
+    }
+
+    @Test
+    void globalBucketLimitsAllClients() {
+        AdmissionControl admission = admission(1, 2, 256);
+
+        assertTrue(admission.tryAdmit("10.0.0.1"));
+        admission.release();
+        // IP桶拒绝的请求不消耗全局令牌
+        assertFalse(admission.tryAdmit("10.0.0.1"));
+        assertTrue(admission.tryAdmit("10.0.0.2"));
+        admission.release();
+        assertFalse(admission.tryAdmit("10.0.0.3"));
+
+        assertEquals(1L, admission.getStats().get("rejectedIp"));
+        assertEquals(1L, admission.getStats().get("rejectedGlobal"));
+        assertEquals(2L, admission.getStats().get("rejected"));
+    }
+
+    @Test
+    void maxPendingLimitsRequestsInFlight() {
+        AdmissionControl admission = admission(100, 1000, 2);
+
+        assertTrue(admission.tryAdmit("10.0.0.1"));
+        assertTrue(admission.tryAdmit("10.0.0.2"));
+        assertFalse(admission.tryAdmit("10.0.0.3"));
+        assertEquals(1L, admission.getStats().get("rejectedPending"));
+        assertEquals(2, admission.getStats().get("pending"));
+
+        admission.release();
+        assertTrue(admission.tryAdmit("10.0.0.3"));
+        admission.release();
+        admission.release();
+        assertEquals(0, admission.getStats().get("pending"));
+    }
+
+    @Test
+    void rejectedHandshakeGets503WithRetryAfter() throws Exception {
+        AdmissionControl admission = admission(1, 1000, 256);
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        ServletServerHttpRequest request = new ServletServerHttpRequest(forwarded("10.0.0.1"));
+        assertTrue(admission.beforeHandshake(request, new ServletServerHttpResponse(first), null, new HashMap<>()));
+        admission.afterHandshake(request, new ServletServerHttpResponse(first), null, null);
+        assertEquals(0, admission.getStats().get("pending"));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        ServletServerHttpResponse response = new ServletServerHttpResponse(rejected);
+        assertFalse(admission.beforeHandshake(new ServletServerHttpRequest(forwarded("10.0.0.1")), response, null,
+                new HashMap<>()));
+        response.flush();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getStatus());
+        assertRetryAfter(rejected.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void rejectedConnectRequestGets503WithRetryAfter() {
+        AdmissionControl admission = admission(1, 1000, 256);
+
+        MockHttpServletRequest admittedRequest = forwarded("10.0.0.1");
+        MockHttpServletResponse admittedResponse = new MockHttpServletResponse();
+        assertTrue(admission.preHandle(admittedRequest, admittedResponse, null));
+        assertEquals(1, admission.getStats().get("pending"));
+        admission.afterCompletion(admittedRequest, admittedResponse, null, null);
+        assertEquals(0, admission.getStats().get("pending"));
+
+        MockHttpServletRequest rejectedRequest = forwarded("10.0.0.1");
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertFalse(admission.preHandle(rejectedRequest, rejected, null));
+        // 被拒绝的请求没有占用处理中名额，完成时不释放
+        admission.afterCompletion(rejectedRequest, rejected, null, null);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getStatus());
+        assertRetryAfter(rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(0, admission.getStats().get("pending"));
+    }
+
+    @Test
+    void disabledAdmitsEverything() {
+        AdmissionControl admission = admission(0, 0, 0);
+        ReflectionTestUtils.setField(admission, "enabled", false);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(admission.tryAdmit("10.0.0.1"));
+        }
+        assertEquals(0, admission.getStats().get("pending"));
+    }
+
+    private static void assertRetryAfter(String retryAfter) {
+        int seconds = Integer.parseInt(retryAfter);
+        // 基础2秒加0～8秒抖动
+        assertTrue(seconds >= 2 && seconds <= 10, retryAfter);
+    }
+
+    private static MockHttpServletRequest forwarded(String ip) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws/notify");
+        request.addHeader("X-Forwarded-For", ip + ", 192.168.1.1");
+        return request;
+    }
+
+    private static AdmissionControl admission(double ipBurst, double globalBurst, int maxPending) {
+        AdmissionControl admission = new AdmissionControl();
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "globalRate", NO_REFILL);
+        ReflectionTestUtils.setField(admission, "globalBurst", globalBurst);
+        ReflectionTestUtils.setField(admission, "ipRate", NO_REFILL);
+        ReflectionTestUtils.setField(admission, "ipBurst", ipBurst);
+        ReflectionTestUtils.setField(admission, "ipBucketCount", 16384);
+        ReflectionTestUtils.setField(admission, "maxPending", maxPending);
+        ReflectionTestUtils.setField(admission, "retryAfterSeconds", 2);
+        ReflectionTestUtils.setField(admission, "retryAfterJitterSeconds", 8);
+        admission.init();
+        return admission;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.hotelwebhook.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+/**
+ * JSON通知转CBOR的往返一致性与合批数组头
+ */
+class CborTranscoderTest {
+
+    private final CborTranscoder transcoder = new CborTranscoder();
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Test
+    void roundTripPreservesStructure() throws IOException {
+        String json = "{\"type\":\"notification\",\"seq\":1792212345118042,\"event\":\"message_created\","
+                + "\"timestamp\":1792212345118,\"data\":{\"id\":1204456,\"content\":\"您好😀\\n\\\"引号\\\"\","
+                + "\"private\":false,\"attachments\":[],\"sender\":null,\"rate\":4.5,\"neg\":-17,"
+                + "\"big\":12345678901234567890,\"nested\":[[1,2],{\"a\":{}}]}}";
+
+        byte[] cbor = transcoder.transcode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(jsonMapper.readTree(json), jsonMapper.readTree(jsonMapper.writeValueAsBytes(cborMapper.readTree(cbor))));
+        JsonNode decoded = cborMapper.readTree(cbor);
+        assertEquals(1792212345118042L, decoded.path("seq").asLong());
+        assertEquals("您好😀\n\"引号\"", decoded.path("data").path("content").asText());
+        assertTrue(decoded.path("data").path("sender").isNull());
+        assertTrue(cbor.length < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void stringDataStaysString() throws IOException {
+        // 默认的 string 编码下 data 为JSON字符串，转换后仍为字符串
+        String json = "{\"type\":\"notification\",\"seq\":1,\"data\":\"{\\\"id\\\":1}\"}";
+
+        JsonNode decoded = cborMapper.readTree(transcoder.transcode(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(decoded.path("data").isTextual());
+        assertEquals("{\"id\":1}", decoded.path("data").asText());
+    }
+
+    @Test
+    void roundTripWebhookFixtures() throws IOException {
+        for (String name : new String[] {"message_created.json", "message_created_attachments.json", "conversation_updated.json"}) {
+            byte[] json;
+            try (InputStream in = CborTranscoderTest.class.getResourceAsStream("/fixtures/" + name)) {
+                json = in.readAllBytes();
+            }
+            assertEquals(jsonMapper.readTree(json), jsonMapper.readTree(jsonMapper.writeValueAsBytes(
+                    cborMapper.readTree(transcoder.transcode(json)))), name);
+        }
+    }
+
+    @Test
+    void malformedJsonIsRejected() {
+        assertThrows(UncheckedIOException.class,
+                () -> transcoder.transcode("{\"seq\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void arrayHeaderMatchesElementCount() throws IOException {
+        byte[] element = transcoder.transcode("{\"seq\":7}".getBytes(StandardCharsets.UTF_8));
+        // 覆盖1字节、2字节、3字节三种数组头及其边界
+        for (int size : new int[] {0, 1, 23, 24, 255, 256, 1000, 65535}) {
+            byte[] header = new byte[3];
+            int headerLength = CborTranscoder.writeArrayHeader(header, size);
+            assertEquals(size < 24 ? 1 : size < 256 ? 2 : 3, headerLength, "size " + size);
+
+            byte[] array = new byte[headerLength + size * element.length];
+            System.arraycopy(header, 0, array, 0, headerLength);
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(element, 0, array, headerLength + i * element.length, element.length);
+            }
+            JsonNode decoded = cborMapper.readTree(array);
+            assertTrue(decoded.isArray(), "size " + size);
+            assertEquals(size, decoded.size(), "size " + size);
+            if (size > 0) {
+                assertEquals(7, decoded.get(size - 1).path("seq").asInt());
+            }
+        }
+    }
+}
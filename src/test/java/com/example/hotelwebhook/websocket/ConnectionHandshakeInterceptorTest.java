@@ -0,0 +1,175 @@
+package com.example.hotelwebhook.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.hotelwebhook.utils.ConnectionUtil;
+
+/**
+ * 握手拦截器的身份校验与查询参数解析
+ */
+class ConnectionHandshakeInterceptorTest {
+
+    private static final String SECRET = "handshake-test-secret";
+
+    private ConnectionUtil connectionUtil;
+    private ConnectionHandshakeInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        connectionUtil = connectionUtil(SECRET, 86400);
+        interceptor = new ConnectionHandshakeInterceptor();
+        ReflectionTestUtils.setField(interceptor, "connectionUtil", connectionUtil);
+    }
+
+    @Test
+    void missingConnectionIdIsUnauthorized() throws Exception {
+        Handshake handshake = handshake("userId=17");
+
+        assertFalse(handshake.accepted);
+        assertEquals(HttpStatus.UNAUTHORIZED.value(), handshake.status);
+        assertTrue(handshake.attributes.isEmpty());
+    }
+
+    @Test
+    void forgedConnectionIdIsUnauthorized() throws Exception {
+        String forged = connectionUtil(SECRET + "-other", 86400).generateConnectionId("17", "agent");
+
+        Handshake handshake = handshake("userId=17&connectionId=" + forged);
+
+        assertFalse(handshake.accepted);
+        assertEquals(HttpStatus.UNAUTHORIZED.value(), handshake.status);
+    }
+
+    @Test
+    void expiredConnectionIdIsUnauthorized() throws Exception {
+        String expired = connectionUtil(SECRET, -1).generateConnectionId("17", "agent");
+
+        Handshake handshake = handshake("userId=17&connectionId=" + expired);
+
+        assertFalse(handshake.accepted);
+        assertEquals(HttpStatus.UNAUTHORIZED.value(), handshake.status);
+    }
+
+    @Test
+    void mismatchedIdentityIsForbidden() throws Exception {
+        String agentToken = connectionUtil.generateConnectionId("17", "agent");
+
+        Handshake otherUser = handshake("userId=18&connectionId=" + agentToken);
+        assertFalse(otherUser.accepted);
+        assertEquals(HttpStatus.FORBIDDEN.value(), otherUser.status);
+
+        // 客服标识不能以客人身份连接
+        Handshake asGuest = handshake("contactId=17&connectionId=" + agentToken);
+        assertFalse(asGuest.accepted);
+        assertEquals(HttpStatus.FORBIDDEN.value(), asGuest.status);
+    }
+
+    @Test
+    void validAgentHandshakeSetsAttributes() throws Exception {
+        String token = connectionUtil.generateConnectionId("17", "agent");
+
+        Handshake handshake = handshake("userId=17&connectionId=" + token + "&lastSeq=42&batch=1&compress=deflate");
+
+        assertTrue(handshake.accepted);
+        assertEquals("17", handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_USER_ID));
+        assertEquals("agent", handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_USER_TYPE));
+        assertEquals(token, handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_CONNECTION_ID));
+        assertEquals(42L, handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_LAST_SEQ));
+        assertEquals(Boolean.TRUE, handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_BATCH));
+        assertEquals(Boolean.TRUE, handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_COMPRESS));
+        // 未声明订阅时不写入订阅属性
+        assertFalse(handshake.attributes.containsKey(ConnectionHandshakeInterceptor.ATTR_INBOXES));
+        assertFalse(handshake.attributes.containsKey(ConnectionHandshakeInterceptor.ATTR_TEAMS));
+    }
+
+    @Test
+    void guestHandshakeUsesContactId() throws Exception {
+        String token = connectionUtil.generateConnectionId("48213", "guest");
+
+        Handshake handshake = handshake("contactId=48213&connectionId=" + token + "&inboxes=3");
+
+        assertTrue(handshake.accepted);
+        assertEquals("48213", handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_USER_ID));
+        assertEquals("guest", handshake.attributes.get(ConnectionHandshakeInterceptor.ATTR_USER_TYPE));
+        // 订阅只对客服生效
+        assertFalse(handshake.attributes.containsKey(ConnectionHandshakeInterceptor.ATTR_INBOXES));
+    }
+
+    @Test
+    void invalidLastSeqIsIgnored() throws Exception {
+        String token = connectionUtil.generateConnectionId("17", "agent");
+
+        Handshake handshake = handshake("userId=17&connectionId=" + token + "&lastSeq=abc");
+
+        assertTrue(handshake.accepted);
+        assertFalse(handshake.attributes.containsKey(ConnectionHandshakeInterceptor.ATTR_LAST_SEQ));
+    }
+
+    @Test
+    void subscriptionAttributes() throws Exception {
+        String token = connectionUtil.generateConnectionId("17", "agent");
+
+        Handshake both = handshake("userId=17&connectionId=" + token + "&inboxes=3,%205,,&teams=2");
+        assertTrue(both.accepted);
+        assertEquals(List.of("3", "5"), both.attributes.get(ConnectionHandshakeInterceptor.ATTR_INBOXES));
+        assertEquals(List.of("2"), both.attributes.get(ConnectionHandshakeInterceptor.ATTR_TEAMS));
+
+        // 只声明一方时另一方为空列表，仍视为已声明
+        Handshake teamsOnly = handshake("userId=17&connectionId=" + token + "&teams=2");
+        assertEquals(List.of(), teamsOnly.attributes.get(ConnectionHandshakeInterceptor.ATTR_INBOXES));
+        assertEquals(List.of("2"), teamsOnly.attributes.get(ConnectionHandshakeInterceptor.ATTR_TEAMS));
+
+        Handshake empty = handshake("userId=17&connectionId=" + token + "&inboxes=");
+        assertEquals(List.of(), empty.attributes.get(ConnectionHandshakeInterceptor.ATTR_INBOXES));
+    }
+
+    @Test
+    void paramsAreDecodedOnce() {
+        ConnectionHandshakeInterceptor.HandshakeParams params = ConnectionHandshakeInterceptor.HandshakeParams
+                .parse("userId=a%2Bb&lastSeq=-1&compress=gzip&batch=true&novalue&=x");
+
+        assertEquals("a+b", params.userId);
+        assertEquals(-1L, params.lastSeq);
+        assertFalse(params.compress);
+        assertTrue(params.batch);
+        assertNull(params.connectionId);
+    }
+
+    private Handshake handshake(String query) throws Exception {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/ws/notify");
+        servletRequest.setQueryString(query);
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        Map<String, Object> attributes = new HashMap<>();
+        boolean accepted = interceptor.beforeHandshake(new ServletServerHttpRequest(servletRequest),
+                new ServletServerHttpResponse(servletResponse), null, attributes);
+        return new Handshake(accepted, servletResponse.getStatus(), attributes);
+    }
+
+    private static ConnectionUtil connectionUtil(String secret, long ttlSeconds) {
+        ConnectionUtil util = new ConnectionUtil();
+        ReflectionTestUtils.setField(util, "secret", secret);
+        ReflectionTestUtils.setField(util, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(util, "cacheSize", 16);
+        util.init();
+        return util;
+    }
+
+    private record Handshake(boolean accepted, int status, Map<String, Object> attributes) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.hotelwebhook.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 应用层压缩的阈值与并发压缩（虚拟线程按任务创建，Deflater来自共享池）
+ */
+class PayloadCompressorTest {
+
+    @Test
+    void thresholdDecidesCompression() {
+        PayloadCompressor compressor = new PayloadCompressor(256, Deflater.DEFAULT_COMPRESSION);
+
+        assertFalse(compressor.accepts(255));
+        assertTrue(compressor.accepts(256));
+    }
+
+    @Test
+    void concurrentVirtualThreadsInflateToInput() throws Exception {
+        PayloadCompressor compressor = new PayloadCompressor(0, Deflater.DEFAULT_COMPRESSION);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                byte[] input = payload(i);
+                futures.add(executor.submit(() -> {
+                    assertArrayEquals(input, inflateRaw(compressor.deflate(input)));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        // 释放池后仍可继续压缩
+        compressor.close();
+        byte[] input = payload(7);
+        assertArrayEquals(input, inflateRaw(compressor.deflate(input)));
+        compressor.close();
+    }
+
+    @Test
+    void largePayloadSpansSeveralBuffers() throws DataFormatException {
+        PayloadCompressor compressor = new PayloadCompressor(0, Deflater.BEST_SPEED);
+        // 随机内容几乎不可压缩，输出超过初始缓冲区
+        byte[] input = new byte[64 * 1024];
+        new Random(42).nextBytes(input);
+
+        assertArrayEquals(input, inflateRaw(compressor.deflate(input)));
+    }
+
+    private static byte[] payload(int i) {
+        StringBuilder json = new StringBuilder("{\"type\":\"message_created\",\"seq\":").append(i).append(",\"data\":\"");
+        for (int j = 0; j <= i % 50; j++) {
+            json.append("您好，我们已为您预留了一间大床房 ");
+        }
+        return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] inflateRaw(byte[] deflated) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(deflated);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            if (n == 0 && inflater.needsInput()) {
+                break;
+            }
+            out.write(buffer, 0, n);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.hotelwebhook.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import com.example.hotelwebhook.metrics.PipelineMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 合批数组帧的布局：各通知的编码原样拼接为一个数组（JSON数组或CBOR定长数组）
+ */
+class SessionSendQueueBatchTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 窗口足够长，只由攒满一批触发发送，结果与时序无关
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final RecordingWebSocketSession session = new RecordingWebSocketSession("s1");
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void jsonBatchIsArrayOfNotifications() throws Exception {
+        SessionSendQueue queue = queue(null);
+        List<NotificationFrame> frames = frames();
+
+        frames.forEach(queue::enqueue);
+
+        assertEquals(1, session.getSent().size());
+        TextMessage message = assertInstanceOf(TextMessage.class, session.getSent().get(0));
+        // 数组元素为各通知的原始字节，逗号分隔、无空白
+        String expected = "[" + json(frames.get(0)) + "," + json(frames.get(1)) + "," + json(frames.get(2)) + "]";
+        assertEquals(expected, message.getPayload());
+        assertElements(objectMapper.readTree(message.asBytes()), frames);
+        assertEquals(1, queue.getBatchCount());
+        assertEquals(BATCH_SIZE, queue.getSentCount());
+    }
+
+    @Test
+    void compressedJsonBatchInflatesToSameArray() throws Exception {
+        SessionSendQueue queue = queue(new PayloadCompressor(0, Deflater.DEFAULT_COMPRESSION));
+        List<NotificationFrame> frames = frames();
+
+        frames.forEach(queue::enqueue);
+
+        assertEquals(1, session.getSent().size());
+        BinaryMessage message = assertInstanceOf(BinaryMessage.class, session.getSent().get(0));
+        String inflated = new String(inflateRaw(bytes(message)), StandardCharsets.UTF_8);
+        assertEquals("[" + json(frames.get(0)) + "," + json(frames.get(1)) + "," + json(frames.get(2)) + "]", inflated);
+    }
+
+    @Test
+    void controlMessageIsNotBatched() throws Exception {
+        SessionSendQueue queue = queue(null);
+        List<NotificationFrame> frames = frames();
+
+        // 控制消息立即单独发送，不进入数组
+        queue.enqueue(new TextMessage("{\"type\":\"pong\"}"));
+        frames.forEach(queue::enqueue);
+
+        List<WebSocketMessage<?>> sent = session.getSent();
+        assertEquals(2, sent.size());
+        assertEquals("{\"type\":\"pong\"}", ((TextMessage) sent.get(0)).getPayload());
+        assertElements(objectMapper.readTree(((TextMessage) sent.get(1)).asBytes()), frames);
+    }
+
+    @Test
+    void cborBatchIsArrayHeaderPlusSharedEncodings() throws Exception {
+        CborTranscoder transcoder = new CborTranscoder();
+        SessionSendQueue queue = queue(null, transcoder);
+        List<NotificationFrame> frames = frames();
+
+        frames.forEach(queue::enqueue);
+
+        assertEquals(1, session.getSent().size());
+        BinaryMessage message = assertInstanceOf(BinaryMessage.class, session.getSent().get(0));
+        byte[] payload = bytes(message);
+        // 定长数组头后紧跟各通知缓存的CBOR编码
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(0x80 | BATCH_SIZE);
+        for (NotificationFrame frame : frames) {
+            expected.write(frame.getCbor(transcoder));
+        }
+        assertArrayEquals(expected.toByteArray(), payload);
+        assertElements(new CBORMapper().readTree(payload), frames);
+    }
+
+    private void assertElements(JsonNode array, List<NotificationFrame> frames) throws Exception {
+        assertTrue(array.isArray());
+        assertEquals(frames.size(), array.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertEquals(objectMapper.readTree(frames.get(i).getJson()), array.get(i));
+            assertEquals(frames.get(i).getSeq(), array.get(i).path("seq").asLong());
+        }
+    }
+
+    /**
+     * 含多字节内容和转义字符的通知
+     */
+    private static List<NotificationFrame> frames() {
+        return List.of(
+                frame(101, "{\"type\":\"notification\",\"seq\":101,\"event\":\"message_created\",\"data\":\"您好\"}"),
+                frame(102, "{\"type\":\"notification\",\"seq\":102,\"event\":\"conversation_updated\",\"data\":{\"id\":90417}}"),
+                frame(103, "{\"type\":\"notification\",\"seq\":103,\"event\":\"message_created\",\"data\":\"引号\\\"与换行\\n\"}"));
+    }
+
+    private static NotificationFrame frame(long seq, String json) {
+        return new NotificationFrame(seq, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String json(NotificationFrame frame) {
+        return new String(frame.getJson(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(BinaryMessage message) {
+        ByteBuffer payload = message.getPayload().duplicate();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] inflateRaw(byte[] deflated) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(deflated);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            if (n == 0 && inflater.needsInput()) {
+                break;
+            }
+            out.write(buffer, 0, n);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    private SessionSendQueue queue(PayloadCompressor compressor) {
+        return queue(compressor, null);
+    }
+
+    private SessionSendQueue queue(PayloadCompressor compressor, CborTranscoder cborTranscoder) {
+        return new SessionSendQueue(session, Runnable::run, 256, 1 << 20, OverflowPolicy.DROP_OLDEST,
+                CloseStatus.SERVICE_OVERLOAD, id -> {
+                }, sendMeters(), new SessionSendQueue.Batching(scheduler, 60_000, BATCH_SIZE), compressor, cborTranscoder);
+    }
+
+    private static PipelineMetrics.SendMeters sendMeters() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+        return metrics.sendMeters("agent");
+    }
+}
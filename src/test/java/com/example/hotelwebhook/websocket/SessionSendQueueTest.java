@@ -0,0 +1,188 @@
+package com.example.hotelwebhook.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import com.example.hotelwebhook.metrics.PipelineMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 发送队列的补发去重与溢出策略
+ */
+class SessionSendQueueTest {
+
+    private final RecordingWebSocketSession session = new RecordingWebSocketSession("s1");
+    // 写线程任务先攒下，由测试决定何时排空，模拟慢速连接
+    private final List<Runnable> pendingDrains = new ArrayList<>();
+    private final Executor deferred = pendingDrains::add;
+    private final List<String> failed = new ArrayList<>();
+
+    @Test
+    void liveFramesAlreadyReplayedAreSentOnce() {
+        SessionSendQueue queue = queue();
+
+        queue.enqueueReplay(List.of(frame(5), frame(6), frame(7)));
+        // 补发期间实时推送中的同一通知
+        for (long seq = 6; seq <= 9; seq++) {
+            assertTrue(queue.enqueue(frame(seq)));
+        }
+
+        assertEquals(List.of(5L, 6L, 7L, 8L, 9L), sentSeqs());
+    }
+
+    @Test
+    void emptyReplayDoesNotFilterLiveFrames() {
+        SessionSendQueue queue = queue();
+
+        queue.enqueueReplay(List.of());
+        queue.enqueue(frame(1));
+        queue.enqueue(frame(2));
+
+        assertEquals(List.of(1L, 2L), sentSeqs());
+    }
+
+    @Test
+    void dropNewestRejectsOnceMessageCapIsReached() {
+        SessionSendQueue queue = queue(3, 1 << 20, OverflowPolicy.DROP_NEWEST);
+
+        for (long seq = 1; seq <= 3; seq++) {
+            assertTrue(queue.enqueue(frame(seq)));
+        }
+        assertFalse(queue.enqueue(frame(4)));
+        assertFalse(queue.enqueue(frame(5)));
+
+        assertEquals(3, queue.getQueuedMessages());
+        assertEquals(2, queue.getDroppedCount());
+        drain();
+        assertEquals(List.of(1L, 2L, 3L), sentSeqs());
+    }
+
+    @Test
+    void dropNewestRejectsOnceByteCapIsReached() {
+        int length = frame(1).getLength();
+        SessionSendQueue queue = queue(256, 2L * length + 1, OverflowPolicy.DROP_NEWEST);
+
+        assertTrue(queue.enqueue(frame(1)));
+        assertTrue(queue.enqueue(frame(2)));
+        assertFalse(queue.enqueue(frame(3)));
+
+        assertEquals(2L * length, queue.getQueuedBytes());
+        drain();
+        assertEquals(List.of(1L, 2L), sentSeqs());
+    }
+
+    @Test
+    void dropOldestEvictsHeadToFitMessageCap() {
+        SessionSendQueue queue = queue(2, 1 << 20, OverflowPolicy.DROP_OLDEST);
+
+        for (long seq = 1; seq <= 4; seq++) {
+            assertTrue(queue.enqueue(frame(seq)));
+        }
+
+        assertEquals(2, queue.getQueuedMessages());
+        assertEquals(2, queue.getDroppedCount());
+        drain();
+        assertEquals(List.of(3L, 4L), sentSeqs());
+    }
+
+    @Test
+    void dropOldestEvictsHeadToFitByteCap() {
+        int length = frame(1).getLength();
+        SessionSendQueue queue = queue(256, 3L * length, OverflowPolicy.DROP_OLDEST);
+
+        for (long seq = 1; seq <= 5; seq++) {
+            assertTrue(queue.enqueue(frame(seq)));
+        }
+
+        assertEquals(3, queue.getQueuedMessages());
+        assertEquals(3L * length, queue.getQueuedBytes());
+        assertEquals(2, queue.getDroppedCount());
+        drain();
+        assertEquals(List.of(3L, 4L, 5L), sentSeqs());
+        assertEquals(0, queue.getQueuedBytes());
+    }
+
+    @Test
+    void disconnectDiscardsQueueAndClosesSession() {
+        SessionSendQueue queue = queue(2, 1 << 20, OverflowPolicy.DISCONNECT);
+
+        assertTrue(queue.enqueue(frame(1)));
+        assertTrue(queue.enqueue(frame(2)));
+        assertFalse(queue.enqueue(frame(3)));
+
+        // 已入队和新到达的消息全部计为丢弃
+        assertEquals(3, queue.getDroppedCount());
+        assertEquals(0, queue.getQueuedMessages());
+        drain();
+        assertFalse(session.isOpen());
+        assertTrue(session.getSent().isEmpty());
+        assertEquals(List.of("s1"), failed);
+        // 关闭后不再接受新消息
+        assertFalse(queue.enqueue(frame(4)));
+    }
+
+    @Test
+    void disconnectOnByteCap() {
+        int length = frame(1).getLength();
+        SessionSendQueue queue = queue(256, length, OverflowPolicy.DISCONNECT);
+
+        assertTrue(queue.enqueue(frame(1)));
+        assertFalse(queue.enqueue(frame(2)));
+
+        drain();
+        assertFalse(session.isOpen());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    private void drain() {
+        while (!pendingDrains.isEmpty()) {
+            pendingDrains.remove(0).run();
+        }
+    }
+
+    private List<Long> sentSeqs() {
+        return session.getSent().stream().map(SessionSendQueueTest::seq).toList();
+    }
+
+    private static long seq(WebSocketMessage<?> message) {
+        String payload = ((TextMessage) message).getPayload();
+        int start = payload.indexOf("\"seq\":") + 6;
+        return Long.parseLong(payload.substring(start, payload.indexOf(',', start)));
+    }
+
+    private static NotificationFrame frame(long seq) {
+        String json = "{\"type\":\"message_created\",\"seq\":" + seq + ",\"data\":\"您好\"}";
+        return new NotificationFrame(seq, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SessionSendQueue queue() {
+        return new SessionSendQueue(session, Runnable::run, 256, 1 << 20, OverflowPolicy.DROP_OLDEST,
+                CloseStatus.SERVICE_OVERLOAD, id -> {
+                }, sendMeters());
+    }
+
+    private SessionSendQueue queue(int maxMessages, long maxBytes, OverflowPolicy policy) {
+        return new SessionSendQueue(session, deferred, maxMessages, maxBytes, policy,
+                CloseStatus.SERVICE_OVERLOAD, failed::add, sendMeters());
+    }
+
+    private static PipelineMetrics.SendMeters sendMeters() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        metrics.init();
+        return metrics.sendMeters("agent");
+    }
+}